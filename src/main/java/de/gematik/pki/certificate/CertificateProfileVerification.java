@@ -62,6 +62,19 @@ public class CertificateProfileVerification {
      * @throws GemPkiException if the certificate has a wrong key usage
      */
     public void verifyKeyUsage() throws GemPkiException {
+        verifyKeyUsage(x509EeCert, getIntendedKeyUsagesFromCertificateProfile(certificateProfile), productType);
+    }
+
+    /**
+     * Verify that the intended KeyUsage bit(s) match against KeyUsage(s) of the given end-entity certificate.
+     *
+     * @param x509EeCert           end-entity certificate
+     * @param intendedKeyUsageList KeyUsage(s) of the certificate profile
+     * @param productType          product type for error messages
+     * @throws GemPkiException if the certificate has a wrong key usage
+     */
+    static void verifyKeyUsage(@NonNull final X509Certificate x509EeCert, @NonNull final List<KeyUsage> intendedKeyUsageList,
+        @NonNull final String productType) throws GemPkiException {
 
         if (x509EeCert.getKeyUsage() == null) {
             throw new GemPkiException(productType, ErrorCode.SE_1016); //WRONG_KEY_USAGE
@@ -74,9 +87,6 @@ public class CertificateProfileVerification {
             }
         }
 
-        final List<KeyUsage> intendedKeyUsageList =
-            getIntendedKeyUsagesFromCertificateProfile(certificateProfile);
-
         if (nrBitsEe != intendedKeyUsageList.size()) {
             throw new GemPkiException(productType, ErrorCode.SE_1016); //WRONG_KEY_USAGE
 
@@ -95,7 +105,7 @@ public class CertificateProfileVerification {
      * @param certificateProfile The certificate profile
      * @return List with keyUsage(s)
      */
-    private static List<KeyUsage> getIntendedKeyUsagesFromCertificateProfile(
+    static List<KeyUsage> getIntendedKeyUsagesFromCertificateProfile(
         @NonNull final CertificateProfile certificateProfile) {
         return CertificateProfile.valueOf(certificateProfile.name()).getKeyUsages();
     }
@@ -111,6 +121,21 @@ public class CertificateProfileVerification {
      * @throws GemPkiException if certificate has a wrong key usage
      */
     public void verifyExtendedKeyUsage() throws GemPkiException {
+        verifyExtendedKeyUsage(x509EeCert, getOidOfIntendedExtendedKeyUsagesFromCertificateProfile(certificateProfile),
+            certificateProfile.isFailOnMissingEku(), productType);
+    }
+
+    /**
+     * Verify oid of intended ExtendedKeyUsage(s) must match with oid(s) of the given end-entity certificate with respect to cardinality.
+     *
+     * @param x509EeCert                      end-entity certificate
+     * @param intendedExtendedKeyUsageOidList oid(s) of ExtendedKeyUsage(s) of the certificate profile
+     * @param failOnMissingEku                fail if the certificate has no ExtendedKeyUsage but the profile has
+     * @param productType                     product type for error messages
+     * @throws GemPkiException if certificate has a wrong key usage
+     */
+    static void verifyExtendedKeyUsage(@NonNull final X509Certificate x509EeCert, @NonNull final List<String> intendedExtendedKeyUsageOidList,
+        final boolean failOnMissingEku, @NonNull final String productType) throws GemPkiException {
         final List<String> eeExtendedKeyUsagesOid;
         try {
             eeExtendedKeyUsagesOid = x509EeCert.getExtendedKeyUsage();
@@ -118,11 +143,8 @@ public class CertificateProfileVerification {
             throw new GemPkiException(productType, ErrorCode.CERTIFICATE_READ, e);
         }
 
-        final List<String> intendedExtendedKeyUsageOidList = getOidOfIntendedExtendedKeyUsagesFromCertificateProfile(
-            certificateProfile);
-
         if (eeExtendedKeyUsagesOid == null) {
-            if (intendedExtendedKeyUsageOidList.isEmpty() || !certificateProfile.isFailOnMissingEku()) {
+            if (intendedExtendedKeyUsageOidList.isEmpty() || !failOnMissingEku) {
                 return;
             } else {
                 throw new GemPkiException(productType, ErrorCode.SE_1017);
@@ -145,7 +167,7 @@ public class CertificateProfileVerification {
      * @param certificateProfile The certificate profile
      * @return List of oid(s) of ExtendedKeyUsages from certificate profile {@link CertificateProfile}
      */
-    private static List<String> getOidOfIntendedExtendedKeyUsagesFromCertificateProfile(
+    static List<String> getOidOfIntendedExtendedKeyUsagesFromCertificateProfile(
         @NonNull final CertificateProfile certificateProfile) {
         return CertificateProfile.valueOf(certificateProfile.name()).getExtKeyUsages()
             .stream().map(ExtendedKeyUsage::getOid).collect(Collectors.toList());
@@ -160,9 +182,23 @@ public class CertificateProfileVerification {
      * @throws GemPkiException if certificate type verification fails
      */
     public void verifyCertificateType() throws GemPkiException {
-        final Set<String> certificatePolicyOids = getCertificatePolicyOids(x509EeCert);
-        verifyCertificateProfileByCertificateTypeOid(certificatePolicyOids);
-        verifyCertificateTypeOidInIssuerTspServiceExtension(certificatePolicyOids);
+        verifyCertificateType(x509EeCert, certificateProfile, tspServiceSubset, productType);
+    }
+
+    /**
+     * Verify type of the given end-entity certificate against the given certificate profile {@link CertificateProfile} and the extensions of its issuer.
+     *
+     * @param x509EeCert         end-entity certificate
+     * @param certificateProfile the certificate profile
+     * @param tspServiceSubset   TSP service of the issuer
+     * @param productType        product type for error messages
+     * @throws GemPkiException if certificate type verification fails
+     */
+    static void verifyCertificateType(@NonNull final X509Certificate x509EeCert, @NonNull final CertificateProfile certificateProfile,
+        @NonNull final TspServiceSubset tspServiceSubset, @NonNull final String productType) throws GemPkiException {
+        final Set<String> certificatePolicyOids = getCertificatePolicyOids(x509EeCert, productType);
+        verifyCertificateProfileByCertificateTypeOid(certificatePolicyOids, certificateProfile, productType);
+        verifyCertificateTypeOidInIssuerTspServiceExtension(certificatePolicyOids, certificateProfile, tspServiceSubset, productType);
     }
 
     /**
@@ -171,8 +207,8 @@ public class CertificateProfileVerification {
      * @param certificatePolicyOidList list with policy oid(s)
      * @throws GemPkiException if the certificate has a wong cert type
      */
-    private void verifyCertificateProfileByCertificateTypeOid(@NonNull final Set<String> certificatePolicyOidList)
-        throws GemPkiException {
+    private static void verifyCertificateProfileByCertificateTypeOid(@NonNull final Set<String> certificatePolicyOidList,
+        final CertificateProfile certificateProfile, final String productType) throws GemPkiException {
         if (!certificatePolicyOidList.contains(certificateProfile.getCertificateType().getOid())) {
             log.debug("ZertifikatsTypOids im Zertifikat: {}", certificatePolicyOidList);
             log.debug("Erwartete ZertifikatsTypOid: {}", certificateProfile.getCertificateType().getOid());
@@ -186,8 +222,8 @@ public class CertificateProfileVerification {
      * @param certificateTypeOidList a list with certificate type oid(s)
      * @throws GemPkiException if the certificate issuer is not allowed to issue this cert type
      */
-    private void verifyCertificateTypeOidInIssuerTspServiceExtension(@NonNull final Set<String> certificateTypeOidList)
-        throws GemPkiException {
+    private static void verifyCertificateTypeOidInIssuerTspServiceExtension(@NonNull final Set<String> certificateTypeOidList,
+        final CertificateProfile certificateProfile, final TspServiceSubset tspServiceSubset, final String productType) throws GemPkiException {
         log.debug("Prüfe CA Authorisierung für die Herausgabe des Zertifikatstyps {} ",
             certificateProfile.getCertificateType().getOidReference());
         for (final ExtensionType extensionType : tspServiceSubset.getExtensions()) {
@@ -212,7 +248,7 @@ public class CertificateProfileVerification {
      * @return Set<String> policy oids from end-entity certificate
      * @throws GemPkiException if the certificate has no cert type
      */
-    private Set<String> getCertificatePolicyOids(@NonNull final X509Certificate x509EeCert) throws GemPkiException {
+    private static Set<String> getCertificatePolicyOids(@NonNull final X509Certificate x509EeCert, final String productType) throws GemPkiException {
         try {
             final Policies policies = new Policies(x509EeCert);
             if (policies.getPolicyOids().isEmpty()) {
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.gematik.pki.certificate;
+
+import de.gematik.pki.exception.GemPkiException;
+import de.gematik.pki.ocsp.OcspRequestGenerator;
+import de.gematik.pki.ocsp.OcspRespSignatureVerifier;
+import de.gematik.pki.tsl.TspInformationProvider;
+import de.gematik.pki.tsl.TspService;
+import de.gematik.pki.tsl.TspServiceSubset;
+import java.security.cert.X509Certificate;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Immutable, thread safe state of TucPki18 checks against one TSL, built once per TSL version: the index of the issuer certificates, the compiled rules of the
+ * certificate profiles, the OCSP CertificateID templates of the issuers and the verifier of OCSP responses supplied by callers. Reuse one context for all
+ * checks against the same TSL.
+ */
+@Slf4j
+public final class TucPki018Context {
+
+    @Getter
+    private final String productType;
+    @Getter
+    private final List<TspService> tspServiceList;
+    @Getter
+    private final List<CertificateProfile> certificateProfiles;
+    private final TspInformationProvider tspInformationProvider;
+    private final Map<CertificateProfile, ProfileRule> profileRules;
+    private final OcspRespSignatureVerifier ocspRespSignatureVerifier;
+    private volatile OcspRespSignatureVerifier suppliedOcspRespSignatureVerifier;
+
+    /**
+     * @param productType               product type for error messages
+     * @param tspServiceList            TSP services of the TSL
+     * @param certificateProfiles       profiles to check certificates against
+     * @param withOcspCheck             prepare OCSP requests, i.e. precompute the CertificateID templates of all issuers
+     * @param ocspRespSignatureVerifier verifier of OCSP responses, null: supplied responses are verified against the OCSP signers of the TSL
+     */
+    @Builder
+    private TucPki018Context(@NonNull final String productType, @NonNull final List<TspService> tspServiceList,
+        @NonNull final List<CertificateProfile> certificateProfiles, final boolean withOcspCheck, final OcspRespSignatureVerifier ocspRespSignatureVerifier) {
+        this.productType = productType;
+        this.tspServiceList = List.copyOf(tspServiceList);
+        this.certificateProfiles = List.copyOf(certificateProfiles);
+        this.tspInformationProvider = new TspInformationProvider(this.tspServiceList, productType);
+        final Map<CertificateProfile, ProfileRule> rules = new EnumMap<>(CertificateProfile.class);
+        for (final CertificateProfile certificateProfile : this.certificateProfiles) {
+            rules.put(certificateProfile, new ProfileRule(certificateProfile));
+        }
+        this.profileRules = rules;
+        this.ocspRespSignatureVerifier = ocspRespSignatureVerifier;
+        this.suppliedOcspRespSignatureVerifier = ocspRespSignatureVerifier;
+        final List<X509Certificate> x509IssuerCerts = tspInformationProvider.getX509IssuerCerts();
+        if (withOcspCheck) {
+            precomputeCertificateIdTemplates(x509IssuerCerts);
+        }
+        log.debug("Kontext für TucPki18 Prüfungen mit {} Ausstellerzertifikaten erstellt", x509IssuerCerts.size());
+    }
+
+    private static void precomputeCertificateIdTemplates(final List<X509Certificate> x509IssuerCerts) {
+        for (final X509Certificate x509IssuerCert : x509IssuerCerts) {
+            try {
+                OcspRequestGenerator.precomputeCertificateIdTemplate(x509IssuerCert);
+            } catch (final GemPkiException e) {
+                // computed again on the first OCSP request, where the error is reported
+                log.debug("CertificateID Template für {} konnte nicht berechnet werden", x509IssuerCert.getSubjectX500Principal());
+            }
+        }
+    }
+
+    /**
+     * Find the TSP service of the issuer of the given end-entity certificate in the index
+     *
+     * @param x509EeCert end-entity certificate
+     * @return information subset of the TspService of the issuer
+     * @throws GemPkiException if the issuer certificate cannot be found or the TSL information of the issuer is invalid
+     */
+    public TspServiceSubset getTspServiceSubset(@NonNull final X509Certificate x509EeCert) throws GemPkiException {
+        return tspInformationProvider.getTspServiceSubset(x509EeCert);
+    }
+
+    /**
+     * Verifier of OCSP responses supplied by callers: the configured one or one for the OCSP signers of the TSL, built on first use
+     *
+     * @return verifier of supplied OCSP responses
+     * @throws GemPkiException if the OCSP signer certificates of the TSL cannot be read
+     */
+    public OcspRespSignatureVerifier getSuppliedOcspRespSignatureVerifier() throws GemPkiException {
+        OcspRespSignatureVerifier verifier = suppliedOcspRespSignatureVerifier;
+        if (verifier == null) {
+            synchronized (this) {
+                verifier = suppliedOcspRespSignatureVerifier;
+                if (verifier == null) {
+                    verifier = new OcspRespSignatureVerifier(tspServiceList, productType);
+                    suppliedOcspRespSignatureVerifier = verifier;
+                }
+            }
+        }
+        return verifier;
+    }
+
+    /**
+     * Verify key usage, extended key usage and certificate type of the given end-entity certificate against a certificate profile of this context
+     *
+     * @param x509EeCert         end-entity certificate to check
+     * @param certificateProfile the profile to check the certificate against
+     * @param tspServiceSubset   TSP service of the issuer
+     * @throws GemPkiException if the certificate is invalid
+     */
+    public void verifyCertificateProfile(@NonNull final X509Certificate x509EeCert, @NonNull final CertificateProfile certificateProfile,
+        @NonNull final TspServiceSubset tspServiceSubset) throws GemPkiException {
+        final ProfileRule profileRule = profileRules.get(certificateProfile);
+        (profileRule != null ? profileRule : new ProfileRule(certificateProfile)).verify(x509EeCert, tspServiceSubset, productType);
+    }
+
+    /**
+     * Rules of a certificate profile, resolved once
+     */
+    private static final class ProfileRule {
+
+        private final CertificateProfile certificateProfile;
+        private final List<KeyUsage> keyUsages;
+        private final List<String> extendedKeyUsageOids;
+
+        private ProfileRule(final CertificateProfile certificateProfile) {
+            this.certificateProfile = certificateProfile;
+            this.keyUsages = List.copyOf(CertificateProfileVerification.getIntendedKeyUsagesFromCertificateProfile(certificateProfile));
+            this.extendedKeyUsageOids = List.copyOf(CertificateProfileVerification.getOidOfIntendedExtendedKeyUsagesFromCertificateProfile(certificateProfile));
+        }
+
+        private void verify(final X509Certificate x509EeCert, final TspServiceSubset tspServiceSubset, final String productType) throws GemPkiException {
+            CertificateProfileVerification.verifyKeyUsage(x509EeCert, keyUsages, productType);
+            CertificateProfileVerification.verifyExtendedKeyUsage(x509EeCert, extendedKeyUsageOids, certificateProfile.isFailOnMissingEku(), productType);
+            CertificateProfileVerification.verifyCertificateType(x509EeCert, certificateProfile, tspServiceSubset, productType);
+        }
+    }
+}
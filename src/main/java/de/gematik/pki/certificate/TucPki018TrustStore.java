@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.gematik.pki.certificate;
+
+import de.gematik.pki.exception.GemPkiException;
+import de.gematik.pki.ocsp.OcspPriority;
+import de.gematik.pki.ocsp.OcspRespCache;
+import de.gematik.pki.ocsp.OcspRespSignatureVerifier;
+import de.gematik.pki.ocsp.OcspTransport;
+import de.gematik.pki.tsl.TspService;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+
+/**
+ * Holder of the current trust version for TucPki18 checks. A new TSL is prepared off to the side - issuer index, OCSP CertificateID templates, compiled
+ * profile rules and OCSP signature verifier - and then published with a single atomic reference swap. Checks never block and run against the issuers,
+ * profiles and OCSP signers of one complete version; the previous version is retired as soon as the checks in flight on it have finished. The OCSP response
+ * cache is shared by the versions, an update that changes the trusted OCSP signers deletes the responses of signers no longer trusted, see
+ * {@link #update(List)}.
+ */
+@Slf4j
+public final class TucPki018TrustStore {
+
+    private final String productType;
+    private final List<CertificateProfile> certificateProfiles;
+    private final boolean withOcspCheck;
+    private final OcspRespCache ocspRespCache;
+    private final boolean withOcspRespSignatureVerification;
+    private final OcspTransport ocspTransport;
+    private final OcspPriority ocspPriority;
+    private final OcspPriority ocspBatchPriority;
+    private final Duration ocspDeadline;
+    private final AtomicLong versionCounter = new AtomicLong();
+    private final AtomicReference<TrustVersion> current = new AtomicReference<>();
+
+    /**
+     * @param productType                       product type for error messages
+     * @param tspServiceList                    TSP services of the initial TSL
+     * @param certificateProfiles               profiles to check certificates against
+     * @param withOcspCheck                     request the OCSP status of certificates, default true
+     * @param ocspRespCache                     cache of OCSP responses shared by all versions, null: no cache
+     * @param withOcspRespSignatureVerification verify OCSP responses against the OCSP signers of the current TSL
+     * @param ocspTransport                     transport of the OCSP requests, default {@link OcspTransport#getDefault()}
+     * @param ocspPriority                      scheduling lane of the OCSP requests of single checks, default {@link OcspPriority#INTERACTIVE}
+     * @param ocspBatchPriority                 scheduling lane of the OCSP requests of batch checks, default {@link OcspPriority#BULK}
+     * @param ocspDeadline                      maximum time until an OCSP response is received, null: no deadline
+     * @throws GemPkiException if the OCSP signer certificates of the initial TSL cannot be read
+     */
+    @Builder
+    private TucPki018TrustStore(@NonNull final String productType, @NonNull final List<TspService> tspServiceList,
+        @NonNull final List<CertificateProfile> certificateProfiles, final Boolean withOcspCheck, final OcspRespCache ocspRespCache,
+        final boolean withOcspRespSignatureVerification, final OcspTransport ocspTransport, final OcspPriority ocspPriority,
+        final OcspPriority ocspBatchPriority, final Duration ocspDeadline) throws GemPkiException {
+        this.productType = productType;
+        this.certificateProfiles = List.copyOf(certificateProfiles);
+        this.withOcspCheck = withOcspCheck == null || withOcspCheck;
+        this.ocspRespCache = ocspRespCache;
+        this.withOcspRespSignatureVerification = withOcspRespSignatureVerification;
+        this.ocspTransport = ocspTransport != null ? ocspTransport : OcspTransport.getDefault();
+        this.ocspPriority = ocspPriority != null ? ocspPriority : OcspPriority.INTERACTIVE;
+        this.ocspBatchPriority = ocspBatchPriority != null ? ocspBatchPriority : OcspPriority.BULK;
+        this.ocspDeadline = ocspDeadline;
+        current.set(prepare(tspServiceList));
+    }
+
+    /**
+     * Prepare a trust version for the given TSP services and publish it. Concurrent updates are published in the order their preparation completes. With OCSP
+     * response signature verification and OCSP signers that differ from the previous TSL, the cached responses whose signer is not trusted by the new TSL are
+     * deleted when the new version is published and again when the previous version is retired, so no response verified only against the OCSP signers of
+     * the previous TSL is used by checks on the new version. Responses of signers trusted by both TSLs remain cached.
+     *
+     * @param tspServiceList TSP services of the new TSL
+     * @return completes when the checks in flight on the previous version have finished and it is retired
+     * @throws GemPkiException if the OCSP signer certificates of the new TSL cannot be read, the current version stays in use
+     */
+    public CompletableFuture<Void> update(@NonNull final List<TspService> tspServiceList) throws GemPkiException {
+        final TrustVersion newVersion = prepare(tspServiceList);
+        final TrustVersion oldVersion = current.getAndSet(newVersion);
+        log.info("Version {} des Trust Stores veröffentlicht, Version {} wird nach Abschluss laufender Prüfungen abgelöst", newVersion.version,
+            oldVersion.version);
+        final boolean ocspSignersChanged = ocspRespCache != null && newVersion.ocspRespSignatureVerifier != null
+            && !newVersion.ocspRespSignatureVerifier.hasSameOcspSigners(oldVersion.ocspRespSignatureVerifier);
+        if (ocspSignersChanged) {
+            retainTrustedOcspResponses(newVersion);
+        }
+        oldVersion.release();
+        if (ocspSignersChanged && !oldVersion.retired.isDone()) {
+            // checks in flight on the previous version may still save responses verified against its OCSP signers
+            return oldVersion.retired.thenRun(() -> retainTrustedOcspResponses(newVersion));
+        }
+        return oldVersion.retired;
+    }
+
+    private void retainTrustedOcspResponses(final TrustVersion version) {
+        final int deleted = ocspRespCache.retainVerifiedResponses(version.ocspRespSignatureVerifier);
+        log.info("{} OCSP Responses nicht mehr vertrauenswürdiger OCSP-Signer aus dem Cache gelöscht (Version {})", deleted, version.version);
+    }
+
+    /**
+     * @return number of the current trust version, incremented by every update
+     */
+    public long getVersion() {
+        return current.get().version;
+    }
+
+    /**
+     * Verify the given end-entity certificate against the current trust version, see {@link TucPki018Verifier#performTucPki18Checks(X509Certificate)}.
+     *
+     * @param x509EeCert end-entity certificate to check
+     * @return the determined {@link Admission}
+     * @throws GemPkiException if the certificate is invalid
+     */
+    public Admission performTucPki18Checks(@NonNull final X509Certificate x509EeCert) throws GemPkiException {
+        return verify(verifier -> verifier.performTucPki18Checks(x509EeCert));
+    }
+
+    /**
+     * Verify the given end-entity certificate with a supplied OCSP response against the current trust version, see
+     * {@link TucPki018Verifier#performTucPki18Checks(X509Certificate, OCSPResp)}.
+     *
+     * @param x509EeCert end-entity certificate to check
+     * @param ocspResp   OCSP response supplied by the caller
+     * @return the determined {@link Admission}
+     * @throws GemPkiException if the certificate is invalid or the signature of the supplied response is invalid
+     */
+    public Admission performTucPki18Checks(@NonNull final X509Certificate x509EeCert, @NonNull final OCSPResp ocspResp) throws GemPkiException {
+        return verify(verifier -> verifier.performTucPki18Checks(x509EeCert, ocspResp));
+    }
+
+    /**
+     * Verify the given end-entity certificates against the current trust version, see {@link TucPki018Verifier#performTucPki18ChecksBatch(List)}.
+     *
+     * @param x509EeCerts end-entity certificates to check
+     * @return the determined {@link Admission}s in order of the given certificates
+     * @throws GemPkiException if one of the certificates is invalid
+     */
+    public List<Admission> performTucPki18ChecksBatch(@NonNull final List<X509Certificate> x509EeCerts) throws GemPkiException {
+        return verify(verifier -> verifier.performTucPki18ChecksBatch(x509EeCerts));
+    }
+
+    /**
+     * Verify the given end-entity certificates against the current trust version with the OCSP requests sent in the given scheduling lane, see
+     * {@link TucPki018Verifier#performTucPki18ChecksBatch(List, OcspPriority)}.
+     *
+     * @param x509EeCerts  end-entity certificates to check
+     * @param ocspPriority scheduling lane of the OCSP requests in the transport
+     * @return the determined {@link Admission}s in order of the given certificates
+     * @throws GemPkiException if one of the certificates is invalid
+     */
+    public List<Admission> performTucPki18ChecksBatch(@NonNull final List<X509Certificate> x509EeCerts, @NonNull final OcspPriority ocspPriority)
+        throws GemPkiException {
+        return verify(verifier -> verifier.performTucPki18ChecksBatch(x509EeCerts, ocspPriority));
+    }
+
+    /**
+     * Run a verification against the current trust version. The version stays in use until the verification returns, even if an update is published in the
+     * meantime, so several checks in one verification see the same TSL.
+     *
+     * @param verification verification using the verifier of the current version
+     * @param <T>          result of the verification
+     * @return the result of the verification
+     * @throws GemPkiException if the verification fails
+     */
+    public <T> T verify(@NonNull final Verification<T> verification) throws GemPkiException {
+        final TrustVersion version = acquire();
+        try {
+            return verification.apply(version.verifier);
+        } finally {
+            version.release();
+        }
+    }
+
+    private TrustVersion acquire() {
+        while (true) {
+            final TrustVersion version = current.get();
+            if (version.tryAcquire()) {
+                return version;
+            }
+            // retired between read and acquire, the new version is already published
+        }
+    }
+
+    private TrustVersion prepare(final List<TspService> tspServiceList) throws GemPkiException {
+        final OcspRespSignatureVerifier ocspRespSignatureVerifier =
+            withOcspRespSignatureVerification ? new OcspRespSignatureVerifier(tspServiceList, productType) : null;
+        final TucPki018Verifier verifier = TucPki018Verifier.builder()
+            .productType(productType)
+            .tspServiceList(List.copyOf(tspServiceList))
+            .certificateProfiles(certificateProfiles)
+            .withOcspCheck(withOcspCheck)
+            .ocspRespCache(ocspRespCache)
+            .ocspRespSignatureVerifier(ocspRespSignatureVerifier)
+            .ocspTransport(ocspTransport)
+            .ocspPriority(ocspPriority)
+            .ocspBatchPriority(ocspBatchPriority)
+            .ocspDeadline(ocspDeadline)
+            .build();
+        // build index, templates, profile rules and the verifier of supplied OCSP responses before the version is published
+        verifier.getContext().getSuppliedOcspRespSignatureVerifier();
+        return new TrustVersion(versionCounter.incrementAndGet(), verifier, ocspRespSignatureVerifier);
+    }
+
+    /**
+     * Verification against one trust version
+     *
+     * @param <T> result of the verification
+     */
+    @FunctionalInterface
+    public interface Verification<T> {
+
+        T apply(TucPki018Verifier verifier) throws GemPkiException;
+    }
+
+    /**
+     * Published state of one TSL. The store holds one reference while the version is current, every check in flight holds another one. The version is retired
+     * when the last reference is released.
+     */
+    private static final class TrustVersion {
+
+        private final long version;
+        private final TucPki018Verifier verifier;
+        private final OcspRespSignatureVerifier ocspRespSignatureVerifier;
+        private final AtomicInteger references = new AtomicInteger(1);
+        private final CompletableFuture<Void> retired = new CompletableFuture<>();
+
+        private TrustVersion(final long version, final TucPki018Verifier verifier, final OcspRespSignatureVerifier ocspRespSignatureVerifier) {
+            this.version = version;
+            this.verifier = verifier;
+            this.ocspRespSignatureVerifier = ocspRespSignatureVerifier;
+        }
+
+        private boolean tryAcquire() {
+            int count = references.get();
+            while (count > 0) {
+                if (references.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+                count = references.get();
+            }
+            return false;
+        }
+
+        private void release() {
+            if (references.decrementAndGet() == 0) {
+                log.debug("Version {} des Trust Stores abgelöst", version);
+                retired.complete(null);
+            }
+        }
+    }
+}
@@ -19,21 +19,37 @@ package de.gematik.pki.certificate;
 import de.gematik.pki.error.ErrorCode;
 import de.gematik.pki.exception.GemPkiException;
 import de.gematik.pki.exception.GemPkiParsingException;
+import de.gematik.pki.ocsp.OcspBatchTransceiver;
+import de.gematik.pki.ocsp.OcspPriority;
 import de.gematik.pki.ocsp.OcspRespCache;
+import de.gematik.pki.ocsp.OcspRespEntry;
+import de.gematik.pki.ocsp.OcspRespSignatureVerifier;
 import de.gematik.pki.ocsp.OcspTransceiver;
-import de.gematik.pki.tsl.TspInformationProvider;
+import de.gematik.pki.ocsp.OcspTransport;
 import de.gematik.pki.tsl.TspService;
 import de.gematik.pki.tsl.TspServiceSubset;
 import java.io.IOException;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
 import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import lombok.AccessLevel;
 import lombok.Builder;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.cert.ocsp.OCSPResp;
 
 /**
  * Entry point to access a verification of certificate(s) regarding standard process called TucPki18. This class works with parameterized variables (defined by
@@ -54,6 +70,41 @@ public class TucPki018Verifier {
     @Builder.Default
     protected final boolean withOcspCheck = true;
     protected final OcspRespCache ocspRespCache;
+    /**
+     * Verifies signature and responder of OCSP responses (TUC_PKI_006), null: no verification
+     */
+    protected final OcspRespSignatureVerifier ocspRespSignatureVerifier;
+    /**
+     * Transport of the OCSP requests with its timeouts, hedging, HTTP caching and rate limits, default {@link OcspTransport#getDefault()}
+     */
+    @Builder.Default
+    protected final OcspTransport ocspTransport = OcspTransport.getDefault();
+    /**
+     * Scheduling lane of the OCSP requests of single checks in the transport, default {@link OcspPriority#INTERACTIVE}
+     */
+    @Builder.Default
+    protected final OcspPriority ocspPriority = OcspPriority.INTERACTIVE;
+    /**
+     * Scheduling lane of the OCSP requests of batch checks in the transport, default {@link OcspPriority#BULK}, see
+     * {@link #performTucPki18ChecksBatch(List, OcspPriority)} for interactive batches
+     */
+    @Builder.Default
+    protected final OcspPriority ocspBatchPriority = OcspPriority.BULK;
+    /**
+     * Maximum time until an OCSP response is received, including waiting in the transport, null: no deadline
+     */
+    protected final Duration ocspDeadline;
+    /**
+     * State derived from the TSL and the profiles, built once on first use
+     */
+    @Getter(lazy = true)
+    private final TucPki018Context context = TucPki018Context.builder()
+        .productType(productType)
+        .tspServiceList(tspServiceList)
+        .certificateProfiles(certificateProfiles)
+        .withOcspCheck(withOcspCheck)
+        .ocspRespSignatureVerifier(ocspRespSignatureVerifier)
+        .build();
 
     /**
      * Verify given end-entity certificate against a list of parameterized certificate profiles {@link CertificateProfile}. If there is no {@link
@@ -65,7 +116,7 @@ public class TucPki018Verifier {
      */
     public Admission performTucPki18Checks(@NonNull final X509Certificate x509EeCert) throws GemPkiException {
         log.debug("TucPki018Checks including OCSP");
-        final TspServiceSubset tspServiceSubset = new TspInformationProvider(tspServiceList, productType).getTspServiceSubset(x509EeCert);
+        final TspServiceSubset tspServiceSubset = getContext().getTspServiceSubset(x509EeCert);
         if (withOcspCheck) {
             doOcsp(x509EeCert, tspServiceSubset);
         } else {
@@ -75,6 +126,72 @@ public class TucPki018Verifier {
         return tucPki018ProfileChecks(x509EeCert, tspServiceSubset);
     }
 
+    /**
+     * Verify given end-entity certificate against a list of parameterized certificate profiles {@link CertificateProfile} with an OCSP response supplied by
+     * the caller, e.g. stapled in a TLS handshake. A fresh response for the certificate with a valid signature of an OCSP signer of the TSL is used without
+     * network lookup and written to the cache, otherwise the status is determined as in {@link #performTucPki18Checks(X509Certificate)}. If there is no
+     * {@link GemPkiException} the verification process ends successfully.
+     *
+     * @param x509EeCert end-entity certificate to check
+     * @param ocspResp   OCSP response supplied by the caller
+     * @return the determined {@link Admission}
+     * @throws GemPkiException if the certificate is invalid or the signature of the supplied response is invalid
+     */
+    public Admission performTucPki18Checks(@NonNull final X509Certificate x509EeCert, @NonNull final OCSPResp ocspResp) throws GemPkiException {
+        log.debug("TucPki018Checks including supplied OCSP response");
+        final TspServiceSubset tspServiceSubset = getContext().getTspServiceSubset(x509EeCert);
+        if (withOcspCheck) {
+            doOcsp(x509EeCert, tspServiceSubset, ocspResp);
+        } else {
+            log.info("Ocsp verification turned off!");
+        }
+        tucPki018CommonChecks(x509EeCert, tspServiceSubset);
+        return tucPki018ProfileChecks(x509EeCert, tspServiceSubset);
+    }
+
+    /**
+     * Verify given end-entity certificates against a list of parameterized certificate profiles {@link CertificateProfile}. The OCSP status of certificates of
+     * the same issuer and SSP is requested with one OCSP request. If there is no {@link GemPkiException} the verification process ends successfully for all
+     * certificates.
+     *
+     * @param x509EeCerts end-entity certificates to check
+     * @return the determined {@link Admission}s in order of the given certificates
+     * @throws GemPkiException if one of the certificates is invalid
+     */
+    public List<Admission> performTucPki18ChecksBatch(@NonNull final List<X509Certificate> x509EeCerts) throws GemPkiException {
+        return performTucPki18ChecksBatch(x509EeCerts, ocspBatchPriority);
+    }
+
+    /**
+     * Verify given end-entity certificates as in {@link #performTucPki18ChecksBatch(List)}, with the OCSP requests sent in the given scheduling lane, e.g.
+     * {@link OcspPriority#INTERACTIVE} for the certificates of a signature someone is waiting for.
+     *
+     * @param x509EeCerts  end-entity certificates to check
+     * @param ocspPriority scheduling lane of the OCSP requests in the transport
+     * @return the determined {@link Admission}s in order of the given certificates
+     * @throws GemPkiException if one of the certificates is invalid
+     */
+    public List<Admission> performTucPki18ChecksBatch(@NonNull final List<X509Certificate> x509EeCerts, @NonNull final OcspPriority ocspPriority)
+        throws GemPkiException {
+        log.debug("TucPki018Checks including OCSP for {} certificates", x509EeCerts.size());
+        final TucPki018Context tucPki018Context = getContext();
+        final List<TspServiceSubset> tspServiceSubsets = new ArrayList<>(x509EeCerts.size());
+        for (final X509Certificate x509EeCert : x509EeCerts) {
+            tspServiceSubsets.add(tucPki018Context.getTspServiceSubset(x509EeCert));
+        }
+        if (withOcspCheck) {
+            doOcsp(x509EeCerts, tspServiceSubsets, ocspPriority);
+        } else {
+            log.info("Ocsp verification turned off!");
+        }
+        final List<Admission> admissions = new ArrayList<>(x509EeCerts.size());
+        for (int i = 0; i < x509EeCerts.size(); i++) {
+            tucPki018CommonChecks(x509EeCerts.get(i), tspServiceSubsets.get(i));
+            admissions.add(tucPki018ProfileChecks(x509EeCerts.get(i), tspServiceSubsets.get(i)));
+        }
+        return admissions;
+    }
+
     protected Admission tucPki018ProfileChecks(@NonNull final X509Certificate x509EeCert, @NonNull final TspServiceSubset tspServiceSubset)
         throws GemPkiException {
         if (certificateProfiles.isEmpty()) {
@@ -87,8 +204,9 @@ public class TucPki018Verifier {
                 tucPki018ChecksForProfile(x509EeCert, certificateProfile, tspServiceSubset);
                 log.debug("Übergebenes Zertifikat wurde erfolgreich gegen das Zertifikatsprofil {} getestet.",
                     certificateProfile);
-                log.debug("Rolle(n): {}", new Admission(x509EeCert).getProfessionItems());
-                return new Admission(x509EeCert);
+                final Admission admission = new Admission(x509EeCert);
+                log.debug("Rolle(n): {}", admission.getProfessionItems());
+                return admission;
             } catch (final RuntimeException | CertificateEncodingException | IOException e) {
                 errors.put(certificateProfile, new GemPkiException(productType, ErrorCode.UNKNOWN, e));
             } catch (final GemPkiException e) {
@@ -103,6 +221,11 @@ public class TucPki018Verifier {
             .x509EeCert(x509EeCert)
             .x509IssuerCert(tspServiceSubset.getX509IssuerCert())
             .ssp(tspServiceSubset.getServiceSupplyPoint())
+            .alternativeSsps(getAlternativeSsps(tspServiceSubset))
+            .ocspTransport(ocspTransport)
+            .priority(ocspPriority)
+            .deadline(ocspDeadline)
+            .ocspRespSignatureVerifier(ocspRespSignatureVerifier)
             .build()
             .verifyOcspStatusGood(ocspRespCache);
         log.info("OCSP verification: " + (ocspVerification ? "pass" : "fail"));
@@ -112,6 +235,81 @@ public class TucPki018Verifier {
         }
     }
 
+    protected void doOcsp(@NonNull final X509Certificate x509EeCert, @NonNull final TspServiceSubset tspServiceSubset, @NonNull final OCSPResp ocspResp)
+        throws GemPkiException {
+        final Optional<OcspRespEntry> suppliedEntry = OcspTransceiver.builder()
+            .x509EeCert(x509EeCert)
+            .x509IssuerCert(tspServiceSubset.getX509IssuerCert())
+            .ssp(tspServiceSubset.getServiceSupplyPoint())
+            .ocspRespSignatureVerifier(getContext().getSuppliedOcspRespSignatureVerifier())
+            .build()
+            .acceptOcspResponse(ocspResp, ocspRespCache);
+        if (suppliedEntry.isEmpty()) {
+            log.info("Supplied OCSP response not usable, requesting OCSP status");
+            doOcsp(x509EeCert, tspServiceSubset);
+            return;
+        }
+        log.info("OCSP verification with supplied response: " + (suppliedEntry.get().isStatusGood() ? "pass" : "fail"));
+        if (!suppliedEntry.get().isStatusGood()) {
+            throw new GemPkiException(productType, ErrorCode.UNKNOWN);
+        }
+    }
+
+    protected void doOcsp(@NonNull final List<X509Certificate> x509EeCerts, @NonNull final List<TspServiceSubset> tspServiceSubsets)
+        throws GemPkiException {
+        doOcsp(x509EeCerts, tspServiceSubsets, ocspBatchPriority);
+    }
+
+    protected void doOcsp(@NonNull final List<X509Certificate> x509EeCerts, @NonNull final List<TspServiceSubset> tspServiceSubsets,
+        @NonNull final OcspPriority ocspPriority) throws GemPkiException {
+        final Map<Entry<X509Certificate, String>, List<X509Certificate>> x509EeCertsByIssuerAndSsp = new LinkedHashMap<>();
+        final Map<String, List<String>> alternativeSspsBySsp = new HashMap<>();
+        for (int i = 0; i < x509EeCerts.size(); i++) {
+            final TspServiceSubset tspServiceSubset = tspServiceSubsets.get(i);
+            x509EeCertsByIssuerAndSsp.computeIfAbsent(
+                    new SimpleImmutableEntry<>(tspServiceSubset.getX509IssuerCert(), tspServiceSubset.getServiceSupplyPoint()), key -> new ArrayList<>())
+                .add(x509EeCerts.get(i));
+            alternativeSspsBySsp.putIfAbsent(tspServiceSubset.getServiceSupplyPoint(), getAlternativeSsps(tspServiceSubset));
+        }
+        final List<CompletableFuture<Map<X509Certificate, Boolean>>> ocspVerifications = new ArrayList<>();
+        x509EeCertsByIssuerAndSsp.forEach((issuerAndSsp, x509EeCertsOfIssuer) -> ocspVerifications.add(OcspBatchTransceiver.builder()
+            .x509EeCerts(x509EeCertsOfIssuer)
+            .x509IssuerCert(issuerAndSsp.getKey())
+            .ssp(issuerAndSsp.getValue())
+            .alternativeSsps(alternativeSspsBySsp.get(issuerAndSsp.getValue()))
+            .ocspTransport(ocspTransport)
+            .priority(ocspPriority)
+            .deadline(ocspDeadline)
+            .ocspRespSignatureVerifier(ocspRespSignatureVerifier)
+            .build()
+            .verifyOcspStatusGoodAsync(ocspRespCache)));
+        for (final CompletableFuture<Map<X509Certificate, Boolean>> ocspVerification : ocspVerifications) {
+            final Map<X509Certificate, Boolean> statusByCert;
+            try {
+                statusByCert = ocspVerification.join();
+            } catch (final CompletionException e) {
+                if (e.getCause() instanceof GemPkiException) {
+                    throw (GemPkiException) e.getCause();
+                }
+                throw new GemPkiException(productType, ErrorCode.UNKNOWN, e);
+            }
+            for (final Entry<X509Certificate, Boolean> status : statusByCert.entrySet()) {
+                log.info("OCSP verification of {}: {}", status.getKey().getSerialNumber(), status.getValue() ? "pass" : "fail");
+                if (!status.getValue()) {
+                    throw new GemPkiException(productType, ErrorCode.UNKNOWN);
+                }
+            }
+        }
+    }
+
+    private static List<String> getAlternativeSsps(final TspServiceSubset tspServiceSubset) {
+        final List<String> serviceSupplyPoints = tspServiceSubset.getServiceSupplyPoints();
+        if (serviceSupplyPoints == null || serviceSupplyPoints.size() < 2) {
+            return List.of();
+        }
+        return serviceSupplyPoints.subList(1, serviceSupplyPoints.size());
+    }
+
     /**
      * Verify given end-entity certificate against a parameterized single certificate profile {@link CertificateProfile}. If there is no {@link GemPkiException}
      * the verification process ends successfully.
@@ -123,16 +321,7 @@ public class TucPki018Verifier {
      */
     protected void tucPki018ChecksForProfile(@NonNull final X509Certificate x509EeCert, @NonNull final CertificateProfile certificateProfile,
         @NonNull final TspServiceSubset tspServiceSubset) throws GemPkiException {
-        final CertificateProfileVerification cv = CertificateProfileVerification.builder()
-            .x509EeCert(x509EeCert)
-            .certificateProfile(certificateProfile)
-            .tspServiceSubset(tspServiceSubset)
-            .productType(productType)
-            .build();
-
-        cv.verifyKeyUsage();
-        cv.verifyExtendedKeyUsage();
-        cv.verifyCertificateType();
+        getContext().verifyCertificateProfile(x509EeCert, certificateProfile, tspServiceSubset);
     }
 
     protected void tucPki018CommonChecks(@NonNull final X509Certificate x509EeCert, @NonNull final TspServiceSubset tspServiceSubset) throws GemPkiException {
@@ -38,6 +38,8 @@ public enum ErrorCode {
         "Das Element „Service-Supply Point“ konnte nicht gefunden werden."),
     TE_1027(ErrorSeverity.ERROR, ErrorClassifier.TECHNICAL_ERROR, "CA_CERT_MISSING",
         "CA kann nicht in den TSL-Informationen ermittelt werden."),
+    TE_1030(ErrorSeverity.ERROR, ErrorClassifier.TECHNICAL_ERROR, "OCSP_CERT_MISSING",
+        "OCSP-Signer-Zertifikat kann nicht in den TSL-Informationen ermittelt werden."),
 
     SE_1003(ErrorSeverity.ERROR, ErrorClassifier.SECURITY_ERROR, "MULTIPLE_TRUST_ANCHOR",
         "Mehr als ein markierter V-Anker gefunden"),
@@ -56,6 +58,8 @@ public enum ErrorCode {
             + "Subject Key Identifier des CA Zertifikats unterschiedlich."),
     SE_1024(ErrorSeverity.ERROR, ErrorClassifier.SECURITY_ERROR, "CERTIFICATE_NOT_VALID_MATH",
         "Zertifikats-Signatur ist mathematisch nicht gültig."),
+    SE_1031(ErrorSeverity.ERROR, ErrorClassifier.SECURITY_ERROR, "OCSP_SIGNATURE_ERROR",
+        "Signatur der OCSP-Response ist mathematisch nicht gültig."),
     SE_1033(ErrorSeverity.ERROR, ErrorClassifier.SECURITY_ERROR, "CERT_TYPE_INFO_MISSING",
         "Kein Element PolicyIdentifier vorhanden."),
     SE_1036(ErrorSeverity.ERROR, ErrorClassifier.SECURITY_ERROR, "CA_CERTIFICATE_REVOKED_IN_TSL",
@@ -68,6 +72,8 @@ public enum ErrorCode {
         "Ein interner, unbekannter Fehler ist aufgetreten."),
     OCSP(ErrorSeverity.ERROR, ErrorClassifier.INTERNAL_ERROR, "INTERNAL_GENERAL_OCSP_ERROR",
         "Ein interner, allgemeiner OCSP Fehler ist aufgetreten."),
+    OCSP_REJECTED(ErrorSeverity.ERROR, ErrorClassifier.INTERNAL_ERROR, "INTERNAL_OCSP_REQUEST_REJECTED",
+        "OCSP Request wurde abgelehnt, die Deadline kann nicht eingehalten werden."),
     CERTIFICATE_READ(ErrorSeverity.ERROR, ErrorClassifier.INTERNAL_ERROR, "EE_CERTIFICATE_READ_ERROR",
         "Es ist ein Fehler beim Lesen des EndEntity Zertifikats aufgetreten."),
     TSL_READ(ErrorSeverity.ERROR, ErrorClassifier.INTERNAL_ERROR, "TSL_READ_ERROR",
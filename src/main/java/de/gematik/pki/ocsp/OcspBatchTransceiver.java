@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.gematik.pki.ocsp;
+
+import de.gematik.pki.exception.GemPkiException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+
+/**
+ * Class to verify the OCSP status of several end-entity certificates of the same issuer with one OCSP request per SSP round trip. Certificates with a cached
+ * OCSP response are not requested again.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Builder
+public class OcspBatchTransceiver {
+
+    public static final int DEFAULT_MAX_CERTIFICATES_PER_REQUEST = 50;
+
+    @NonNull
+    private final List<X509Certificate> x509EeCerts;
+    @NonNull
+    private final X509Certificate x509IssuerCert;
+    @NonNull
+    private final String ssp;
+    /**
+     * Further SSPs of the same OCSP responder, used for failover and hedged requests, see {@link OcspTransport}
+     */
+    @Builder.Default
+    private final List<String> alternativeSsps = List.of();
+    /**
+     * Scheduling lane of the requests in the transport, default {@link OcspPriority#BULK}
+     */
+    @Builder.Default
+    private final OcspPriority priority = OcspPriority.BULK;
+    /**
+     * Maximum time until a response is received, including waiting in the transport, null: no deadline
+     */
+    private final Duration deadline;
+    @Builder.Default
+    private final int maxCertificatesPerRequest = DEFAULT_MAX_CERTIFICATES_PER_REQUEST;
+    @Builder.Default
+    private final OcspTransport ocspTransport = OcspTransport.getDefault();
+    /**
+     * Verifies signature and responder of received responses before they are used or cached, null: no verification
+     */
+    private final OcspRespSignatureVerifier ocspRespSignatureVerifier;
+
+    /**
+     * Verifies OCSP status of all end-entity certificates. Sends one OCSP request for all certificates without cached OCSP response (several requests if
+     * there are more than maxCertificatesPerRequest). Received responses are written to the cache.
+     *
+     * @param ocspRespCache Cache for OCSP Responses
+     * @return map of each end-entity certificate to true if its certificate status is GOOD, in order of the given certificates
+     * @throws GemPkiException
+     */
+    public Map<X509Certificate, Boolean> verifyOcspStatusGood(final OcspRespCache ocspRespCache) throws GemPkiException {
+        return OcspTransceiver.join(verifyOcspStatusGoodAsync(ocspRespCache));
+    }
+
+    /**
+     * Verifies OCSP status of all end-entity certificates asynchronously, see {@link #verifyOcspStatusGood(OcspRespCache)}.
+     *
+     * @param ocspRespCache Cache for OCSP Responses
+     * @return future of the status map, completes exceptionally with a {@link GemPkiException} on errors
+     */
+    public CompletableFuture<Map<X509Certificate, Boolean>> verifyOcspStatusGoodAsync(final OcspRespCache ocspRespCache) {
+        final Map<X509Certificate, OcspCertId> certIds = new LinkedHashMap<>();
+        final Map<OcspCertId, Boolean> statusByCertId = new LinkedHashMap<>();
+        final List<CertificateID> uncached = new ArrayList<>();
+        try {
+            for (final X509Certificate x509EeCert : x509EeCerts) {
+                final CertificateID certificateId = OcspRequestGenerator.generateCertificateId(x509EeCert, x509IssuerCert);
+                final OcspCertId certId = OcspCertId.of(certificateId);
+                certIds.put(x509EeCert, certId);
+                final Optional<OcspRespEntry> cached = ocspRespCache != null ? ocspRespCache.getResponse(certId) : Optional.empty();
+                if (cached.isPresent()) {
+                    statusByCertId.put(certId, cached.get().isStatusGood());
+                } else if (!statusByCertId.containsKey(certId)) {
+                    statusByCertId.put(certId, false);
+                    uncached.add(certificateId);
+                }
+            }
+        } catch (final GemPkiException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        final List<CompletableFuture<Map<OcspCertId, OcspRespEntry>>> requests = new ArrayList<>();
+        for (int i = 0; i < uncached.size(); i += maxCertificatesPerRequest) {
+            requests.add(sendOcspRequestAsync(uncached.subList(i, Math.min(i + maxCertificatesPerRequest, uncached.size())), ocspRespCache));
+        }
+        return CompletableFuture.allOf(requests.toArray(new CompletableFuture[0])).thenApply(v -> {
+            requests.forEach(request -> request.join().forEach((certId, entry) -> statusByCertId.computeIfPresent(certId,
+                (key, status) -> entry.isStatusGood())));
+            final Map<X509Certificate, Boolean> result = new LinkedHashMap<>();
+            certIds.forEach((x509EeCert, certId) -> result.put(x509EeCert, statusByCertId.get(certId)));
+            return result;
+        });
+    }
+
+    private CompletableFuture<Map<OcspCertId, OcspRespEntry>> sendOcspRequestAsync(final List<CertificateID> certificateIds,
+        final OcspRespCache ocspRespCache) {
+        try {
+            log.info("Send OCSP Request for {} certificates to: {}", certificateIds.size(), ssp);
+            final OCSPReq ocspReq = OcspRequestGenerator.generateOcspRequest(certificateIds);
+            final Set<OcspCertId> requestedCertIds = new HashSet<>();
+            certificateIds.forEach(certificateId -> requestedCertIds.add(OcspCertId.of(certificateId)));
+            return ocspTransport.sendAsync(OcspTransport.sspsOf(ssp, alternativeSsps), ocspReq, priority, deadline)
+                .thenApply(ocspResp -> evaluate(ocspResp, requestedCertIds, ocspRespCache));
+        } catch (final GemPkiException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Verify a received response and pick the single responses of the requested certificates. Single responses of certificates that were not requested are
+     * ignored, so a responder cannot fill the cache with them.
+     */
+    private Map<OcspCertId, OcspRespEntry> evaluate(final OCSPResp ocspResp, final Set<OcspCertId> requestedCertIds, final OcspRespCache ocspRespCache) {
+        try {
+            if (ocspRespSignatureVerifier != null) {
+                ocspRespSignatureVerifier.verify(ocspResp);
+            }
+            final Map<OcspCertId, OcspRespEntry> entries = OcspVerifier.getSingleResponsesByCertId(ocspResp);
+            if (entries.keySet().retainAll(requestedCertIds)) {
+                log.info("OCSP Response enthält nicht angefragte Zertifikate, diese werden ignoriert");
+            }
+            if (ocspRespCache != null) {
+                entries.values().forEach(ocspRespCache::saveFetchedResponse);
+            }
+            return entries;
+        } catch (final GemPkiException e) {
+            throw new CompletionException(e);
+        }
+    }
+}
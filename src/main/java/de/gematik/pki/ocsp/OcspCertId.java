@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.gematik.pki.ocsp;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import lombok.NonNull;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.cert.ocsp.CertificateID;
+
+/**
+ * Compact, immutable key of a certificate in OCSP context: hash algorithm, issuerNameHash, issuerKeyHash and serial number of a {@link CertificateID} packed
+ * into one byte array. Serial numbers are unique per issuer only, so the issuer hashes are part of the key. The issuer hashes are only comparable under the
+ * same hash algorithm, so its OID is part of the key as well.
+ */
+public final class OcspCertId {
+
+    private final byte[] key;
+    private final int hashCode;
+
+    private OcspCertId(final byte[] key) {
+        this.key = key;
+        this.hashCode = Arrays.hashCode(key);
+    }
+
+    /**
+     * Create key from a BouncyCastle certificate id
+     *
+     * @param certificateId certificate id of an OCSP request or single response
+     * @return the key
+     */
+    public static OcspCertId of(@NonNull final CertificateID certificateId) {
+        return of(certificateId.getHashAlgOID(), certificateId.getIssuerNameHash(), certificateId.getIssuerKeyHash(), certificateId.getSerialNumber());
+    }
+
+    /**
+     * Create key from its components
+     *
+     * @param hashAlgorithm  OID of the hash algorithm of the issuer hashes
+     * @param issuerNameHash hash of the issuer name
+     * @param issuerKeyHash  hash of the issuer public key
+     * @param serialNumber   serial number of the certificate
+     * @return the key
+     */
+    public static OcspCertId of(@NonNull final ASN1ObjectIdentifier hashAlgorithm, @NonNull final byte[] issuerNameHash,
+        @NonNull final byte[] issuerKeyHash, @NonNull final BigInteger serialNumber) {
+        final byte[] algorithm = hashAlgorithm.getId().getBytes(StandardCharsets.US_ASCII);
+        final byte[] serial = serialNumber.toByteArray();
+        final ByteBuffer buffer = ByteBuffer.allocate(3 + algorithm.length + issuerNameHash.length + issuerKeyHash.length + serial.length);
+        buffer.put((byte) algorithm.length).put(algorithm);
+        buffer.put((byte) issuerNameHash.length).put(issuerNameHash);
+        buffer.put((byte) issuerKeyHash.length).put(issuerKeyHash);
+        buffer.put(serial);
+        return new OcspCertId(buffer.array());
+    }
+
+    /**
+     * Getter for the serial number of the certificate
+     *
+     * @return serial number
+     */
+    public BigInteger getSerialNumber() {
+        return new BigInteger(Arrays.copyOfRange(key, serialOffset(), key.length));
+    }
+
+    /**
+     * Getter for the issuer part of the key (hash algorithm, issuerNameHash and issuerKeyHash), equal for all certificates of one issuer
+     *
+     * @return read only buffer of the issuer hashes
+     */
+    ByteBuffer getIssuerKey() {
+        return ByteBuffer.wrap(key, 0, serialOffset()).slice().asReadOnlyBuffer();
+    }
+
+    private int serialOffset() {
+        final int issuerNameHashOffset = 1 + (key[0] & 0xff);
+        final int issuerKeyHashOffset = issuerNameHashOffset + 1 + (key[issuerNameHashOffset] & 0xff);
+        return issuerKeyHashOffset + 1 + (key[issuerKeyHashOffset] & 0xff);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof OcspCertId)) {
+            return false;
+        }
+        final OcspCertId other = (OcspCertId) o;
+        return hashCode == other.hashCode && Arrays.equals(key, other.key);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return "OcspCertId(serialNumber=" + getSerialNumber() + ")";
+    }
+}
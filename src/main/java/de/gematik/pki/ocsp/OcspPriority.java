@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.gematik.pki.ocsp;
+
+/**
+ * Scheduling lane of OCSP requests in the {@link OcspTransport}
+ */
+public enum OcspPriority {
+    /**
+     * Requests someone is waiting for, e.g. a login. Started before all bulk requests.
+     */
+    INTERACTIVE,
+    /**
+     * Background requests, e.g. re-validation jobs. Use only part of the connections to a host.
+     */
+    BULK
+}
@@ -16,11 +16,16 @@
 
 package de.gematik.pki.ocsp;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import de.gematik.pki.error.ErrorCode;
 import de.gematik.pki.exception.GemPkiException;
+import java.math.BigInteger;
 import java.security.Security;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
 import lombok.AccessLevel;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
@@ -29,7 +34,7 @@ import org.bouncycastle.cert.ocsp.CertificateID;
 import org.bouncycastle.cert.ocsp.OCSPException;
 import org.bouncycastle.cert.ocsp.OCSPReq;
 import org.bouncycastle.cert.ocsp.OCSPReqBuilder;
-import org.bouncycastle.operator.DigestCalculator;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.operator.DigestCalculatorProvider;
 import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
@@ -40,6 +45,23 @@ import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
 @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
 public class OcspRequestGenerator {
 
+    private static final int MAXIMUM_CERTIFICATE_ID_TEMPLATES = 10_000;
+    private static final DigestCalculatorProvider DIGEST_CALCULATOR_PROVIDER;
+    private static final Cache<X509Certificate, CertificateID> CERTIFICATE_ID_TEMPLATES = Caffeine.newBuilder()
+        .maximumSize(MAXIMUM_CERTIFICATE_ID_TEMPLATES)
+        .build();
+
+    static {
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+        try {
+            DIGEST_CALCULATOR_PROVIDER = new JcaDigestCalculatorProviderBuilder().build();
+        } catch (final OperatorCreationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     /**
      * Generates an OCSP request using BouncyCastle.
      *
@@ -50,19 +72,107 @@ public class OcspRequestGenerator {
      */
     public static OCSPReq generateSingleOcspRequest(@NonNull final X509Certificate x509EeCert,
         @NonNull final X509Certificate x509IssuerCert) throws GemPkiException {
-        Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
-        final JcaDigestCalculatorProviderBuilder digestCalculatorProviderBuilder = new JcaDigestCalculatorProviderBuilder();
-        final DigestCalculatorProvider digestCalculatorProvider;
+        return generateSingleOcspRequest(generateCertificateId(x509EeCert, x509IssuerCert));
+    }
+
+    /**
+     * Generates an OCSP request for a given certificate id using BouncyCastle.
+     *
+     * @param certificateId id of the certificate to request the status for
+     * @return OCSP request for a single certificate
+     * @throws GemPkiException if the ocsp request cannot be generated
+     */
+    public static OCSPReq generateSingleOcspRequest(@NonNull final CertificateID certificateId) throws GemPkiException {
+        return generateOcspRequest(List.of(certificateId));
+    }
+
+    /**
+     * Generates one OCSP request for several end-entity certificates of the same issuer using BouncyCastle.
+     *
+     * @param x509EeCerts    end-entity certificates
+     * @param x509IssuerCert issuer of all end-entity certificates
+     * @return OCSP request with one single request per certificate
+     * @throws GemPkiException if the ocsp request cannot be generated
+     */
+    public static OCSPReq generateOcspRequest(@NonNull final List<X509Certificate> x509EeCerts,
+        @NonNull final X509Certificate x509IssuerCert) throws GemPkiException {
+        final List<CertificateID> certificateIds = new ArrayList<>(x509EeCerts.size());
+        for (final X509Certificate x509EeCert : x509EeCerts) {
+            certificateIds.add(generateCertificateId(x509EeCert, x509IssuerCert));
+        }
+        return generateOcspRequest(certificateIds);
+    }
+
+    /**
+     * Generates one OCSP request for several certificate ids using BouncyCastle.
+     *
+     * @param certificateIds ids of the certificates to request the status for
+     * @return OCSP request with one single request per certificate id
+     * @throws GemPkiException if the ocsp request cannot be generated
+     */
+    public static OCSPReq generateOcspRequest(@NonNull final List<CertificateID> certificateIds) throws GemPkiException {
+        if (certificateIds.isEmpty()) {
+            throw new GemPkiException(ErrorCode.OCSP, "OCSP request Erzeugung fehlgeschlagen, keine Zertifikate angegeben");
+        }
         try {
-            digestCalculatorProvider = digestCalculatorProviderBuilder.build();
-            final DigestCalculator digestCalculator = digestCalculatorProvider.get(CertificateID.HASH_SHA1);
-            // Generate the id for the certificate we are looking for
-            final CertificateID id = new CertificateID(digestCalculator, new JcaX509CertificateHolder(x509IssuerCert),
-                x509EeCert.getSerialNumber());
-            // basic request generation with nonce
             final OCSPReqBuilder gen = new OCSPReqBuilder();
-            gen.addRequest(id);
+            for (final CertificateID certificateId : certificateIds) {
+                gen.addRequest(certificateId);
+            }
             return gen.build();
+        } catch (final OCSPException e) {
+            throw new GemPkiException(ErrorCode.OCSP, "OCSP request Erzeugung fehlgeschlagen", e);
+        }
+    }
+
+    /**
+     * Generates the OCSP certificate id (SHA-1 hashes of issuer name and key, serial number) of an end-entity certificate. The hashes of an issuer are
+     * computed once and reused for all certificates of that issuer.
+     *
+     * @param x509EeCert     end-entity certificate
+     * @param x509IssuerCert issuer of end-entity certificate
+     * @return certificate id
+     * @throws GemPkiException if the certificate id cannot be generated
+     */
+    public static CertificateID generateCertificateId(@NonNull final X509Certificate x509EeCert,
+        @NonNull final X509Certificate x509IssuerCert) throws GemPkiException {
+        return generateCertificateId(x509IssuerCert, x509EeCert.getSerialNumber());
+    }
+
+    /**
+     * Generates the OCSP certificate id of the certificate with the given serial number of an issuer.
+     *
+     * @param x509IssuerCert issuer certificate
+     * @param serialNumber   serial number of a certificate of the issuer
+     * @return certificate id
+     * @throws GemPkiException if the certificate id cannot be generated
+     */
+    public static CertificateID generateCertificateId(@NonNull final X509Certificate x509IssuerCert, @NonNull final BigInteger serialNumber)
+        throws GemPkiException {
+        return CertificateID.deriveCertificateID(getCertificateIdTemplate(x509IssuerCert), serialNumber);
+    }
+
+    /**
+     * Computes the hashes of issuer name and key of the given issuer in advance, e.g. for all issuers of a TSL when it is loaded. Otherwise they are computed
+     * with the first certificate id of that issuer.
+     *
+     * @param x509IssuerCert issuer certificate
+     * @throws GemPkiException if the hashes cannot be computed
+     */
+    public static void precomputeCertificateIdTemplate(@NonNull final X509Certificate x509IssuerCert) throws GemPkiException {
+        getCertificateIdTemplate(x509IssuerCert);
+    }
+
+    private static CertificateID getCertificateIdTemplate(final X509Certificate x509IssuerCert) throws GemPkiException {
+        final CertificateID template = CERTIFICATE_ID_TEMPLATES.getIfPresent(x509IssuerCert);
+        if (template != null) {
+            return template;
+        }
+        try {
+            final CertificateID newTemplate = new CertificateID(DIGEST_CALCULATOR_PROVIDER.get(CertificateID.HASH_SHA1),
+                new JcaX509CertificateHolder(x509IssuerCert), BigInteger.ZERO);
+            CERTIFICATE_ID_TEMPLATES.put(x509IssuerCert, newTemplate);
+            return newTemplate;
         } catch (final OperatorCreationException | CertificateEncodingException | OCSPException e) {
             throw new GemPkiException(ErrorCode.OCSP, "OCSP request Erzeugung fehlgeschlagen", e);
         }
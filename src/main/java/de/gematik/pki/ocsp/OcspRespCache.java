@@ -16,56 +16,178 @@
 
 package de.gematik.pki.ocsp;
 
-import java.math.BigInteger;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import de.gematik.pki.error.ErrorCode;
+import de.gematik.pki.exception.GemPkiException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 
 /**
- * Class to support ocsp a responder cache (to implement ocsp grace periods) old entries of the cache are deleted when a cached entry is requested
+ * Class to support ocsp a responder cache (to implement ocsp grace periods). Entries are keyed by the full OCSP certificate id {@link OcspCertId} and
+ * hold the pre-parsed single response {@link OcspRespEntry}, a cache hit needs no ASN.1 decoding. An entry expires when thisUpdate of its response plus
+ * its time to live has passed: the grace period, or the validity of the response (nextUpdate - thisUpdate) if that is shorter. With a revocation churn
+ * factor set, the time to live of the responses of a CA is shortened further by the share of recent revocations among the responses fetched for this
+ * CA, so CAs that rarely revoke can be cached with a long grace period without loosening freshness for those that do. Entries with status revoked do
+ * not expire. The number of entries is bounded, when the bound is reached the cache evicts by access frequency (W-TinyLFU), so frequently requested
+ * certificates stay cached while one-off lookups do not displace them. Lookups do not lock.
  */
+@Slf4j
 public class OcspRespCache {
 
-    private int ocspGracePeriodSeconds;
-    private final ConcurrentHashMap<BigInteger, OCSPResp> cache = new ConcurrentHashMap<>();
+    public static final long DEFAULT_MAXIMUM_SIZE = 100_000;
+    public static final int DEFAULT_REFRESH_AHEAD_MIN_HITS = 2;
+    private static final long REFRESH_BACKOFF_MILLIS = 1000;
+    private static final int SNAPSHOT_MAGIC = 0x4F435350; // "OCSP"
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int MAX_SNAPSHOT_RECORD_LENGTH = 1024 * 1024;
+    private static final long REVOCATION_STATS_HALF_LIFE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long REVOCATION_STATS_MAXIMUM_ISSUERS = 10_000;
+
+    private volatile int ocspGracePeriodSeconds;
+    private volatile int refreshAheadSeconds;
+    private volatile int refreshAheadMinHits = DEFAULT_REFRESH_AHEAD_MIN_HITS;
+    private volatile double revocationChurnFactor;
+    private final Cache<ByteBuffer, RevocationStats> revocationStatsByIssuer = Caffeine.newBuilder()
+        .maximumSize(REVOCATION_STATS_MAXIMUM_ISSUERS)
+        .expireAfterWrite(REVOCATION_STATS_HALF_LIFE_MILLIS * 24, TimeUnit.MILLISECONDS)
+        .build();
+    private final long maximumSize;
+    private final Cache<OcspCertId, CacheEntry> cache;
 
     /**
-     * Constructor
+     * Constructor for a cache with {@link #DEFAULT_MAXIMUM_SIZE} entries at most
      *
      * @param ocspGracePeriodSeconds of the ocsp grace period in seconds
      */
     public OcspRespCache(final int ocspGracePeriodSeconds) {
+        this(ocspGracePeriodSeconds, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param ocspGracePeriodSeconds of the ocsp grace period in seconds
+     * @param maximumSize            maximum number of cached responses
+     */
+    public OcspRespCache(final int ocspGracePeriodSeconds, final long maximumSize) {
         this.ocspGracePeriodSeconds = ocspGracePeriodSeconds;
+        this.maximumSize = maximumSize;
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfter(new GracePeriodExpiry())
+            .recordStats()
+            .build();
+    }
+
+    /**
+     * Reading the response for a specific certificate. This method is thread safe and does not block concurrent lookups.
+     *
+     * @param certId OCSP certificate id of the certificate to ask the response for
+     * @return optional of the cached single response
+     */
+    public Optional<OcspRespEntry> getResponse(@NonNull final OcspCertId certId) {
+        final CacheEntry cacheEntry = cache.getIfPresent(certId);
+        if (cacheEntry == null) {
+            return Optional.empty();
+        }
+        cacheEntry.hits.incrementAndGet();
+        return Optional.of(cacheEntry.ocspRespEntry);
+    }
+
+    /**
+     * Writing all single responses of an ocsp response to the cache, each keyed by its certificate id.
+     *
+     * @param ocspResp ocsp response
+     * @throws GemPkiException exception thrown if ocsp response cannot be evaluated
+     */
+    public void saveResponse(@NonNull final OCSPResp ocspResp) throws GemPkiException {
+        for (final OcspRespEntry entry : OcspVerifier.getSingleResponses(ocspResp)) {
+            saveResponse(entry);
+        }
+    }
+
+    /**
+     * Writing a single response to the cache
+     *
+     * @param ocspRespEntry pre-parsed single response
+     */
+    public void saveResponse(@NonNull final OcspRespEntry ocspRespEntry) {
+        cache.put(ocspRespEntry.getCertId(), new CacheEntry(ocspRespEntry));
+    }
+
+    /**
+     * Writing a single response to the cache unless a response of the same certificate with a later thisUpdate is already cached. Check and write are atomic,
+     * so an older response (e.g. supplied by a caller or read from a snapshot) never replaces a newer one.
+     *
+     * @param ocspRespEntry pre-parsed single response
+     * @return the cached single response of the certificate afterwards, the given one or the newer one already cached
+     */
+    public OcspRespEntry saveResponseIfNewer(@NonNull final OcspRespEntry ocspRespEntry) {
+        return cache.asMap().compute(ocspRespEntry.getCertId(), (certId, cacheEntry) -> isSuperseded(ocspRespEntry, cacheEntry) ? cacheEntry
+            : new CacheEntry(ocspRespEntry)).ocspRespEntry;
     }
 
     /**
-     * Reading the response for a specific certificate
+     * Writing all single responses of an ocsp response fetched from the responder after a cache miss to the cache. Unlike
+     * {@link #saveResponse(OCSPResp)} the responses count towards the revocation rate of their CA, see {@link #setRevocationChurnFactor(double)}.
+     * Refreshed, restored or supplied responses are no new observations and are saved with {@link #saveResponse(OCSPResp)}.
      *
-     * @param x509EeCertSerialNumber big integer of the certificate serial number to ask the response for
-     * @return optional of ocsp response
+     * @param ocspResp ocsp response
+     * @throws GemPkiException exception thrown if ocsp response cannot be evaluated
      */
-    public synchronized Optional<OCSPResp> getResponse(final BigInteger x509EeCertSerialNumber) {
-        deleteExpiredResponses();
-        return Optional.ofNullable(cache.get(x509EeCertSerialNumber));
+    public void saveFetchedResponse(@NonNull final OCSPResp ocspResp) throws GemPkiException {
+        for (final OcspRespEntry entry : OcspVerifier.getSingleResponses(ocspResp)) {
+            saveFetchedResponse(entry);
+        }
     }
 
     /**
-     * Writing ocsp response to the cache
+     * Writing a single response fetched from the responder after a cache miss to the cache, see {@link #saveFetchedResponse(OCSPResp)}
      *
-     * @param x509EeCertSerialNumber big integer of serial of the certificate
-     * @param ocspResp               ocsp response
+     * @param ocspRespEntry pre-parsed single response
      */
-    public void saveResponse(final BigInteger x509EeCertSerialNumber, final OCSPResp ocspResp) {
-        cache.put(x509EeCertSerialNumber, ocspResp);
+    public void saveFetchedResponse(@NonNull final OcspRespEntry ocspRespEntry) {
+        recordRevocationStats(ocspRespEntry);
+        saveResponse(ocspRespEntry);
     }
 
     /**
-     * Setter for a new ocsp grace period
+     * Setter for a new ocsp grace period. The expiry of all cached entries is recalculated.
      *
      * @param ocspGracePeriodSeconds the new grace period in seconds
      */
     public void setOcspGracePeriodSeconds(final int ocspGracePeriodSeconds) {
         this.ocspGracePeriodSeconds = ocspGracePeriodSeconds;
+        final long now = System.currentTimeMillis();
+        cache.policy().expireVariably().ifPresent(expiry -> cache.asMap().forEach((key, value) -> {
+            final long remainingNanos = getRemainingNanos(value.ocspRespEntry, now);
+            if (remainingNanos == 0) {
+                cache.invalidate(key);
+            } else {
+                expiry.setExpiresAfter(key, remainingNanos, TimeUnit.NANOSECONDS);
+            }
+        }));
     }
 
     /**
@@ -77,16 +199,431 @@ public class OcspRespCache {
         return ocspGracePeriodSeconds;
     }
 
+    /**
+     * Setter for the refresh-ahead window. A cached response that was requested at least {@link #getRefreshAheadMinHits()} times and expires within this
+     * window is due for an asynchronous refresh, see {@link #tryStartRefresh(OcspCertId)}. A value of 0 turns refresh-ahead off (default).
+     *
+     * @param refreshAheadSeconds the refresh-ahead window in seconds
+     */
+    public void setRefreshAheadSeconds(final int refreshAheadSeconds) {
+        this.refreshAheadSeconds = refreshAheadSeconds;
+    }
+
+    /**
+     * Getter for the refresh-ahead window
+     *
+     * @return refresh-ahead window in seconds, 0 if refresh-ahead is turned off
+     */
+    public int getRefreshAheadSeconds() {
+        return refreshAheadSeconds;
+    }
+
+    /**
+     * Setter for the number of lookups a cached response needs before it is refreshed ahead of its expiry
+     *
+     * @param refreshAheadMinHits minimum number of lookups
+     */
+    public void setRefreshAheadMinHits(final int refreshAheadMinHits) {
+        this.refreshAheadMinHits = refreshAheadMinHits;
+    }
+
+    /**
+     * Getter for the number of lookups a cached response needs before it is refreshed ahead of its expiry
+     *
+     * @return minimum number of lookups
+     */
+    public int getRefreshAheadMinHits() {
+        return refreshAheadMinHits;
+    }
+
+    /**
+     * Check whether a cached response is due for a refresh and claim the refresh for the caller. At most one refresh per entry is in progress at a time, the
+     * caller that gets true must finish it with {@link #saveRefreshedResponse(OcspRespEntry)} or {@link #refreshFailed(OcspCertId)}. The cached response
+     * stays valid during the refresh.
+     *
+     * @param certId OCSP certificate id of the cached response
+     * @return true if the caller has to refresh the response
+     */
+    public boolean tryStartRefresh(@NonNull final OcspCertId certId) {
+        if (refreshAheadSeconds <= 0) {
+            return false;
+        }
+        final CacheEntry cacheEntry = cache.asMap().get(certId);
+        if (cacheEntry == null || cacheEntry.hits.get() < refreshAheadMinHits) {
+            return false;
+        }
+        final long now = System.currentTimeMillis();
+        if (now < cacheEntry.nextRefreshMillis
+            || getRemainingNanos(cacheEntry.ocspRespEntry, now) > TimeUnit.SECONDS.toNanos(refreshAheadSeconds)) {
+            return false;
+        }
+        return cacheEntry.refreshing.compareAndSet(false, true);
+    }
+
+    /**
+     * Finish a refresh claimed by {@link #tryStartRefresh(OcspCertId)} with the new response. It replaces the cached response only if that is still cached,
+     * a refresh that outlives {@link #clear()} or the eviction of its entry is dropped.
+     *
+     * @param ocspRespEntry pre-parsed single response of the refreshed certificate
+     * @return true if the cached response was replaced
+     */
+    public boolean saveRefreshedResponse(@NonNull final OcspRespEntry ocspRespEntry) {
+        return cache.asMap().computeIfPresent(ocspRespEntry.getCertId(), (certId, cacheEntry) -> new CacheEntry(ocspRespEntry)) != null;
+    }
+
+    /**
+     * Release a refresh claimed by {@link #tryStartRefresh(OcspCertId)} that did not succeed. The cached response stays untouched, the next refresh of it is
+     * delayed with exponential backoff.
+     *
+     * @param certId OCSP certificate id of the cached response
+     */
+    public void refreshFailed(@NonNull final OcspCertId certId) {
+        final CacheEntry cacheEntry = cache.asMap().get(certId);
+        if (cacheEntry == null) {
+            return;
+        }
+        final int failedRefreshes = Math.min(cacheEntry.failedRefreshes.incrementAndGet(), 16);
+        cacheEntry.nextRefreshMillis = System.currentTimeMillis() + (REFRESH_BACKOFF_MILLIS << (failedRefreshes - 1));
+        cacheEntry.refreshing.set(false);
+    }
+
+    /**
+     * Setter for the revocation churn factor. The time to live of a response is divided by (1 + factor * share of recent revocations among the responses
+     * fetched for its CA), a revocation is recent if it happened within the grace period before thisUpdate. E.g. with factor 100 a CA with 1% recent
+     * revocations is cached half as long. The share is taken over an exponentially decaying window, a fetched response counts half after one hour. A
+     * value of 0 turns the adaption off (default). The new factor applies to responses saved afterwards.
+     *
+     * @param revocationChurnFactor factor, 0 or greater
+     */
+    public void setRevocationChurnFactor(final double revocationChurnFactor) {
+        this.revocationChurnFactor = Math.max(0, revocationChurnFactor);
+    }
+
+    /**
+     * Getter for the revocation churn factor
+     *
+     * @return revocation churn factor, 0 if the time to live does not depend on revocations
+     */
+    public double getRevocationChurnFactor() {
+        return revocationChurnFactor;
+    }
+
+    /**
+     * Getter for the share of recent revocations among the recently fetched responses of the CA of a certificate
+     *
+     * @param certId OCSP certificate id of any certificate of the CA
+     * @return share between 0 and 1, 0 if no response of the CA was fetched recently
+     */
+    public double getRevocationRate(@NonNull final OcspCertId certId) {
+        final RevocationStats revocationStats = revocationStatsByIssuer.getIfPresent(certId.getIssuerKey());
+        return revocationStats == null ? 0 : revocationStats.getRate();
+    }
+
+    /**
+     * Time to live of a response with status good or unknown, counted from its thisUpdate
+     *
+     * @param entry single response
+     * @return time to live in milliseconds
+     */
+    long getTimeToLiveMillis(@NonNull final OcspRespEntry entry) {
+        long timeToLiveMillis = TimeUnit.SECONDS.toMillis(ocspGracePeriodSeconds);
+        if (entry.getNextUpdate() != null) {
+            final long validityMillis = entry.getNextUpdate().toInstant().toEpochMilli() - entry.getThisUpdate().toInstant().toEpochMilli();
+            timeToLiveMillis = Math.min(timeToLiveMillis, Math.max(0, validityMillis));
+        }
+        final double churnFactor = revocationChurnFactor;
+        if (churnFactor > 0) {
+            timeToLiveMillis = (long) (timeToLiveMillis / (1 + churnFactor * getRevocationRate(entry.getCertId())));
+        }
+        return timeToLiveMillis;
+    }
+
+    /**
+     * Getter for the maximum number of entries in the cache
+     *
+     * @return the maximum cache size
+     */
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
     /**
      * Getter for the number of entries in the cache
      *
      * @return the cache size
      */
     public int getSize() {
-        return cache.size();
+        cache.cleanUp();
+        return (int) cache.estimatedSize();
+    }
+
+    /**
+     * Getter for the number of lookups that returned a cached response
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return cache.stats().hitCount();
+    }
+
+    /**
+     * Getter for the number of lookups that did not return a cached response
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return cache.stats().missCount();
+    }
+
+    /**
+     * Getter for the number of responses that were removed because they expired or the maximum size was reached
+     *
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return cache.stats().evictionCount();
+    }
+
+    /**
+     * Delete all expired responses (responses with status revoked remain). Expired entries are never returned and are removed by the cache on its own, this
+     * method only performs pending maintenance immediately.
+     */
+    public void deleteExpiredResponses() {
+        cache.cleanUp();
+    }
+
+    /**
+     * Delete all cached responses, e.g. when the trusted OCSP signers change and responses verified against the previous ones must not be used anymore
+     */
+    public void clear() {
+        cache.invalidateAll();
+        cache.cleanUp();
+    }
+
+    /**
+     * Delete all cached responses whose signature is not valid for the given verifier, e.g. when the trusted OCSP signers change. Responses of still trusted
+     * signers remain cached. An OCSP response with several single responses is verified once.
+     *
+     * @param ocspRespSignatureVerifier verifier of the OCSP signers to keep responses of
+     * @return number of deleted single responses
+     */
+    public int retainVerifiedResponses(@NonNull final OcspRespSignatureVerifier ocspRespSignatureVerifier) {
+        final Map<byte[], Boolean> verified = new IdentityHashMap<>();
+        int deleted = 0;
+        for (final Map.Entry<OcspCertId, CacheEntry> entry : cache.asMap().entrySet()) {
+            final byte[] encoded = entry.getValue().ocspRespEntry.getEncodedShared();
+            if (!verified.computeIfAbsent(encoded, key -> isSignatureValid(ocspRespSignatureVerifier, key))
+                && cache.asMap().remove(entry.getKey(), entry.getValue())) {
+                deleted++;
+            }
+        }
+        log.debug("{} OCSP responses of untrusted signers deleted", deleted);
+        return deleted;
+    }
+
+    private static boolean isSignatureValid(final OcspRespSignatureVerifier ocspRespSignatureVerifier, final byte[] encoded) {
+        try {
+            ocspRespSignatureVerifier.verify(new OCSPResp(encoded));
+            return true;
+        } catch (final GemPkiException | IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Write all cached responses to a snapshot file, e.g. before shutdown. Entries are streamed one by one, the cache stays fully usable while the snapshot is
+     * written. An OCSP response with several single responses is written once, not once per cached single response. The file is written to a temporary file
+     * first and then moved to the given path, so an existing snapshot is never left half written.
+     *
+     * @param snapshotFile path of the snapshot file
+     * @return number of written OCSP responses
+     * @throws GemPkiException exception thrown if the snapshot cannot be written
+     */
+    public int writeSnapshot(@NonNull final Path snapshotFile) throws GemPkiException {
+        final Path tmpFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        final Set<byte[]> written = Collections.newSetFromMap(new IdentityHashMap<>());
+        try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            for (final CacheEntry cacheEntry : cache.asMap().values()) {
+                final byte[] encoded = cacheEntry.ocspRespEntry.getEncodedShared();
+                if (written.add(encoded)) {
+                    out.writeInt(encoded.length);
+                    out.write(encoded);
+                }
+            }
+        } catch (final IOException e) {
+            throw snapshotWriteFailed(tmpFile, e);
+        }
+        try {
+            Files.move(tmpFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            throw snapshotWriteFailed(tmpFile, e);
+        }
+        log.debug("{} OCSP responses written to snapshot {}", written.size(), snapshotFile);
+        return written.size();
+    }
+
+    private static GemPkiException snapshotWriteFailed(final Path tmpFile, final IOException e) {
+        try {
+            Files.deleteIfExists(tmpFile);
+        } catch (final IOException deleteException) {
+            e.addSuppressed(deleteException);
+        }
+        return new GemPkiException(ErrorCode.OCSP, "Write of OCSP response cache snapshot failed.", e);
+    }
+
+    /**
+     * Read a snapshot file written by {@link #writeSnapshot(Path)} without verifying the signatures of its OCSP responses, only for snapshots at a location
+     * nobody else can write to. See {@link #restoreSnapshot(Path, OcspRespSignatureVerifier)}.
+     *
+     * @param snapshotFile path of the snapshot file
+     * @return number of restored single responses
+     * @throws GemPkiException exception thrown if the snapshot cannot be read or is not a snapshot file
+     */
+    public int restoreSnapshot(@NonNull final Path snapshotFile) throws GemPkiException {
+        return restoreSnapshot(snapshotFile, null);
+    }
+
+    /**
+     * Read a snapshot file written by {@link #writeSnapshot(Path)}, e.g. at startup. Each OCSP response is parsed and its signature verified once, responses
+     * with a signature not valid for the given verifier are discarded, as well as single responses that expired in the meantime or are older than an
+     * already cached response of the same certificate. A truncated last record (e.g. after a crash while writing) ends the restore without error.
+     *
+     * @param snapshotFile path of the snapshot file
+     * @param ocspRespSignatureVerifier verifier of the OCSP response signatures, null to restore without verification
+     * @return number of restored single responses
+     * @throws GemPkiException exception thrown if the snapshot cannot be read, is not a snapshot file or contains a record with invalid length
+     */
+    public int restoreSnapshot(@NonNull final Path snapshotFile, final OcspRespSignatureVerifier ocspRespSignatureVerifier) throws GemPkiException {
+        int count = 0;
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                throw new GemPkiException(ErrorCode.OCSP, "Unknown format of OCSP response cache snapshot: " + snapshotFile);
+            }
+            final long now = System.currentTimeMillis();
+            while (true) {
+                final byte[] encoded;
+                try {
+                    final int length = in.readInt();
+                    if (length < 0 || length > MAX_SNAPSHOT_RECORD_LENGTH) {
+                        throw new GemPkiException(ErrorCode.OCSP, "Invalid record length " + length + " in OCSP response cache snapshot: " + snapshotFile);
+                    }
+                    encoded = new byte[length];
+                    in.readFully(encoded);
+                } catch (final EOFException e) {
+                    break;
+                }
+                final OCSPResp ocspResp = new OCSPResp(encoded);
+                if (ocspRespSignatureVerifier != null) {
+                    try {
+                        ocspRespSignatureVerifier.verify(ocspResp);
+                    } catch (final GemPkiException e) {
+                        log.warn("OCSP response of snapshot {} discarded: {}", snapshotFile, e.getMessage());
+                        continue;
+                    }
+                }
+                for (final OcspRespEntry entry : OcspVerifier.getSingleResponses(ocspResp)) {
+                    if (getRemainingNanos(entry, now) > 0 && saveResponseIfNewer(entry) == entry) {
+                        count++;
+                    }
+                }
+            }
+        } catch (final IOException e) {
+            throw new GemPkiException(ErrorCode.OCSP, "Read of OCSP response cache snapshot failed.", e);
+        }
+        log.debug("{} OCSP responses restored from snapshot {}", count, snapshotFile);
+        return count;
+    }
+
+    private static boolean isSuperseded(final OcspRespEntry entry, final CacheEntry cacheEntry) {
+        return cacheEntry != null && cacheEntry.ocspRespEntry.getThisUpdate().isAfter(entry.getThisUpdate());
+    }
+
+    private long getRemainingNanos(final OcspRespEntry entry, final long nowMillis) {
+        if (entry.getCertStatus() == OcspCertStatus.REVOKED) {
+            return Long.MAX_VALUE;
+        }
+        final long thisUpdateMillis = entry.getThisUpdate().toInstant().toEpochMilli();
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, thisUpdateMillis + getTimeToLiveMillis(entry) - nowMillis));
     }
 
-    private void deleteExpiredResponses() {
-        //TODO get current time, compare ... ocspGracePeriodSeconds and delete all expired responses (responses with status revoked remain)
+    private void recordRevocationStats(final OcspRespEntry entry) {
+        final boolean recentRevocation = entry.getCertStatus() == OcspCertStatus.REVOKED && entry.getRevocationTime() != null
+            && !entry.getRevocationTime().isBefore(entry.getThisUpdate().minusSeconds(ocspGracePeriodSeconds));
+        revocationStatsByIssuer.asMap().compute(entry.getCertId().getIssuerKey(), (key, revocationStats) -> {
+            final RevocationStats stats = revocationStats != null ? revocationStats : new RevocationStats();
+            stats.record(recentRevocation, System.currentTimeMillis());
+            return stats;
+        });
+    }
+
+    /**
+     * Exponentially decaying number of fetched responses and recent revocations of one CA. Updates happen in the compute of the map only, reads of the rate
+     * may see the counters of a concurrent update in between.
+     */
+    private static final class RevocationStats {
+
+        private double responses;
+        private double recentRevocations;
+        private long lastRecordMillis;
+
+        private synchronized void record(final boolean recentRevocation, final long nowMillis) {
+            if (lastRecordMillis != 0 && nowMillis > lastRecordMillis) {
+                final double decay = Math.pow(0.5, (double) (nowMillis - lastRecordMillis) / REVOCATION_STATS_HALF_LIFE_MILLIS);
+                responses *= decay;
+                recentRevocations *= decay;
+            }
+            lastRecordMillis = Math.max(lastRecordMillis, nowMillis);
+            responses++;
+            if (recentRevocation) {
+                recentRevocations++;
+            }
+        }
+
+        /**
+         * Share of recent revocations. Both counters decay alike, so the share does not change without new responses, it is only taken as long as the
+         * stats are kept.
+         */
+        private synchronized double getRate() {
+            return responses == 0 ? 0 : recentRevocations / responses;
+        }
+    }
+
+    /**
+     * Cached single response together with the state needed for refresh-ahead
+     */
+    private static final class CacheEntry {
+
+        private final OcspRespEntry ocspRespEntry;
+        private final AtomicInteger hits = new AtomicInteger();
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private final AtomicInteger failedRefreshes = new AtomicInteger();
+        private volatile long nextRefreshMillis;
+
+        private CacheEntry(final OcspRespEntry ocspRespEntry) {
+            this.ocspRespEntry = ocspRespEntry;
+        }
+    }
+
+    /**
+     * Expiry of an entry is calculated from its thisUpdate and its time to live when it is written. A read keeps the calculated expiry.
+     */
+    private class GracePeriodExpiry implements Expiry<OcspCertId, CacheEntry> {
+
+        @Override
+        public long expireAfterCreate(final OcspCertId key, final CacheEntry value, final long currentTime) {
+            return getRemainingNanos(value.ocspRespEntry, System.currentTimeMillis());
+        }
+
+        @Override
+        public long expireAfterUpdate(final OcspCertId key, final CacheEntry value, final long currentTime, final long currentDuration) {
+            return getRemainingNanos(value.ocspRespEntry, System.currentTimeMillis());
+        }
+
+        @Override
+        public long expireAfterRead(final OcspCertId key, final CacheEntry value, final long currentTime, final long currentDuration) {
+            return currentDuration;
+        }
     }
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.gematik.pki.ocsp;
+
+import java.time.ZonedDateTime;
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Class containing the pre-parsed content of one single response of an OCSP response together with the encoded OCSP response, so evaluating a cached status
+ * needs no ASN.1 decoding.
+ */
+@Builder
+@Getter
+public class OcspRespEntry {
+
+    @NonNull
+    private final OcspCertId certId;
+    @NonNull
+    private final OcspCertStatus certStatus;
+    @NonNull
+    private final ZonedDateTime thisUpdate;
+    private final ZonedDateTime nextUpdate;
+    private final ZonedDateTime revocationTime;
+    @Getter(AccessLevel.NONE)
+    @NonNull
+    private final byte[] encoded;
+
+    /**
+     * @return True if certificate status is GOOD
+     */
+    public boolean isStatusGood() {
+        return certStatus == OcspCertStatus.GOOD;
+    }
+
+    /**
+     * @return the DER encoded OCSP response this entry was parsed from
+     */
+    public byte[] getEncoded() {
+        return encoded.clone();
+    }
+
+    /**
+     * @return the DER encoded OCSP response without copy, the same array for all entries parsed from one OCSP response. Must not be modified.
+     */
+    byte[] getEncodedShared() {
+        return encoded;
+    }
+}
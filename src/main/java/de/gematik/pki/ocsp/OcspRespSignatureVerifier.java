@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.gematik.pki.ocsp;
+
+import de.gematik.pki.error.ErrorCode;
+import de.gematik.pki.exception.GemPkiException;
+import de.gematik.pki.tsl.TslConstants;
+import de.gematik.pki.tsl.TspService;
+import eu.europa.esig.trustedlist.jaxb.tsl.DigitalIdentityType;
+import eu.europa.esig.trustedlist.jaxb.tsl.TSPServiceInformationType;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Security;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.CertificateParsingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.RespID;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.ContentVerifierProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.bc.BcDigestCalculatorProvider;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+
+/**
+ * Verifies the signature of OCSP responses and that the responder certificate is an OCSP signer certificate of the TSL (TUC_PKI_006). An instance is bound
+ * to the TSL it is created from: a responder certificate is validated once and then remembered by its hash, so a response costs one signature
+ * verification. Create a new instance for a new TSL.
+ */
+@Slf4j
+public class OcspRespSignatureVerifier {
+
+    static {
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+    }
+
+    private final String productType;
+    private final Map<ByteBuffer, X509Certificate> tslOcspSignerCerts = new HashMap<>();
+    private final Map<RespID, List<ByteBuffer>> certHashesByRespId = new HashMap<>();
+    private final ConcurrentHashMap<ByteBuffer, ValidatedResponder> validatedResponders = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param tspServiceList TSP services of the TSL, OCSP signer certificates are taken from services of type {@link TslConstants#STI_OCSP} with status
+     *                       {@link TslConstants#SVCSTATUS_INACCORD}, withdrawn or revoked OCSP signers are not trusted
+     * @param productType    product type for error messages
+     * @throws GemPkiException if a certificate of the TSL cannot be read
+     */
+    public OcspRespSignatureVerifier(@NonNull final List<TspService> tspServiceList, @NonNull final String productType) throws GemPkiException {
+        this.productType = productType;
+        try {
+            final CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+            for (final TspService tspService : tspServiceList) {
+                final TSPServiceInformationType serviceInformation = tspService.getTspServiceType().getServiceInformation();
+                if (!TslConstants.STI_OCSP.equals(serviceInformation.getServiceTypeIdentifier())) {
+                    continue;
+                }
+                if (!TslConstants.SVCSTATUS_INACCORD.equals(serviceInformation.getServiceStatus())) {
+                    log.debug("OCSP-Signer-Dienst mit Status {} ignoriert", serviceInformation.getServiceStatus());
+                    continue;
+                }
+                for (final DigitalIdentityType dit : serviceInformation.getServiceDigitalIdentity().getDigitalId()) {
+                    if (dit.getX509Certificate() != null) {
+                        addTslOcspSignerCert((X509Certificate) certificateFactory.generateCertificate(new ByteArrayInputStream(dit.getX509Certificate())));
+                    }
+                }
+            }
+        } catch (final CertificateException | OperatorCreationException e) {
+            throw new GemPkiException(productType, ErrorCode.TE_1002, e);
+        }
+        log.debug("{} OCSP-Signer-Zertifikate aus TSL ermittelt", tslOcspSignerCerts.size());
+    }
+
+    private void addTslOcspSignerCert(final X509Certificate x509Certificate) throws CertificateException, OperatorCreationException {
+        final ByteBuffer certHash = hash(x509Certificate.getEncoded());
+        if (tslOcspSignerCerts.put(certHash, x509Certificate) != null) {
+            return;
+        }
+        final RespID respIdByName = new RespID(X500Name.getInstance(x509Certificate.getSubjectX500Principal().getEncoded()));
+        final RespID respIdByKey;
+        try {
+            respIdByKey = new RespID(SubjectPublicKeyInfo.getInstance(x509Certificate.getPublicKey().getEncoded()),
+                new BcDigestCalculatorProvider().get(CertificateID.HASH_SHA1));
+        } catch (final OCSPException e) {
+            throw new CertificateException(e);
+        }
+        certHashesByRespId.computeIfAbsent(respIdByName, respId -> new ArrayList<>()).add(certHash);
+        certHashesByRespId.computeIfAbsent(respIdByKey, respId -> new ArrayList<>()).add(certHash);
+    }
+
+    /**
+     * Verify the signature of an OCSP response. The responder certificate must be an OCSP signer certificate of the TSL, valid at producedAt of the response.
+     * Responses with a response status other than successful are not signed and pass.
+     *
+     * @param ocspResp OCSP response
+     * @throws GemPkiException if the responder certificate is not in the TSL, not valid or the signature is invalid
+     */
+    public void verify(@NonNull final OCSPResp ocspResp) throws GemPkiException {
+        if (ocspResp.getStatus() != OCSPResp.SUCCESSFUL) {
+            return;
+        }
+        final BasicOCSPResp basicOcspResp;
+        try {
+            basicOcspResp = (BasicOCSPResp) ocspResp.getResponseObject();
+        } catch (final OCSPException e) {
+            throw new GemPkiException(ErrorCode.OCSP, "OCSP response Auswertung fehlgeschlagen", e);
+        }
+        final ValidatedResponder responder = findResponder(basicOcspResp);
+        final Date producedAt = basicOcspResp.getProducedAt();
+        if (producedAt.before(responder.notBefore) || producedAt.after(responder.notAfter)) {
+            throw new GemPkiException(productType, ErrorCode.SE_1021);
+        }
+        try {
+            if (!basicOcspResp.isSignatureValid(responder.contentVerifierProvider)) {
+                throw new GemPkiException(productType, ErrorCode.SE_1031);
+            }
+        } catch (final OCSPException e) {
+            throw new GemPkiException(productType, ErrorCode.SE_1031, e);
+        }
+    }
+
+    /**
+     * Compare the OCSP signer certificates of the TSLs of two verifiers
+     *
+     * @param other verifier of another TSL
+     * @return true if both verifiers trust the same OCSP signer certificates
+     */
+    public boolean hasSameOcspSigners(@NonNull final OcspRespSignatureVerifier other) {
+        return tslOcspSignerCerts.keySet().equals(other.tslOcspSignerCerts.keySet());
+    }
+
+    /**
+     * Getter for the number of responder certificates validated so far
+     *
+     * @return number of validated responder certificates
+     */
+    public int getValidatedResponderCount() {
+        return validatedResponders.size();
+    }
+
+    private ValidatedResponder findResponder(final BasicOCSPResp basicOcspResp) throws GemPkiException {
+        final List<ByteBuffer> candidates = certHashesByRespId.getOrDefault(basicOcspResp.getResponderId(), List.of());
+        if (candidates.size() > 1) {
+            // several certificates of the TSL with the responder name, prefer the one in the response
+            for (final X509CertificateHolder certificateHolder : basicOcspResp.getCerts()) {
+                try {
+                    final ByteBuffer certHash = hash(certificateHolder.getEncoded());
+                    if (candidates.contains(certHash)) {
+                        return getValidatedResponder(certHash);
+                    }
+                } catch (final IOException e) {
+                    log.debug("Zertifikat der OCSP Response nicht lesbar: {}", e.getMessage());
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
+            throw new GemPkiException(productType, ErrorCode.TE_1030);
+        }
+        return getValidatedResponder(candidates.get(0));
+    }
+
+    private ValidatedResponder getValidatedResponder(final ByteBuffer certHash) throws GemPkiException {
+        final ValidatedResponder validatedResponder = validatedResponders.get(certHash);
+        if (validatedResponder != null) {
+            return validatedResponder;
+        }
+        final X509Certificate x509Certificate = tslOcspSignerCerts.get(certHash);
+        try {
+            final List<String> extendedKeyUsage = x509Certificate.getExtendedKeyUsage();
+            if (extendedKeyUsage == null || !extendedKeyUsage.contains(KeyPurposeId.id_kp_OCSPSigning.getId())) {
+                log.debug("OCSP-Signer-Zertifikat {} ohne ExtendedKeyUsage OCSPSigning", x509Certificate.getSubjectX500Principal());
+                throw new GemPkiException(productType, ErrorCode.TE_1030);
+            }
+            final ValidatedResponder newValidatedResponder = new ValidatedResponder(x509Certificate,
+                new JcaContentVerifierProviderBuilder().setProvider(BouncyCastleProvider.PROVIDER_NAME).build(x509Certificate));
+            validatedResponders.put(certHash, newValidatedResponder);
+            return newValidatedResponder;
+        } catch (final CertificateParsingException | OperatorCreationException e) {
+            throw new GemPkiException(productType, ErrorCode.TE_1030, e);
+        }
+    }
+
+    private static ByteBuffer hash(final byte[] encoded) {
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(encoded));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Responder certificate of the TSL that has been validated, with its signature verifier.
+     */
+    private static final class ValidatedResponder {
+
+        private final Date notBefore;
+        private final Date notAfter;
+        private final ContentVerifierProvider contentVerifierProvider;
+
+        private ValidatedResponder(final X509Certificate x509Certificate, final ContentVerifierProvider contentVerifierProvider) {
+            this.notBefore = x509Certificate.getNotBefore();
+            this.notAfter = x509Certificate.getNotAfter();
+            this.contentVerifierProvider = contentVerifierProvider;
+        }
+    }
+}
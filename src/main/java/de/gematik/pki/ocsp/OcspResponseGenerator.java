@@ -24,29 +24,55 @@ import java.security.Security;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.time.ZonedDateTime;
-import java.util.ArrayList;
 import java.util.Date;
 import lombok.Builder;
 import lombok.NonNull;
+import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
 import org.bouncycastle.asn1.x509.Extension;
 import org.bouncycastle.asn1.x509.Extensions;
 import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
 import org.bouncycastle.cert.X509CertificateHolder;
 import org.bouncycastle.cert.ocsp.*;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
-import org.bouncycastle.operator.DigestCalculatorProvider;
+import org.bouncycastle.operator.ContentSigner;
 import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.operator.bc.BcDigestCalculatorProvider;
 import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
 
 /**
- * Class to support OCSP response generation.
+ * Class to support OCSP response generation. Responder id, certificate chain and signature algorithm are computed once per instance, an instance is thread
+ * safe and meant to be reused for many responses.
  */
-@Builder
 public class OcspResponseGenerator {
 
+    private static final Extensions EMPTY_EXTENSIONS = new Extensions(new Extension[0]);
+
+    static {
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+    }
+
     @NonNull
     private final P12Container signer;
+    @NonNull
+    private final OcspStatusStore statusStore;
+    private final Integer validitySeconds;
+    private volatile Responder responder;
+
+    /**
+     * Constructor, use {@link #builder()}
+     *
+     * @param signer          certificate and private key to sign responses with
+     * @param statusStore     store to lookup the certificate status, default {@link OcspStatusStore#ALL_GOOD}
+     * @param validitySeconds time from thisUpdate to nextUpdate of the single responses, default: no nextUpdate
+     */
+    @Builder
+    private OcspResponseGenerator(@NonNull final P12Container signer, final OcspStatusStore statusStore, final Integer validitySeconds) {
+        this.signer = signer;
+        this.statusStore = statusStore != null ? statusStore : OcspStatusStore.ALL_GOOD;
+        this.validitySeconds = validitySeconds;
+    }
 
     /**
      * Create OCSP response from given OCSP request. producedAt is now (UTC).
@@ -55,69 +81,105 @@ public class OcspResponseGenerator {
      * @return OCSP response
      */
     public OCSPResp gen(final OCSPReq ocspReq) throws GemPkiException {
-        Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
+        return gen(ocspReq, ZonedDateTime.now());
+    }
+
+    /**
+     * Create OCSP response from given OCSP request with given producedAt.
+     *
+     * @param ocspReq  OCSP request
+     * @param dateTime will be producedAt
+     * @return OCSP response
+     */
+    public OCSPResp gen(@NonNull final OCSPReq ocspReq, @NonNull final ZonedDateTime dateTime) throws GemPkiException {
         try {
-            return gen(ocspReq, signer.getCertificate(), ZonedDateTime.now());
+            return generate(ocspReq, dateTime);
         } catch (final OperatorCreationException | IOException | OCSPException | CertificateEncodingException e) {
             throw new GemPkiException(ErrorCode.UNKNOWN, "Ocsp response generation failed.", e);
         }
     }
 
     /**
-     * Create OCSP response from given OCSP request. producedAt is now (UTC).
+     * Create OCSP response from given OCSP request. The status of each single request is taken from the status store.
      *
-     * @param ocspReq                OCSP request
-     * @param ocspResponseSignerCert certificate in OCSP response signature
-     * @param dateTime               will be producedAt
+     * @param ocspReq  OCSP request
+     * @param dateTime will be producedAt
      * @return OCSP response
      */
-    private OCSPResp gen(@NonNull final OCSPReq ocspReq,
-        @NonNull final X509Certificate ocspResponseSignerCert, @NonNull final ZonedDateTime dateTime)
+    private OCSPResp generate(final OCSPReq ocspReq, final ZonedDateTime dateTime)
         throws OperatorCreationException, IOException, OCSPException, CertificateEncodingException, GemPkiException {
 
-        final DigestCalculatorProvider digCalcProv = new BcDigestCalculatorProvider();
-        final BasicOCSPRespBuilder basicBuilder = new BasicOCSPRespBuilder(
-            SubjectPublicKeyInfo.getInstance(ocspResponseSignerCert.getPublicKey().getEncoded()),
-            digCalcProv.get(CertificateID.HASH_SHA1));
-
+        final Responder currentResponder = getResponder();
+        final BasicOCSPRespBuilder basicBuilder = new BasicOCSPRespBuilder(currentResponder.respId);
+        final Date thisUpdate = new Date();
+        final Date nextUpdate = validitySeconds != null ? new Date(thisUpdate.getTime() + validitySeconds * 1000L) : null;
         for (final Req singleRequest : ocspReq.getRequestList()) {
-            addSingleResponseWithStatusGood(basicBuilder, singleRequest);
+            basicBuilder.addResponse(singleRequest.getCertID(), statusStore.getCertificateStatus(singleRequest.getCertID()), thisUpdate, nextUpdate,
+                EMPTY_EXTENSIONS);
         }
-        final X509CertificateHolder[] chain = {new X509CertificateHolder(ocspResponseSignerCert.getEncoded())};
-        final String sigAlgo;
-        switch (signer.getPrivateKey().getAlgorithm()) {
-            case "RSA":
-                sigAlgo = "SHA256withRSA";
-                break;
-            case "EC":
-                sigAlgo = "SHA256WITHECDSA";
-                break;
-            default:
-                throw new GemPkiException(ErrorCode.UNKNOWN, "Signature algorithm not supported: " + signer.getPrivateKey().getAlgorithm());
+        final Extension nonce = ocspReq.getExtension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce);
+        if (nonce != null) {
+            basicBuilder.setResponseExtensions(new Extensions(nonce));
         }
-
-        final BasicOCSPResp resp = basicBuilder.build(
-            new JcaContentSignerBuilder(sigAlgo)
-                .setProvider(BouncyCastleProvider.PROVIDER_NAME)
-                .build(signer.getPrivateKey()),
-            chain, new Date(dateTime.toInstant().toEpochMilli()));
+        final BasicOCSPResp resp = basicBuilder.build(currentResponder.contentSigner.get(), currentResponder.chain,
+            new Date(dateTime.toInstant().toEpochMilli()));
 
         final OCSPRespBuilder builder = new OCSPRespBuilder();
         return builder.build(OCSPRespBuilder.SUCCESSFUL, resp);
     }
 
+    private Responder getResponder() throws OperatorCreationException, IOException, OCSPException, CertificateEncodingException, GemPkiException {
+        Responder currentResponder = responder;
+        if (currentResponder == null) {
+            synchronized (this) {
+                currentResponder = responder;
+                if (currentResponder == null) {
+                    currentResponder = new Responder(signer);
+                    responder = currentResponder;
+                }
+            }
+        }
+        return currentResponder;
+    }
+
     /**
-     * Add a single response (without extensions) to an OCSP response
-     *
-     * @param basicBuilder  The basic builder of an OCSP Response
-     * @param singleRequest A single request of an requestList of an OCSP request
+     * Data of the responder computed once: responder id, certificate chain and one content signer per thread.
      */
-    private static void addSingleResponseWithStatusGood(final BasicOCSPRespBuilder basicBuilder,
-        final Req singleRequest) {
+    private static final class Responder {
 
-        basicBuilder.addResponse(singleRequest.getCertID(),
-            CertificateStatus.GOOD, new Date(), null,
-            new Extensions(new ArrayList<Extension>().toArray(new Extension[0])));
-    }
+        private final RespID respId;
+        private final X509CertificateHolder[] chain;
+        private final ThreadLocal<ContentSigner> contentSigner;
 
+        private Responder(final P12Container signer)
+            throws OperatorCreationException, IOException, OCSPException, CertificateEncodingException, GemPkiException {
+            final X509Certificate ocspResponseSignerCert = signer.getCertificate();
+            respId = new RespID(SubjectPublicKeyInfo.getInstance(ocspResponseSignerCert.getPublicKey().getEncoded()),
+                new BcDigestCalculatorProvider().get(CertificateID.HASH_SHA1));
+            chain = new X509CertificateHolder[]{new X509CertificateHolder(ocspResponseSignerCert.getEncoded())};
+
+            final JcaContentSignerBuilder contentSignerBuilder = new JcaContentSignerBuilder(getSignatureAlgorithm(signer))
+                .setProvider(BouncyCastleProvider.PROVIDER_NAME);
+            final ContentSigner initialContentSigner = contentSignerBuilder.build(signer.getPrivateKey());
+            contentSigner = ThreadLocal.withInitial(() -> {
+                try {
+                    return contentSignerBuilder.build(signer.getPrivateKey());
+                } catch (final OperatorCreationException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            contentSigner.set(initialContentSigner);
+        }
+
+        private static String getSignatureAlgorithm(final P12Container signer) throws GemPkiException {
+            switch (signer.getPrivateKey().getAlgorithm()) {
+                case "RSA":
+                    return "SHA256withRSA";
+                case "EC":
+                    return "SHA256WITHECDSA";
+                default:
+                    throw new GemPkiException(ErrorCode.UNKNOWN, "Signature algorithm not supported: " + signer.getPrivateKey().getAlgorithm());
+            }
+        }
+    }
 }
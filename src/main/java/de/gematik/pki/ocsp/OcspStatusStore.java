@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.gematik.pki.ocsp;
+
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+
+/**
+ * Source of the certificate status an OCSP responder answers with. Implementations must be thread safe.
+ */
+@FunctionalInterface
+public interface OcspStatusStore {
+
+    /**
+     * Status store answering GOOD for every certificate
+     */
+    OcspStatusStore ALL_GOOD = certificateId -> CertificateStatus.GOOD;
+
+    /**
+     * Lookup the status of a certificate
+     *
+     * @param certificateId certificate id of a single OCSP request (issuer hashes and serial number)
+     * @return {@link CertificateStatus#GOOD}, a {@link org.bouncycastle.cert.ocsp.RevokedStatus} or an {@link org.bouncycastle.cert.ocsp.UnknownStatus}
+     */
+    CertificateStatus getCertificateStatus(CertificateID certificateId);
+}
@@ -16,60 +16,221 @@
 
 package de.gematik.pki.ocsp;
 
-import com.mashape.unirest.http.HttpResponse;
-import com.mashape.unirest.http.Unirest;
-import com.mashape.unirest.http.exceptions.UnirestException;
 import de.gematik.pki.error.ErrorCode;
 import de.gematik.pki.exception.GemPkiException;
-import java.io.IOException;
-import java.io.InputStream;
 import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 import lombok.Builder;
+import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.cert.ocsp.CertificateID;
 import org.bouncycastle.cert.ocsp.OCSPReq;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 
 /**
- * Class to send OCSP requests and receive OCSP responses
+ * Class to send OCSP requests and receive OCSP responses. Requests are sent asynchronously via an {@link OcspTransport}, the synchronous methods wait for
+ * the result.
  */
 @Slf4j
 @RequiredArgsConstructor
 @Builder
 public class OcspTransceiver {
 
+    /**
+     * Maximum age of a response supplied by the caller if there is no cache to derive it from
+     */
+    public static final int DEFAULT_SUPPLIED_RESPONSE_MAX_AGE_SECONDS = 300;
+    private static final long MAX_CLOCK_SKEW_MILLIS = 60_000;
+
     private final X509Certificate x509EeCert;
     private final X509Certificate x509IssuerCert;
     private final String ssp;
+    /**
+     * Further SSPs of the same OCSP responder, used for failover and hedged requests, see {@link OcspTransport}
+     */
+    @Builder.Default
+    private final List<String> alternativeSsps = List.of();
+    /**
+     * Scheduling lane of the requests in the transport, default {@link OcspPriority#INTERACTIVE}
+     */
+    @Builder.Default
+    private final OcspPriority priority = OcspPriority.INTERACTIVE;
+    /**
+     * Maximum time until a response is received, including waiting in the transport, null: no deadline
+     */
+    private final Duration deadline;
+    @Builder.Default
+    private final OcspTransport ocspTransport = OcspTransport.getDefault();
+    /**
+     * Verifies signature and responder of received responses before they are used or cached, null: no verification
+     */
+    private final OcspRespSignatureVerifier ocspRespSignatureVerifier;
 
     /**
-     * Verifies OCSP status of end-entity certificate. Sends OCSP request if OCSP response is not cached.
+     * Verifies OCSP status of end-entity certificate. Sends OCSP request if OCSP response is not cached. A received response is written to the cache.
      *
      * @param ocspRespCache Cache for OCSP Responses
      * @return True if certificate status is GOOD.
      * @throws GemPkiException
      */
     public boolean verifyOcspStatusGood(final OcspRespCache ocspRespCache) throws GemPkiException {
+        return join(verifyOcspStatusGoodAsync(ocspRespCache));
+    }
+
+    /**
+     * Verifies OCSP status of end-entity certificate asynchronously. Sends OCSP request if OCSP response is not cached. The single response of the
+     * end-entity certificate is picked from the received response by its CertID and written to the cache, a response without it is an error.
+     *
+     * @param ocspRespCache Cache for OCSP Responses
+     * @return future of true if certificate status is GOOD, completes exceptionally with a {@link GemPkiException} on errors
+     */
+    public CompletableFuture<Boolean> verifyOcspStatusGoodAsync(final OcspRespCache ocspRespCache) {
+        final CertificateID certificateId;
+        try {
+            certificateId = OcspRequestGenerator.generateCertificateId(x509EeCert, x509IssuerCert);
+        } catch (final GemPkiException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        final OcspCertId certId = OcspCertId.of(certificateId);
         if (ocspRespCache != null) {
-            final Optional<OCSPResp> cached = ocspRespCache.getResponse(x509EeCert.getSerialNumber());
+            final Optional<OcspRespEntry> cached = ocspRespCache.getResponse(certId);
             if (cached.isPresent()) {
-                return OcspVerifier.isStatusGood(cached.get());
+                if (ocspRespCache.tryStartRefresh(certId)) {
+                    refreshAsync(ocspRespCache, certificateId);
+                }
+                return CompletableFuture.completedFuture(cached.get().isStatusGood());
             }
         }
-        return verifyOcspStatusGoodOnline();
+        return fetchOcspResponse(certificateId).thenApply(ocspResp -> {
+            try {
+                verifySignature(ocspResp);
+                if (ocspResp.getStatus() != OCSPResp.SUCCESSFUL) {
+                    return false;
+                }
+                final OcspRespEntry entry = OcspVerifier.getSingleResponsesByCertId(ocspResp).get(certId);
+                if (entry == null) {
+                    throw new GemPkiException(ErrorCode.OCSP, "OCSP Response enthält das angefragte Zertifikat " + x509EeCert.getSerialNumber() + " nicht");
+                }
+                if (ocspRespCache != null) {
+                    ocspRespCache.saveFetchedResponse(entry);
+                }
+                return entry.isStatusGood();
+            } catch (final GemPkiException e) {
+                throw new CompletionException(e);
+            }
+        });
     }
 
     /**
-     * Verifies OCSP status of end-entity certificate by sending an OCSP request. Operates on member variables given by builder.
+     * Refreshes a cached OCSP response in the background (refresh-ahead). The cached response is replaced on success only and if it is still cached, a failed
+     * refresh is reported to the cache which delays the next attempt.
      *
-     * @return True if certificate status is GOOD.
-     * @throws GemPkiException
+     * @param ocspRespCache Cache for OCSP Responses
+     * @param certificateId id of the certificate to refresh the response for
+     */
+    private void refreshAsync(final OcspRespCache ocspRespCache, final CertificateID certificateId) {
+        final OcspCertId certId = OcspCertId.of(certificateId);
+        fetchOcspResponse(certificateId).whenComplete((ocspResp, e) -> {
+            try {
+                if (e != null) {
+                    throw e instanceof CompletionException ? e.getCause() : e;
+                }
+                verifySignature(ocspResp);
+                final OcspRespEntry entry = OcspVerifier.getSingleResponsesByCertId(ocspResp).get(certId);
+                if (entry == null) {
+                    ocspRespCache.refreshFailed(certId);
+                } else {
+                    ocspRespCache.saveRefreshedResponse(entry);
+                }
+            } catch (final Throwable refreshError) {
+                log.info("Refresh of OCSP response for certificate serial number {} failed: {}", certId.getSerialNumber(), refreshError.getMessage());
+                ocspRespCache.refreshFailed(certId);
+            }
+        });
+    }
+
+    /**
+     * Accepts an OCSP response supplied by the caller (e.g. stapled in a TLS handshake) instead of sending a request. The response is used if it contains the
+     * end-entity certificate (CertID match) and is fresh: thisUpdate not in the future, nextUpdate not passed and thisUpdate not older than the time to live
+     * of the cache (or {@link #DEFAULT_SUPPLIED_RESPONSE_MAX_AGE_SECONDS} without cache). Its signature is always verified. Only the single response of the
+     * end-entity certificate is written to the cache, and only if the cache holds no newer response of the certificate; a newer cached response is returned
+     * instead.
+     *
+     * @param ocspResp      OCSP response supplied by the caller
+     * @param ocspRespCache Cache for OCSP Responses, may be null
+     * @return the single response of the end-entity certificate (the newer cached one if any), empty if the response is not usable and has to be requested
+     * @throws GemPkiException if the signature of a usable response is invalid or no signature verifier is configured
      */
-    private boolean verifyOcspStatusGoodOnline() throws GemPkiException {
-        return OcspVerifier
-            .isStatusGood(sendOcspRequest(OcspRequestGenerator.generateSingleOcspRequest(x509EeCert,
-                x509IssuerCert)));
+    public Optional<OcspRespEntry> acceptOcspResponse(@NonNull final OCSPResp ocspResp, final OcspRespCache ocspRespCache) throws GemPkiException {
+        if (ocspRespSignatureVerifier == null) {
+            throw new GemPkiException(ErrorCode.OCSP, "Übergebene OCSP Response kann ohne OcspRespSignatureVerifier nicht geprüft werden.");
+        }
+        final OcspCertId certId = OcspCertId.of(OcspRequestGenerator.generateCertificateId(x509EeCert, x509IssuerCert));
+        final OcspRespEntry entry;
+        try {
+            entry = OcspVerifier.getSingleResponsesByCertId(ocspResp).get(certId);
+        } catch (final GemPkiException e) {
+            log.info("Übergebene OCSP Response nicht auswertbar: {}", e.getMessage());
+            return Optional.empty();
+        }
+        if (entry == null) {
+            log.info("Übergebene OCSP Response enthält das Zertifikat {} nicht", x509EeCert.getSerialNumber());
+            return Optional.empty();
+        }
+        if (!isFresh(entry, ocspRespCache)) {
+            log.info("Übergebene OCSP Response für Zertifikat {} ist nicht aktuell, thisUpdate: {}", x509EeCert.getSerialNumber(), entry.getThisUpdate());
+            return Optional.empty();
+        }
+        ocspRespSignatureVerifier.verify(ocspResp);
+        if (ocspRespCache == null) {
+            return Optional.of(entry);
+        }
+        final OcspRespEntry cached = ocspRespCache.saveResponseIfNewer(entry);
+        if (cached != entry) {
+            log.info("Übergebene OCSP Response für Zertifikat {} ist älter als die gecachte, thisUpdate: {}", x509EeCert.getSerialNumber(),
+                entry.getThisUpdate());
+        }
+        return Optional.of(cached);
+    }
+
+    private static boolean isFresh(final OcspRespEntry entry, final OcspRespCache ocspRespCache) {
+        if (entry.getCertStatus() == OcspCertStatus.REVOKED) {
+            return true;
+        }
+        final long now = System.currentTimeMillis();
+        final long thisUpdateMillis = entry.getThisUpdate().toInstant().toEpochMilli();
+        if (thisUpdateMillis > now + MAX_CLOCK_SKEW_MILLIS) {
+            return false;
+        }
+        if (entry.getNextUpdate() != null && entry.getNextUpdate().toInstant().toEpochMilli() < now) {
+            return false;
+        }
+        final long maxAgeMillis = ocspRespCache != null ? ocspRespCache.getTimeToLiveMillis(entry)
+            : TimeUnit.SECONDS.toMillis(DEFAULT_SUPPLIED_RESPONSE_MAX_AGE_SECONDS);
+        return thisUpdateMillis + maxAgeMillis > now;
+    }
+
+    private void verifySignature(final OCSPResp ocspResp) throws GemPkiException {
+        if (ocspRespSignatureVerifier != null) {
+            ocspRespSignatureVerifier.verify(ocspResp);
+        }
+    }
+
+    /**
+     * Sends an OCSP request for the given certificate id. Concurrent calls for the same certificate id, SSPs and priority share one outstanding request of
+     * the transport, see {@link OcspTransport#sendCoalescedAsync(List, CertificateID, OcspPriority, Duration)}.
+     *
+     * @param certificateId id of the certificate to request the status for
+     * @return future of the received OCSP response
+     */
+    private CompletableFuture<OCSPResp> fetchOcspResponse(final CertificateID certificateId) {
+        return ocspTransport.sendCoalescedAsync(OcspTransport.sspsOf(ssp, alternativeSsps), certificateId, priority, deadline);
     }
 
     /**
@@ -80,7 +241,17 @@ public class OcspTransceiver {
      * @throws GemPkiException
      */
     public OCSPResp sendOcspRequest(final OCSPReq request) throws GemPkiException {
-        return sendOcspRequestToUrl(ssp, request);
+        return join(sendOcspRequestAsync(request));
+    }
+
+    /**
+     * Sends given OCSP request asynchronously.
+     *
+     * @param request OCSP request to sent
+     * @return future of the received OCSP response, completes exceptionally with a {@link GemPkiException} on errors
+     */
+    public CompletableFuture<OCSPResp> sendOcspRequestAsync(final OCSPReq request) {
+        return ocspTransport.sendAsync(OcspTransport.sspsOf(ssp, alternativeSsps), request, priority, deadline);
     }
 
     /**
@@ -92,17 +263,16 @@ public class OcspTransceiver {
      * @throws GemPkiException
      */
     public static OCSPResp sendOcspRequestToUrl(final String ssp, final OCSPReq request) throws GemPkiException {
-        final HttpResponse<InputStream> httpResponse;
+        return join(OcspTransport.getDefault().sendAsync(ssp, request));
+    }
+
+    static <T> T join(final CompletableFuture<T> future) throws GemPkiException {
         try {
-            log.info(
-                "Send OCSP Request for certificate serial number: " + request.getRequestList()[0].getCertID()
-                    .getSerialNumber() + " to: "
-                    + ssp);
-            httpResponse = Unirest.post(ssp)
-                .header("Content-Type", "application/ocsp-request").body(request.getEncoded()).asBinary();
-            log.info("HttpStatus of OcspResponse: " + httpResponse.getStatus());
-            return new OCSPResp(httpResponse.getBody().readAllBytes());
-        } catch (final UnirestException | IOException e) {
+            return future.join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof GemPkiException) {
+                throw (GemPkiException) e.getCause();
+            }
             throw new GemPkiException(ErrorCode.OCSP, "OCSP senden/empfangen fehlgeschlagen", e);
         }
     }
@@ -0,0 +1,789 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.gematik.pki.ocsp;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import de.gematik.pki.error.ErrorCode;
+import de.gematik.pki.exception.GemPkiException;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+
+/**
+ * Class to transport OCSP requests over HTTP. One instance holds one persistent HTTP client with keep-alive connections, it is thread safe and meant to be
+ * shared. Requests are sent asynchronously, the number of concurrent requests and the request rate per SSP host are limited, further requests wait without
+ * blocking a thread.
+ * <p>
+ * Waiting requests are scheduled in two lanes: {@link OcspPriority#INTERACTIVE} requests are always started before {@link OcspPriority#BULK} requests, and
+ * bulk requests use at most maxBulkConnectionsPerHost connections. Requests with a deadline are rejected with {@link ErrorCode#OCSP_REJECTED} as soon as
+ * the deadline cannot be met, already when queued if the expected waiting time exceeds it.
+ * <p>
+ * The health of every SSP is tracked by a circuit breaker: after failureThreshold consecutive failures an SSP is not requested for openSeconds, then one
+ * trial request decides whether it is used again. Failed requests are remembered for negativeCacheSeconds and fail fast when repeated. Requests to SSPs
+ * with alternatives fail over to the next SSP and, with hedgeDelayMillis set, are sent to the next SSP as well when the response is late.
+ * <p>
+ * With maxGetRequestBytes set, requests up to this size are sent as HTTP GET (RFC 5019), so that HTTP caches and reverse proxies can serve them. Responses
+ * to GET requests are cached locally according to their Cache-Control max-age and revalidated with their ETag.
+ */
+@Slf4j
+@Getter
+public class OcspTransport {
+
+    public static final int DEFAULT_CONNECT_TIMEOUT_SECONDS = 10;
+    public static final int DEFAULT_REQUEST_TIMEOUT_SECONDS = 10;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+    public static final int DEFAULT_MAX_BULK_CONNECTIONS_PER_HOST = 10;
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final int DEFAULT_OPEN_SECONDS = 30;
+    public static final int DEFAULT_NEGATIVE_CACHE_SECONDS = 5;
+    public static final int DEFAULT_HTTP_CACHE_SIZE = 10_000;
+    /**
+     * Maximum size of a request sent as HTTP GET recommended by RFC 5019
+     */
+    public static final int RFC5019_MAX_GET_REQUEST_BYTES = 255;
+
+    private static final int MAXIMUM_NEGATIVE_CACHE_SIZE = 10_000;
+    private static final Pattern MAX_AGE = Pattern.compile("max-age\\s*=\\s*\"?(\\d+)");
+    private static final ScheduledThreadPoolExecutor DEADLINE_TIMER = createDeadlineTimer();
+    private static final OcspTransport DEFAULT_TRANSPORT = OcspTransport.builder().build();
+
+    private final int connectTimeoutSeconds;
+    private final int requestTimeoutSeconds;
+    private final int maxConnectionsPerHost;
+    private final int maxBulkConnectionsPerHost;
+    private final int maxRequestsPerSecondPerHost;
+    private final int failureThreshold;
+    private final int openSeconds;
+    private final int negativeCacheSeconds;
+    private final int hedgeDelayMillis;
+    private final int maxGetRequestBytes;
+    @Getter(AccessLevel.NONE)
+    private final HttpClient httpClient;
+    @Getter(AccessLevel.NONE)
+    private final ConcurrentHashMap<String, HostScheduler> hostSchedulers = new ConcurrentHashMap<>();
+    @Getter(AccessLevel.NONE)
+    private final ConcurrentHashMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    @Getter(AccessLevel.NONE)
+    private final Cache<List<Object>, GemPkiException> failedRequests;
+    @Getter(AccessLevel.NONE)
+    private final Cache<String, HttpCacheEntry> httpCache;
+    @Getter(AccessLevel.NONE)
+    private final ConcurrentHashMap<List<Object>, InFlightRequest> inFlightRequests = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor, use {@link #builder()}
+     *
+     * @param connectTimeoutSeconds timeout to establish a connection, default {@link #DEFAULT_CONNECT_TIMEOUT_SECONDS}
+     * @param requestTimeoutSeconds timeout to receive a response, default {@link #DEFAULT_REQUEST_TIMEOUT_SECONDS}
+     * @param maxConnectionsPerHost       maximum number of concurrent requests per host, default {@link #DEFAULT_MAX_CONNECTIONS_PER_HOST}
+     * @param maxBulkConnectionsPerHost   maximum number of concurrent {@link OcspPriority#BULK} requests per host, default
+     *                                    {@link #DEFAULT_MAX_BULK_CONNECTIONS_PER_HOST}, at most maxConnectionsPerHost
+     * @param maxRequestsPerSecondPerHost maximum number of requests started per second and host, 0: unlimited, default 0
+     * @param failureThreshold      number of consecutive failures that open the circuit breaker of an SSP, default {@link #DEFAULT_FAILURE_THRESHOLD}
+     * @param openSeconds           time an SSP is not requested after its circuit breaker opened, default {@link #DEFAULT_OPEN_SECONDS}
+     * @param negativeCacheSeconds  time a failed request fails fast when repeated, 0: off, default {@link #DEFAULT_NEGATIVE_CACHE_SECONDS}
+     * @param hedgeDelayMillis      delay after which a request is sent to the next SSP as well, 0: off, default 0
+     * @param maxGetRequestBytes    maximum size of a request sent as HTTP GET, larger ones are sent as POST, 0: POST only, default 0, see
+     *                              {@link #RFC5019_MAX_GET_REQUEST_BYTES}
+     * @param httpCacheSize         maximum number of cached responses to GET requests, 0: off, default {@link #DEFAULT_HTTP_CACHE_SIZE}
+     */
+    @Builder
+    private OcspTransport(final Integer connectTimeoutSeconds, final Integer requestTimeoutSeconds, final Integer maxConnectionsPerHost,
+        final Integer maxBulkConnectionsPerHost, final Integer maxRequestsPerSecondPerHost, final Integer failureThreshold, final Integer openSeconds, final Integer negativeCacheSeconds, final Integer hedgeDelayMillis,
+        final Integer maxGetRequestBytes, final Integer httpCacheSize) {
+        this.connectTimeoutSeconds = connectTimeoutSeconds != null ? connectTimeoutSeconds : DEFAULT_CONNECT_TIMEOUT_SECONDS;
+        this.requestTimeoutSeconds = requestTimeoutSeconds != null ? requestTimeoutSeconds : DEFAULT_REQUEST_TIMEOUT_SECONDS;
+        this.maxConnectionsPerHost = maxConnectionsPerHost != null ? maxConnectionsPerHost : DEFAULT_MAX_CONNECTIONS_PER_HOST;
+        this.maxBulkConnectionsPerHost = Math.max(1, Math.min(this.maxConnectionsPerHost,
+            maxBulkConnectionsPerHost != null ? maxBulkConnectionsPerHost : DEFAULT_MAX_BULK_CONNECTIONS_PER_HOST));
+        this.maxRequestsPerSecondPerHost = maxRequestsPerSecondPerHost != null ? maxRequestsPerSecondPerHost : 0;
+        this.failureThreshold = failureThreshold != null ? failureThreshold : DEFAULT_FAILURE_THRESHOLD;
+        this.openSeconds = openSeconds != null ? openSeconds : DEFAULT_OPEN_SECONDS;
+        this.negativeCacheSeconds = negativeCacheSeconds != null ? negativeCacheSeconds : DEFAULT_NEGATIVE_CACHE_SECONDS;
+        this.hedgeDelayMillis = hedgeDelayMillis != null ? hedgeDelayMillis : 0;
+        this.maxGetRequestBytes = maxGetRequestBytes != null ? maxGetRequestBytes : 0;
+        this.httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(this.connectTimeoutSeconds))
+            .build();
+        this.failedRequests = this.negativeCacheSeconds > 0 ? Caffeine.newBuilder()
+            .maximumSize(MAXIMUM_NEGATIVE_CACHE_SIZE)
+            .expireAfterWrite(Duration.ofSeconds(this.negativeCacheSeconds))
+            .build() : null;
+        final int maximumHttpCacheSize = httpCacheSize != null ? httpCacheSize : DEFAULT_HTTP_CACHE_SIZE;
+        this.httpCache = this.maxGetRequestBytes > 0 && maximumHttpCacheSize > 0 ? Caffeine.newBuilder()
+            .maximumSize(maximumHttpCacheSize)
+            .build() : null;
+    }
+
+    /**
+     * Getter for the shared transport with default settings
+     *
+     * @return default transport
+     */
+    public static OcspTransport getDefault() {
+        return DEFAULT_TRANSPORT;
+    }
+
+    /**
+     * Sends given OCSP request to given SSP asynchronously. The returned future completes exceptionally with a {@link GemPkiException} if the request
+     * cannot be sent or the response is not a valid OCSP response.
+     *
+     * @param ssp     SSP URL to sent to
+     * @param request OCSP request to sent
+     * @return future of the received OCSP response
+     */
+    public CompletableFuture<OCSPResp> sendAsync(@NonNull final String ssp, @NonNull final OCSPReq request) {
+        return sendAsync(List.of(ssp), request);
+    }
+
+    /**
+     * Sends given OCSP request to the first available of the given SSPs asynchronously. On failure the request is sent to the next SSP, with hedging
+     * enabled also when the response is late. The first response received is used. The returned future completes exceptionally with a
+     * {@link GemPkiException} if no SSP answers with a valid OCSP response.
+     *
+     * @param ssps    SSP URLs to sent to, in order of preference
+     * @param request OCSP request to sent
+     * @return future of the received OCSP response
+     */
+    public CompletableFuture<OCSPResp> sendAsync(@NonNull final List<String> ssps, @NonNull final OCSPReq request) {
+        return sendAsync(ssps, request, OcspPriority.INTERACTIVE, null);
+    }
+
+    /**
+     * Sends given OCSP request to the first available of the given SSPs asynchronously, see {@link #sendAsync(List, OCSPReq)}, scheduled with the given
+     * priority. The returned future completes exceptionally with a {@link GemPkiException} of {@link ErrorCode#OCSP_REJECTED} if no response can be
+     * received within the given deadline.
+     *
+     * @param ssps     SSP URLs to sent to, in order of preference
+     * @param request  OCSP request to sent
+     * @param priority lane of the request
+     * @param deadline maximum time until the response is received, including waiting for a connection, null: no deadline
+     * @return future of the received OCSP response
+     */
+    public CompletableFuture<OCSPResp> sendAsync(@NonNull final List<String> ssps, @NonNull final OCSPReq request, @NonNull final OcspPriority priority,
+        final Duration deadline) {
+        if (ssps.isEmpty()) {
+            return CompletableFuture.failedFuture(new GemPkiException(ErrorCode.OCSP, "OCSP senden/empfangen fehlgeschlagen, keine SSP angegeben"));
+        }
+        final byte[] encodedRequest;
+        try {
+            encodedRequest = request.getEncoded();
+        } catch (final IOException e) {
+            return CompletableFuture.failedFuture(sendFailed(e));
+        }
+        final List<Object> failedRequestKey = List.of(ssps, ByteBuffer.wrap(encodedRequest));
+        final GemPkiException failure = failedRequests != null ? failedRequests.getIfPresent(failedRequestKey) : null;
+        if (failure != null) {
+            log.debug("OCSP Request an {} ist kürzlich fehlgeschlagen", ssps);
+            return CompletableFuture.failedFuture(failure);
+        }
+        log.info("Send OCSP Request for certificate serial number: {} to: {}", request.getRequestList()[0].getCertID().getSerialNumber(), ssps);
+        final long deadlineNanos = deadline != null ? System.nanoTime() + deadline.toNanos() : Long.MAX_VALUE;
+        final Exchange exchange = new Exchange(ssps, encodedRequest, priority, deadlineNanos);
+        exchange.start();
+        if (failedRequests != null) {
+            exchange.result.whenComplete((ocspResp, e) -> {
+                if (e instanceof GemPkiException && !isRejection(e)) {
+                    failedRequests.put(failedRequestKey, (GemPkiException) e);
+                }
+            });
+        }
+        return exchange.result;
+    }
+
+    /**
+     * Sends an OCSP request for one certificate, see {@link #sendAsync(List, OCSPReq, OcspPriority, Duration)}. Concurrent calls for the same SSPs,
+     * certificate and priority share one outstanding request and its result (single-flight), so a burst of validations of one certificate causes one
+     * request to the SSP. Every caller keeps its own deadline: a call joins an outstanding request only if that request may run at least as long, otherwise
+     * it sends its own request, which later calls then join.
+     *
+     * @param ssps          SSP URLs to sent to, in order of preference
+     * @param certificateId id of the certificate to request the status for
+     * @param priority      lane of the request
+     * @param deadline      maximum time until the response is received, including waiting for a connection, null: no deadline
+     * @return future of the received OCSP response
+     */
+    public CompletableFuture<OCSPResp> sendCoalescedAsync(@NonNull final List<String> ssps, @NonNull final CertificateID certificateId,
+        @NonNull final OcspPriority priority, final Duration deadline) {
+        final long deadlineNanos = deadline != null ? System.nanoTime() + deadline.toNanos() : Long.MAX_VALUE;
+        final List<Object> key = List.of(ssps, OcspCertId.of(certificateId), priority);
+        while (true) {
+            final InFlightRequest inFlight = inFlightRequests.get(key);
+            if (inFlight != null && inFlight.deadlineNanos >= deadlineNanos) {
+                log.debug("Join in-flight OCSP Request for certificate serial number: {}", certificateId.getSerialNumber());
+                return inFlight.join(deadlineNanos);
+            }
+            final InFlightRequest request = new InFlightRequest(deadlineNanos);
+            if (inFlight == null ? inFlightRequests.putIfAbsent(key, request) != null : !inFlightRequests.replace(key, inFlight, request)) {
+                continue;
+            }
+            final CompletableFuture<OCSPResp> response;
+            try {
+                response = sendAsync(ssps, OcspRequestGenerator.generateSingleOcspRequest(certificateId), priority, deadline);
+            } catch (final GemPkiException e) {
+                inFlightRequests.remove(key, request);
+                return CompletableFuture.failedFuture(e);
+            }
+            response.whenComplete((ocspResp, e) -> {
+                inFlightRequests.remove(key, request);
+                if (e != null) {
+                    request.result.completeExceptionally(e instanceof CompletionException ? e.getCause() : e);
+                } else {
+                    request.result.complete(ocspResp);
+                }
+            });
+            return request.result.copy();
+        }
+    }
+
+    /**
+     * Whether requests are currently sent to the given SSP, i.e. its circuit breaker is not open
+     *
+     * @param ssp SSP URL
+     * @return false while the circuit breaker of the SSP is open
+     */
+    public boolean isAvailable(@NonNull final String ssp) {
+        final CircuitBreaker circuitBreaker = circuitBreakers.get(ssp);
+        return circuitBreaker == null || circuitBreaker.isAvailable();
+    }
+
+    /**
+     * Timer that rejects queued requests at their deadline. Timers of requests that are started before are cancelled and removed at once.
+     */
+    private static ScheduledThreadPoolExecutor createDeadlineTimer() {
+        final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable, "ocsp-deadline-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    /**
+     * Getter for the number of scheduled deadline timers of queued requests of all transports
+     *
+     * @return number of timers
+     */
+    static int getDeadlineTimerCount() {
+        return DEADLINE_TIMER.getQueue().size();
+    }
+
+    static List<String> sspsOf(final String ssp, final List<String> alternativeSsps) {
+        if (alternativeSsps == null || alternativeSsps.isEmpty()) {
+            return List.of(ssp);
+        }
+        final List<String> ssps = new ArrayList<>(alternativeSsps.size() + 1);
+        ssps.add(ssp);
+        alternativeSsps.stream().filter(alternativeSsp -> !alternativeSsp.equals(ssp)).forEach(ssps::add);
+        return ssps;
+    }
+
+    private CompletableFuture<OCSPResp> sendTo(final String ssp, final byte[] encodedRequest, final OcspPriority priority, final long deadlineNanos) {
+        final boolean sendAsGet = encodedRequest.length <= maxGetRequestBytes;
+        final String url = sendAsGet ? getRequestUrl(ssp, encodedRequest) : ssp;
+        final HttpCacheEntry cachedEntry = sendAsGet && httpCache != null ? httpCache.getIfPresent(url) : null;
+        if (cachedEntry != null && cachedEntry.isFresh()) {
+            log.debug("OCSP Response aus HTTP Cache verwendet: {}", ssp);
+            try {
+                return CompletableFuture.completedFuture(new OCSPResp(cachedEntry.body));
+            } catch (final IOException e) {
+                return CompletableFuture.failedFuture(sendFailed(e));
+            }
+        }
+        final HttpRequest.Builder httpRequestBuilder;
+        try {
+            httpRequestBuilder = HttpRequest.newBuilder(URI.create(url));
+            if (!sendAsGet) {
+                httpRequestBuilder.header("Content-Type", "application/ocsp-request")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(encodedRequest));
+            } else if (cachedEntry != null && cachedEntry.etag != null) {
+                httpRequestBuilder.header("If-None-Match", cachedEntry.etag).GET();
+            } else {
+                httpRequestBuilder.GET();
+            }
+        } catch (final IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(sendFailed(e));
+        }
+        final HostScheduler hostScheduler = hostSchedulers.computeIfAbsent(hostOf(URI.create(url)), host -> new HostScheduler());
+        return hostScheduler.submit(priority, deadlineNanos, () -> {
+                // the request must not take longer than the rest of the deadline
+                final Duration timeout = Duration.ofSeconds(requestTimeoutSeconds);
+                final long remainingNanos = deadlineNanos - System.nanoTime();
+                httpRequestBuilder.timeout(remainingNanos < timeout.toNanos() ? Duration.ofNanos(Math.max(remainingNanos, 1)) : timeout);
+                return httpClient.sendAsync(httpRequestBuilder.build(), HttpResponse.BodyHandlers.ofByteArray());
+            })
+            .handle((httpResponse, e) -> {
+                if (e != null && isRejection(e instanceof CompletionException ? e.getCause() : e)) {
+                    throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+                }
+                if (e != null) {
+                    throw new CompletionException(sendFailed(e instanceof CompletionException ? e.getCause() : e));
+                }
+                log.info("HttpStatus of OcspResponse: {}", httpResponse.statusCode());
+                final byte[] encodedResponse;
+                if (httpResponse.statusCode() == 304 && cachedEntry != null) {
+                    encodedResponse = cachedEntry.body;
+                } else if (httpResponse.statusCode() == 200) {
+                    encodedResponse = httpResponse.body();
+                } else {
+                    throw new CompletionException(new GemPkiException(ErrorCode.OCSP,
+                        "OCSP senden/empfangen fehlgeschlagen, HttpStatus: " + httpResponse.statusCode()));
+                }
+                final OCSPResp ocspResp;
+                try {
+                    ocspResp = new OCSPResp(encodedResponse);
+                } catch (final IOException ioException) {
+                    throw new CompletionException(sendFailed(ioException));
+                }
+                if (sendAsGet && httpCache != null) {
+                    cacheHttpResponse(url, httpResponse, encodedResponse, cachedEntry);
+                }
+                return ocspResp;
+            });
+    }
+
+    /**
+     * Store the response to a GET request according to its Cache-Control and ETag headers. Responses without max-age are stored only if they can be
+     * revalidated by their ETag.
+     */
+    private void cacheHttpResponse(final String url, final HttpResponse<byte[]> httpResponse, final byte[] encodedResponse,
+        final HttpCacheEntry cachedEntry) {
+        final String cacheControl = httpResponse.headers().firstValue("Cache-Control").orElse("").toLowerCase(Locale.ROOT);
+        if (cacheControl.contains("no-store")) {
+            httpCache.invalidate(url);
+            return;
+        }
+        long maxAgeSeconds = 0;
+        final Matcher maxAge = MAX_AGE.matcher(cacheControl);
+        if (maxAge.find() && !cacheControl.contains("no-cache")) {
+            maxAgeSeconds = Long.parseLong(maxAge.group(1));
+        }
+        final String etag = httpResponse.headers().firstValue("ETag").orElse(cachedEntry != null ? cachedEntry.etag : null);
+        if (maxAgeSeconds == 0 && etag == null) {
+            httpCache.invalidate(url);
+            return;
+        }
+        httpCache.put(url, new HttpCacheEntry(encodedResponse, etag, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(maxAgeSeconds)));
+    }
+
+    /**
+     * URL of a GET request according to RFC 5019: URL encoded base64 of the DER encoded request appended to the SSP URL
+     */
+    private static String getRequestUrl(final String ssp, final byte[] encodedRequest) {
+        return ssp + (ssp.endsWith("/") ? "" : "/") + URLEncoder.encode(Base64.getEncoder().encodeToString(encodedRequest), StandardCharsets.UTF_8);
+    }
+
+    private static boolean isRejection(final Throwable e) {
+        return e instanceof GemPkiException && ((GemPkiException) e).getError() == ErrorCode.OCSP_REJECTED;
+    }
+
+    private static GemPkiException rejected(final String reason) {
+        return new GemPkiException(ErrorCode.OCSP_REJECTED, "OCSP Request abgelehnt, " + reason);
+    }
+
+    private static GemPkiException sendFailed(final Throwable cause) {
+        return new GemPkiException(ErrorCode.OCSP, "OCSP senden/empfangen fehlgeschlagen",
+            cause instanceof Exception ? (Exception) cause : new IOException(cause));
+    }
+
+    private static String hostOf(final URI uri) {
+        return uri.getHost() + ":" + uri.getPort();
+    }
+
+    /**
+     * One OCSP request sent to one or more SSPs until the first response arrives.
+     */
+    private class Exchange {
+
+        private final List<String> ssps;
+        private final byte[] encodedRequest;
+        private final OcspPriority priority;
+        private final long deadlineNanos;
+        private final CompletableFuture<OCSPResp> result = new CompletableFuture<>();
+        private final AtomicInteger nextSsp = new AtomicInteger();
+        private final AtomicInteger pendingAttempts = new AtomicInteger();
+        private volatile GemPkiException lastFailure;
+
+        private Exchange(final List<String> ssps, final byte[] encodedRequest, final OcspPriority priority, final long deadlineNanos) {
+            this.ssps = ssps;
+            this.encodedRequest = encodedRequest;
+            this.priority = priority;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        private void start() {
+            if (!sendToNextSsp()) {
+                result.completeExceptionally(lastFailure);
+                return;
+            }
+            if (hedgeDelayMillis > 0 && ssps.size() > 1) {
+                CompletableFuture.delayedExecutor(hedgeDelayMillis, TimeUnit.MILLISECONDS).execute(() -> {
+                    if (!result.isDone()) {
+                        log.debug("OCSP Response von {} verzögert, sende auch an nächste SSP", ssps);
+                        sendToNextSsp();
+                    }
+                });
+            }
+        }
+
+        /**
+         * Send the request to the next SSP with a closed circuit breaker
+         *
+         * @return false if there is no further SSP
+         */
+        private boolean sendToNextSsp() {
+            int index;
+            while ((index = nextSsp.getAndIncrement()) < ssps.size()) {
+                final String ssp = ssps.get(index);
+                final CircuitBreaker circuitBreaker = circuitBreakers.computeIfAbsent(ssp, key -> new CircuitBreaker());
+                if (!circuitBreaker.tryAcquire()) {
+                    log.info("OCSP Request nicht gesendet, SSP {} ist nicht verfügbar", ssp);
+                    lastFailure = new GemPkiException(ErrorCode.OCSP, "OCSP senden/empfangen fehlgeschlagen, SSP nicht verfügbar: " + ssp);
+                    continue;
+                }
+                pendingAttempts.incrementAndGet();
+                sendTo(ssp, encodedRequest, priority, deadlineNanos).whenComplete((ocspResp, e) -> {
+                    if (e == null) {
+                        circuitBreaker.success();
+                        result.complete(ocspResp);
+                        return;
+                    }
+                    final Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                    if (isRejection(cause)) {
+                        circuitBreaker.release();
+                    } else {
+                        circuitBreaker.failure();
+                    }
+                    lastFailure = cause instanceof GemPkiException ? (GemPkiException) cause : sendFailed(cause);
+                    final boolean lastAttempt = pendingAttempts.decrementAndGet() == 0;
+                    if (!result.isDone() && !sendToNextSsp() && lastAttempt) {
+                        result.completeExceptionally(lastFailure);
+                    }
+                });
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Outstanding request shared by concurrent calls of {@link #sendCoalescedAsync(List, CertificateID, OcspPriority, Duration)}
+     */
+    @RequiredArgsConstructor
+    private static class InFlightRequest {
+
+        private final long deadlineNanos;
+        private final CompletableFuture<OCSPResp> result = new CompletableFuture<>();
+
+        /**
+         * Result of the request for a caller with the given deadline, not later than the deadline of the request itself
+         */
+        private CompletableFuture<OCSPResp> join(final long callerDeadlineNanos) {
+            final CompletableFuture<OCSPResp> joined = result.copy();
+            if (callerDeadlineNanos == deadlineNanos || callerDeadlineNanos == Long.MAX_VALUE) {
+                return joined;
+            }
+            return joined.orTimeout(Math.max(callerDeadlineNanos - System.nanoTime(), 0), TimeUnit.NANOSECONDS)
+                .handle((ocspResp, e) -> {
+                    final Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                    if (cause instanceof TimeoutException) {
+                        throw new CompletionException(rejected("Deadline beim Warten überschritten"));
+                    }
+                    if (cause != null) {
+                        throw new CompletionException(cause);
+                    }
+                    return ocspResp;
+                });
+        }
+    }
+
+    /**
+     * Cached response to a GET request
+     */
+    @RequiredArgsConstructor
+    private static class HttpCacheEntry {
+
+        private final byte[] body;
+        private final String etag;
+        private final long freshUntilMillis;
+
+        private boolean isFresh() {
+            return System.currentTimeMillis() < freshUntilMillis;
+        }
+    }
+
+    /**
+     * Circuit breaker of one SSP: closed (requests are sent), open (requests fail fast) and half open (one trial request is sent).
+     */
+    private class CircuitBreaker {
+
+        private int consecutiveFailures;
+        private long openUntilMillis;
+        private boolean open;
+        private boolean trialRunning;
+
+        private synchronized boolean isAvailable() {
+            return !open || !trialRunning && System.currentTimeMillis() >= openUntilMillis;
+        }
+
+        private synchronized boolean tryAcquire() {
+            if (!open) {
+                return true;
+            }
+            if (trialRunning || System.currentTimeMillis() < openUntilMillis) {
+                return false;
+            }
+            trialRunning = true;
+            return true;
+        }
+
+        private synchronized void release() {
+            trialRunning = false;
+        }
+
+        private synchronized void success() {
+            consecutiveFailures = 0;
+            open = false;
+            trialRunning = false;
+        }
+
+        private synchronized void failure() {
+            consecutiveFailures++;
+            if (trialRunning || consecutiveFailures >= failureThreshold) {
+                if (!open) {
+                    log.warn("Circuit Breaker geöffnet nach {} Fehlern", consecutiveFailures);
+                }
+                open = true;
+                trialRunning = false;
+                openUntilMillis = System.currentTimeMillis() + openSeconds * 1000L;
+            }
+        }
+    }
+
+    /**
+     * Schedules the requests to one host: limits the number of concurrent requests and the request rate, starts interactive before bulk requests and
+     * rejects requests that cannot meet their deadline.
+     */
+    private class HostScheduler {
+
+        /**
+         * Waiting requests in order of arrival, a request that reaches its deadline is removed in constant time
+         */
+        private final Set<Task<?>> interactiveQueue = new LinkedHashSet<>();
+        private final Set<Task<?>> bulkQueue = new LinkedHashSet<>();
+        private int active;
+        private int activeBulk;
+        private double tokens = Math.max(1, maxRequestsPerSecondPerHost);
+        private long lastRefillNanos = System.nanoTime();
+        private boolean wakeupScheduled;
+        /**
+         * Exponentially weighted moving average of the request duration
+         */
+        private long averageDurationNanos;
+
+        private <T> CompletableFuture<T> submit(final OcspPriority priority, final long deadlineNanos, final Supplier<CompletableFuture<T>> request) {
+            final Task<T> task = new Task<>(priority, deadlineNanos, request);
+            synchronized (this) {
+                final long expectedNanos = expectedWaitingNanos(priority) + averageDurationNanos;
+                if (deadlineNanos != Long.MAX_VALUE && System.nanoTime() + expectedNanos > deadlineNanos) {
+                    log.info("OCSP Request abgelehnt, erwartete Dauer {} ms überschreitet die Deadline", TimeUnit.NANOSECONDS.toMillis(expectedNanos));
+                    return CompletableFuture.failedFuture(rejected("Deadline kann nicht eingehalten werden"));
+                }
+                queueOf(priority).add(task);
+                if (deadlineNanos != Long.MAX_VALUE) {
+                    task.deadlineTimer = DEADLINE_TIMER.schedule(() -> rejectAtDeadline(task), deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }
+            }
+            dispatch();
+            return task.result;
+        }
+
+        /**
+         * Waiting time until a new request of the given priority is started, estimated from the queued requests, the average request duration and the
+         * rate limit
+         */
+        private long expectedWaitingNanos(final OcspPriority priority) {
+            final int slots = priority == OcspPriority.INTERACTIVE ? maxConnectionsPerHost : maxBulkConnectionsPerHost;
+            final int queuedBefore = interactiveQueue.size() + (priority == OcspPriority.BULK ? bulkQueue.size() : 0);
+            final int busy = priority == OcspPriority.INTERACTIVE ? active : activeBulk;
+            final long waitingForSlot = (long) ((busy + queuedBefore) / slots) * averageDurationNanos;
+            final long waitingForRate = maxRequestsPerSecondPerHost > 0 ? queuedBefore * TimeUnit.SECONDS.toNanos(1) / maxRequestsPerSecondPerHost : 0;
+            return Math.max(waitingForSlot, waitingForRate);
+        }
+
+        private void rejectAtDeadline(final Task<?> task) {
+            final boolean removed;
+            synchronized (this) {
+                removed = queueOf(task.priority).remove(task);
+            }
+            if (removed) {
+                task.result.completeExceptionally(rejected("Deadline beim Warten überschritten"));
+            }
+        }
+
+        private Set<Task<?>> queueOf(final OcspPriority priority) {
+            return priority == OcspPriority.INTERACTIVE ? interactiveQueue : bulkQueue;
+        }
+
+        /**
+         * Start as many waiting requests as the limits allow
+         */
+        private void dispatch() {
+            while (true) {
+                final Task<?> next;
+                synchronized (this) {
+                    if (active >= maxConnectionsPerHost) {
+                        return;
+                    }
+                    final Set<Task<?>> queue = !interactiveQueue.isEmpty() || activeBulk >= maxBulkConnectionsPerHost ? interactiveQueue : bulkQueue;
+                    if (queue.isEmpty()) {
+                        return;
+                    }
+                    if (!acquireToken()) {
+                        return;
+                    }
+                    final Iterator<Task<?>> iterator = queue.iterator();
+                    next = iterator.next();
+                    iterator.remove();
+                    if (next.deadlineTimer != null) {
+                        next.deadlineTimer.cancel(false);
+                    }
+                    active++;
+                    if (next.priority == OcspPriority.BULK) {
+                        activeBulk++;
+                    }
+                }
+                start(next);
+            }
+        }
+
+        /**
+         * Take a token of the rate limit, schedule a dispatch when the next token is available otherwise
+         */
+        private boolean acquireToken() {
+            if (maxRequestsPerSecondPerHost <= 0) {
+                return true;
+            }
+            final long now = System.nanoTime();
+            tokens = Math.min(maxRequestsPerSecondPerHost, tokens + (now - lastRefillNanos) * maxRequestsPerSecondPerHost / 1e9);
+            lastRefillNanos = now;
+            if (tokens >= 1) {
+                tokens--;
+                return true;
+            }
+            if (!wakeupScheduled) {
+                wakeupScheduled = true;
+                final long waitNanos = (long) ((1 - tokens) * 1e9 / maxRequestsPerSecondPerHost);
+                CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS).execute(() -> {
+                    synchronized (this) {
+                        wakeupScheduled = false;
+                    }
+                    dispatch();
+                });
+            }
+            return false;
+        }
+
+        private <T> void start(final Task<T> task) {
+            final long startNanos = System.nanoTime();
+            if (startNanos >= task.deadlineNanos) {
+                release(task, -1);
+                task.result.completeExceptionally(rejected("Deadline beim Warten überschritten"));
+                return;
+            }
+            final CompletableFuture<T> running;
+            try {
+                running = task.request.get();
+            } catch (final RuntimeException e) {
+                release(task, -1);
+                task.result.completeExceptionally(e);
+                return;
+            }
+            running.whenComplete((value, e) -> {
+                release(task, System.nanoTime() - startNanos);
+                if (e != null) {
+                    task.result.completeExceptionally(e);
+                } else {
+                    task.result.complete(value);
+                }
+            });
+        }
+
+        private void release(final Task<?> task, final long durationNanos) {
+            synchronized (this) {
+                active--;
+                if (task.priority == OcspPriority.BULK) {
+                    activeBulk--;
+                }
+                if (durationNanos >= 0) {
+                    averageDurationNanos = averageDurationNanos == 0 ? durationNanos : (averageDurationNanos * 4 + durationNanos) / 5;
+                }
+            }
+            dispatch();
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class Task<T> {
+
+        private final OcspPriority priority;
+        private final long deadlineNanos;
+        private final Supplier<CompletableFuture<T>> request;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        /**
+         * Rejects the request at its deadline while it is waiting, guarded by the lock of the {@link HostScheduler}
+         */
+        private ScheduledFuture<?> deadlineTimer;
+    }
+}
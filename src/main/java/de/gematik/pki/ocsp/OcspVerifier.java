@@ -18,6 +18,14 @@ package de.gematik.pki.ocsp;
 
 import de.gematik.pki.error.ErrorCode;
 import de.gematik.pki.exception.GemPkiException;
+import java.io.IOException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 import lombok.NonNull;
@@ -50,4 +58,67 @@ public class OcspVerifier {
         }
         return false;
     }
+
+    /**
+     * Parse all single responses of an OCSP response. Responses with a response status other than successful contain no single responses.
+     *
+     * @param ocspResponse OCSP Response
+     * @return list of pre-parsed single responses, each carrying the encoded OCSP response
+     * @throws GemPkiException exception thrown if ocsp response cannot be evaluated
+     */
+    public static List<OcspRespEntry> getSingleResponses(@NonNull final OCSPResp ocspResponse) throws GemPkiException {
+        final List<OcspRespEntry> entries = new ArrayList<>();
+        if (ocspResponse.getStatus() != 0) {
+            return entries;
+        }
+        final BasicOCSPResp basicResponse;
+        final byte[] encoded;
+        try {
+            basicResponse = (BasicOCSPResp) ocspResponse.getResponseObject();
+            encoded = ocspResponse.getEncoded();
+        } catch (final OCSPException | IOException e) {
+            throw new GemPkiException(ErrorCode.OCSP, "OCSP response Auswertung fehlgeschlagen", e);
+        }
+        if (basicResponse == null) {
+            return entries;
+        }
+        for (final SingleResp singleResp : basicResponse.getResponses()) {
+            final CertificateStatus certStatus = singleResp.getCertStatus();
+            final OcspRespEntry.OcspRespEntryBuilder builder = OcspRespEntry.builder()
+                .certId(OcspCertId.of(singleResp.getCertID()))
+                .thisUpdate(toZonedDateTime(singleResp.getThisUpdate()))
+                .nextUpdate(singleResp.getNextUpdate() != null ? toZonedDateTime(singleResp.getNextUpdate()) : null)
+                .encoded(encoded);
+            if (certStatus == CertificateStatus.GOOD) {
+                builder.certStatus(OcspCertStatus.GOOD);
+            } else if (certStatus instanceof RevokedStatus) {
+                builder.certStatus(OcspCertStatus.REVOKED)
+                    .revocationTime(toZonedDateTime(((RevokedStatus) certStatus).getRevocationTime()));
+            } else {
+                builder.certStatus(OcspCertStatus.UNKNOWN);
+            }
+            entries.add(builder.build());
+        }
+        return entries;
+    }
+
+    /**
+     * Parse all single responses of an OCSP response and map them to the certificate id they answer. Use it to evaluate responses to requests for several
+     * certificates, where the order of the single responses need not follow the order of the request.
+     *
+     * @param ocspResponse OCSP Response
+     * @return pre-parsed single responses by certificate id
+     * @throws GemPkiException exception thrown if ocsp response cannot be evaluated
+     */
+    public static Map<OcspCertId, OcspRespEntry> getSingleResponsesByCertId(@NonNull final OCSPResp ocspResponse) throws GemPkiException {
+        final Map<OcspCertId, OcspRespEntry> entries = new HashMap<>();
+        for (final OcspRespEntry entry : getSingleResponses(ocspResponse)) {
+            entries.put(entry.getCertId(), entry);
+        }
+        return entries;
+    }
+
+    private static ZonedDateTime toZonedDateTime(final Date date) {
+        return date.toInstant().atZone(ZoneOffset.UTC);
+    }
 }
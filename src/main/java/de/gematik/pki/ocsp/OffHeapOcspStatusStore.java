@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.gematik.pki.ocsp;
+
+import de.gematik.pki.error.ErrorCode;
+import de.gematik.pki.exception.GemPkiException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ocsp.RevokedInfo;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.bouncycastle.cert.ocsp.UnknownStatus;
+
+/**
+ * Status store for OCSP responders holding the status of very many certificates (e.g. a whole eGK population) outside the java heap. Entries are keyed by
+ * issuer and serial number and live in fixed size slots of an open addressing hash table in direct byte buffers, so there is no object per entry.
+ * <p>
+ * Lookups are lock-free and may run concurrently to writes. The capacity is fixed at construction.
+ */
+@Slf4j
+public class OffHeapOcspStatusStore implements OcspStatusStore {
+
+    public static final int MAX_SERIAL_NUMBER_LENGTH = 20;
+
+    private static final double MAX_LOAD_FACTOR = 0.75;
+    private static final int MAX_SEGMENT_SLOTS_SHIFT = 24;
+    private static final int SLOT_SIZE = 40;
+    // slot layout: issuer index + 1 (0: free slot), version (odd while the status is written), revocation time, status, reason, serial number
+    private static final int OFFSET_ISSUER = 0;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_REVOCATION_TIME = 8;
+    private static final int OFFSET_STATUS = 16;
+    private static final int OFFSET_REASON = 17;
+    private static final int OFFSET_SERIAL_LENGTH = 18;
+    private static final int OFFSET_SERIAL = 20;
+    private static final byte NO_REASON = -1;
+    private static final VarHandle INT_HANDLE = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private static final OcspCertStatus[] STATUS_VALUES = OcspCertStatus.values();
+
+    private final ConcurrentHashMap<ByteBuffer, Integer> issuerIndexes = new ConcurrentHashMap<>();
+    private final AtomicInteger nextIssuerIndex = new AtomicInteger();
+    private final ByteBuffer[] segments;
+    private final int segmentSlotsShift;
+    private final long slotMask;
+    private final long maximumSize;
+    private final OcspCertStatus defaultStatus;
+    private volatile long size;
+
+    /**
+     * Constructor, use {@link #builder()}
+     *
+     * @param expectedEntries maximum number of certificates to store
+     * @param defaultStatus   status of certificates not in the store, default {@link OcspCertStatus#UNKNOWN}
+     */
+    @Builder
+    private OffHeapOcspStatusStore(final long expectedEntries, final OcspCertStatus defaultStatus) {
+        if (expectedEntries <= 0) {
+            throw new IllegalArgumentException("expectedEntries must be positive");
+        }
+        this.maximumSize = expectedEntries;
+        this.defaultStatus = defaultStatus != null ? defaultStatus : OcspCertStatus.UNKNOWN;
+        final long slots = Long.highestOneBit((long) Math.ceil(expectedEntries / MAX_LOAD_FACTOR) * 2 - 1);
+        this.slotMask = slots - 1;
+        this.segmentSlotsShift = Math.min(Long.numberOfTrailingZeros(slots), MAX_SEGMENT_SLOTS_SHIFT);
+        final long slotsPerSegment = 1L << segmentSlotsShift;
+        this.segments = new ByteBuffer[(int) (slots / slotsPerSegment)];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = ByteBuffer.allocateDirect((int) (slotsPerSegment * SLOT_SIZE)).order(ByteOrder.nativeOrder());
+        }
+        log.debug("OCSP status store with {} slots in {} segments allocated", slots, segments.length);
+    }
+
+    /**
+     * Store the status of a certificate. An existing status of the certificate is replaced.
+     *
+     * @param x509IssuerCert issuer of the certificate
+     * @param serialNumber   serial number of the certificate
+     * @param status         status of the certificate
+     * @param revocationTime time of revocation, required for status REVOKED
+     * @param reason         revocation reason (see {@link CRLReason}), may be null
+     * @throws GemPkiException if the issuer hashes cannot be computed
+     */
+    public void put(@NonNull final X509Certificate x509IssuerCert, @NonNull final BigInteger serialNumber, @NonNull final OcspCertStatus status,
+        final ZonedDateTime revocationTime, final Integer reason) throws GemPkiException {
+        if (status == OcspCertStatus.REVOKED && revocationTime == null) {
+            throw new IllegalArgumentException("revocationTime is required for status REVOKED");
+        }
+        put(getIssuerIndex(x509IssuerCert), serialNumber.toByteArray(), status,
+            revocationTime != null ? revocationTime.toInstant().toEpochMilli() : 0, reason != null ? reason.byteValue() : NO_REASON);
+    }
+
+    /**
+     * Load the status of certificates of one issuer from a text file. Each line holds the hexadecimal serial number and the status (good, revoked or
+     * unknown) separated by ';'. Revoked certificates have the revocation time (ISO-8601, e.g. 2021-05-01T10:00:00Z) and optionally the revocation reason
+     * (number, see {@link CRLReason}) as further fields. Empty lines and lines starting with '#' are skipped.
+     *
+     * @param x509IssuerCert issuer of all certificates in the file
+     * @param file           the file to load
+     * @return number of loaded certificates
+     * @throws GemPkiException if the file cannot be read or contains an invalid line
+     */
+    public long load(@NonNull final X509Certificate x509IssuerCert, @NonNull final Path file) throws GemPkiException {
+        final int issuerIndex = getIssuerIndex(x509IssuerCert);
+        long count = 0;
+        long lineNumber = 0;
+        try (final BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.charAt(0) == '#') {
+                    continue;
+                }
+                loadLine(issuerIndex, line);
+                count++;
+            }
+        } catch (final IOException e) {
+            throw new GemPkiException(ErrorCode.UNKNOWN, "OCSP Status Datei konnte nicht gelesen werden: " + file, e);
+        } catch (final IllegalArgumentException | DateTimeParseException e) {
+            throw new GemPkiException(ErrorCode.UNKNOWN, "Ungültige Zeile " + lineNumber + " in OCSP Status Datei: " + file, e);
+        }
+        log.info("{} OCSP status von {} geladen", count, file);
+        return count;
+    }
+
+    private void loadLine(final int issuerIndex, final String line) {
+        final String[] fields = line.split(";");
+        if (fields.length < 2) {
+            throw new IllegalArgumentException("serial number and status expected");
+        }
+        final OcspCertStatus status = OcspCertStatus.valueOf(fields[1].trim().toUpperCase(Locale.ROOT));
+        long revocationTime = 0;
+        byte reason = NO_REASON;
+        if (status == OcspCertStatus.REVOKED) {
+            if (fields.length < 3) {
+                throw new IllegalArgumentException("revocation time expected");
+            }
+            revocationTime = Instant.parse(fields[2].trim()).toEpochMilli();
+            if (fields.length > 3) {
+                reason = Byte.parseByte(fields[3].trim());
+            }
+        }
+        put(issuerIndex, new BigInteger(fields[0].trim(), 16).toByteArray(), status, revocationTime, reason);
+    }
+
+    /**
+     * Getter for the number of stored certificates
+     *
+     * @return number of certificates
+     */
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public CertificateStatus getCertificateStatus(@NonNull final CertificateID certificateId) {
+        final Integer issuerIndex = issuerIndexes.get(issuerKey(certificateId.getIssuerNameHash(), certificateId.getIssuerKeyHash()));
+        if (issuerIndex == null) {
+            return toCertificateStatus(defaultStatus, 0, NO_REASON);
+        }
+        final byte[] serial = certificateId.getSerialNumber().toByteArray();
+        if (serial.length > MAX_SERIAL_NUMBER_LENGTH) {
+            return toCertificateStatus(defaultStatus, 0, NO_REASON);
+        }
+        final long slot = findSlot(issuerIndex, serial);
+        final ByteBuffer segment = segments[(int) (slot >>> segmentSlotsShift)];
+        final int offset = slotOffset(slot);
+        if ((int) INT_HANDLE.getAcquire(segment, offset + OFFSET_ISSUER) == 0) {
+            return toCertificateStatus(defaultStatus, 0, NO_REASON);
+        }
+        while (true) {
+            final int version = (int) INT_HANDLE.getAcquire(segment, offset + OFFSET_VERSION);
+            if ((version & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            final byte status = segment.get(offset + OFFSET_STATUS);
+            final long revocationTime = segment.getLong(offset + OFFSET_REVOCATION_TIME);
+            final byte reason = segment.get(offset + OFFSET_REASON);
+            VarHandle.acquireFence();
+            if ((int) INT_HANDLE.get(segment, offset + OFFSET_VERSION) == version) {
+                return toCertificateStatus(STATUS_VALUES[status], revocationTime, reason);
+            }
+        }
+    }
+
+    private synchronized void put(final int issuerIndex, final byte[] serial, final OcspCertStatus status, final long revocationTime, final byte reason) {
+        if (serial.length > MAX_SERIAL_NUMBER_LENGTH) {
+            throw new IllegalArgumentException("serial number longer than " + MAX_SERIAL_NUMBER_LENGTH + " bytes");
+        }
+        final long slot = findSlot(issuerIndex, serial);
+        final ByteBuffer segment = segments[(int) (slot >>> segmentSlotsShift)];
+        final int offset = slotOffset(slot);
+        if ((int) INT_HANDLE.get(segment, offset + OFFSET_ISSUER) == 0) {
+            if (size >= maximumSize) {
+                throw new IllegalStateException("OCSP status store is full, maximum size: " + maximumSize);
+            }
+            segment.put(offset + OFFSET_SERIAL_LENGTH, (byte) serial.length);
+            segment.put(offset + OFFSET_SERIAL, serial);
+            writeStatus(segment, offset, status, revocationTime, reason);
+            INT_HANDLE.setRelease(segment, offset + OFFSET_ISSUER, issuerIndex + 1);
+            size++;
+        } else {
+            final int version = (int) INT_HANDLE.get(segment, offset + OFFSET_VERSION);
+            INT_HANDLE.setOpaque(segment, offset + OFFSET_VERSION, version + 1);
+            VarHandle.storeStoreFence();
+            writeStatus(segment, offset, status, revocationTime, reason);
+            INT_HANDLE.setRelease(segment, offset + OFFSET_VERSION, version + 2);
+        }
+    }
+
+    private static void writeStatus(final ByteBuffer segment, final int offset, final OcspCertStatus status, final long revocationTime, final byte reason) {
+        segment.putLong(offset + OFFSET_REVOCATION_TIME, revocationTime);
+        segment.put(offset + OFFSET_STATUS, (byte) status.ordinal());
+        segment.put(offset + OFFSET_REASON, reason);
+    }
+
+    /**
+     * Find the slot of the given certificate or the free slot to insert it (linear probing).
+     */
+    private long findSlot(final int issuerIndex, final byte[] serial) {
+        long slot = hash(issuerIndex, serial) & slotMask;
+        while (true) {
+            final ByteBuffer segment = segments[(int) (slot >>> segmentSlotsShift)];
+            final int offset = slotOffset(slot);
+            final int slotIssuer = (int) INT_HANDLE.getAcquire(segment, offset + OFFSET_ISSUER);
+            if (slotIssuer == 0 || slotIssuer == issuerIndex + 1 && serialEquals(segment, offset, serial)) {
+                return slot;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+    }
+
+    private int slotOffset(final long slot) {
+        return (int) (slot & ((1L << segmentSlotsShift) - 1)) * SLOT_SIZE;
+    }
+
+    private static boolean serialEquals(final ByteBuffer segment, final int offset, final byte[] serial) {
+        if (segment.get(offset + OFFSET_SERIAL_LENGTH) != serial.length) {
+            return false;
+        }
+        for (int i = 0; i < serial.length; i++) {
+            if (segment.get(offset + OFFSET_SERIAL + i) != serial[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long hash(final int issuerIndex, final byte[] serial) {
+        long h = issuerIndex * 0x9E3779B97F4A7C15L;
+        for (final byte b : serial) {
+            h = (h ^ b) * 0x100000001B3L;
+        }
+        // murmur3 finalizer
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    private int getIssuerIndex(final X509Certificate x509IssuerCert) throws GemPkiException {
+        final CertificateID template = OcspRequestGenerator.generateCertificateId(x509IssuerCert, BigInteger.ZERO);
+        return issuerIndexes.computeIfAbsent(issuerKey(template.getIssuerNameHash(), template.getIssuerKeyHash()), key -> nextIssuerIndex.getAndIncrement());
+    }
+
+    private static ByteBuffer issuerKey(final byte[] issuerNameHash, final byte[] issuerKeyHash) {
+        return ByteBuffer.allocate(issuerNameHash.length + issuerKeyHash.length).put(issuerNameHash).put(issuerKeyHash).flip();
+    }
+
+    private static CertificateStatus toCertificateStatus(final OcspCertStatus status, final long revocationTime, final byte reason) {
+        switch (status) {
+            case GOOD:
+                return CertificateStatus.GOOD;
+            case REVOKED:
+                final ASN1GeneralizedTime time = new ASN1GeneralizedTime(new Date(revocationTime));
+                return new RevokedStatus(new RevokedInfo(time, reason != NO_REASON ? CRLReason.lookup(reason) : null));
+            default:
+                return new UnknownStatus();
+        }
+    }
+}
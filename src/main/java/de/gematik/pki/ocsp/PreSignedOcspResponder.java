@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.gematik.pki.ocsp;
+
+import de.gematik.pki.error.ErrorCode;
+import de.gematik.pki.exception.GemPkiException;
+import de.gematik.pki.utils.P12Container;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+
+/**
+ * OCSP responder answering from pre-signed responses (pre-production, see RFC 6960 section 2.5 and RFC 5019). Responses for registered certificates are
+ * signed in advance and re-signed in background batches before their validity ends, so a request costs a lookup of the encoded response. Requests with a
+ * nonce, for several certificates or for certificates without pre-signed response are signed on demand.
+ */
+@Slf4j
+public class PreSignedOcspResponder implements AutoCloseable {
+
+    public static final int DEFAULT_VALIDITY_SECONDS = 3600;
+    public static final int DEFAULT_REFRESH_BEFORE_SECONDS = 600;
+    private static final long SIGNING_THREAD_KEEP_ALIVE_SECONDS = 60;
+
+    private final OcspResponseGenerator ocspResponseGenerator;
+    @Getter
+    private final int validitySeconds;
+    @Getter
+    private final int refreshBeforeSeconds;
+    @Getter
+    private final int signingThreads;
+    private final ConcurrentHashMap<OcspCertId, PreSignedResponse> responses = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor signingExecutor;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Constructor, use {@link #builder()}
+     *
+     * @param signer               certificate and private key to sign responses with
+     * @param statusStore          store to lookup the certificate status, default {@link OcspStatusStore#ALL_GOOD}
+     * @param validitySeconds      time from thisUpdate to nextUpdate of the responses, default {@link #DEFAULT_VALIDITY_SECONDS}
+     * @param refreshBeforeSeconds time before nextUpdate to re-sign a response, default {@link #DEFAULT_REFRESH_BEFORE_SECONDS}
+     * @param signingThreads       number of threads of the responder that re-sign responses, default number of available processors
+     */
+    @Builder
+    private PreSignedOcspResponder(@NonNull final P12Container signer, final OcspStatusStore statusStore, final Integer validitySeconds,
+        final Integer refreshBeforeSeconds, final Integer signingThreads) {
+        this.validitySeconds = validitySeconds != null ? validitySeconds : DEFAULT_VALIDITY_SECONDS;
+        this.refreshBeforeSeconds = refreshBeforeSeconds != null ? refreshBeforeSeconds : DEFAULT_REFRESH_BEFORE_SECONDS;
+        if (this.refreshBeforeSeconds >= this.validitySeconds) {
+            throw new IllegalArgumentException("refreshBeforeSeconds must be less than validitySeconds");
+        }
+        this.signingThreads = signingThreads != null ? Math.max(1, signingThreads) : Runtime.getRuntime().availableProcessors();
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.signingExecutor = new ThreadPoolExecutor(this.signingThreads, this.signingThreads, SIGNING_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), runnable -> {
+            final Thread thread = new Thread(runnable, "ocsp-re-sign-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.signingExecutor.allowCoreThreadTimeOut(true);
+        this.ocspResponseGenerator = OcspResponseGenerator.builder()
+            .signer(signer)
+            .statusStore(statusStore)
+            .validitySeconds(this.validitySeconds)
+            .build();
+    }
+
+    /**
+     * Sign responses for the certificates with the given serial numbers of an issuer in advance.
+     *
+     * @param x509IssuerCert issuer of the certificates
+     * @param serialNumbers  serial numbers of the certificates
+     * @throws GemPkiException if a response cannot be generated
+     */
+    public void preSign(@NonNull final X509Certificate x509IssuerCert, @NonNull final Collection<BigInteger> serialNumbers) throws GemPkiException {
+        final List<CertificateID> certificateIds = new ArrayList<>(serialNumbers.size());
+        for (final BigInteger serialNumber : serialNumbers) {
+            certificateIds.add(OcspRequestGenerator.generateCertificateId(x509IssuerCert, serialNumber));
+        }
+        preSign(certificateIds);
+    }
+
+    /**
+     * Sign responses for the given certificates in advance.
+     *
+     * @param certificateIds ids of the certificates
+     * @throws GemPkiException if a response cannot be generated
+     */
+    public void preSign(@NonNull final Collection<CertificateID> certificateIds) throws GemPkiException {
+        for (final CertificateID certificateId : certificateIds) {
+            final PreSignedResponse preSignedResponse = sign(certificateId);
+            responses.put(OcspCertId.of(certificateId), preSignedResponse);
+        }
+        log.info("{} OCSP Responses vorsigniert", certificateIds.size());
+    }
+
+    /**
+     * Create encoded OCSP response from encoded OCSP request.
+     *
+     * @param encodedOcspReq encoded OCSP request
+     * @return encoded OCSP response, shared and not to be modified
+     * @throws GemPkiException if the request cannot be parsed or the response cannot be generated
+     */
+    public byte[] respond(@NonNull final byte[] encodedOcspReq) throws GemPkiException {
+        final OCSPReq ocspReq;
+        try {
+            ocspReq = new OCSPReq(encodedOcspReq);
+        } catch (final IOException e) {
+            throw new GemPkiException(ErrorCode.UNKNOWN, "Ocsp request parsing failed.", e);
+        }
+        final PreSignedResponse preSignedResponse = getPreSignedResponse(ocspReq);
+        if (preSignedResponse != null) {
+            return preSignedResponse.encoded;
+        }
+        try {
+            return ocspResponseGenerator.gen(ocspReq).getEncoded();
+        } catch (final IOException e) {
+            throw new GemPkiException(ErrorCode.UNKNOWN, "Ocsp response generation failed.", e);
+        }
+    }
+
+    /**
+     * Create OCSP response from given OCSP request.
+     *
+     * @param ocspReq OCSP request
+     * @return OCSP response
+     * @throws GemPkiException if the response cannot be generated
+     */
+    public OCSPResp gen(@NonNull final OCSPReq ocspReq) throws GemPkiException {
+        final PreSignedResponse preSignedResponse = getPreSignedResponse(ocspReq);
+        if (preSignedResponse != null) {
+            try {
+                return new OCSPResp(preSignedResponse.encoded);
+            } catch (final IOException e) {
+                throw new GemPkiException(ErrorCode.UNKNOWN, "Ocsp response parsing failed.", e);
+            }
+        }
+        return ocspResponseGenerator.gen(ocspReq);
+    }
+
+    private PreSignedResponse getPreSignedResponse(final OCSPReq ocspReq) {
+        if (ocspReq.getRequestList().length != 1 || ocspReq.getExtension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce) != null) {
+            return null;
+        }
+        final PreSignedResponse preSignedResponse = responses.get(OcspCertId.of(ocspReq.getRequestList()[0].getCertID()));
+        if (preSignedResponse == null || preSignedResponse.nextUpdateMillis <= System.currentTimeMillis()) {
+            return null;
+        }
+        return preSignedResponse;
+    }
+
+    /**
+     * Start re-signing responses in the background.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "ocsp-pre-sign");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final long periodSeconds = Math.max(1, refreshBeforeSeconds / 4);
+        scheduler.scheduleWithFixedDelay(this::refresh, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Re-sign all responses whose nextUpdate is less than refreshBeforeSeconds away. The responses are split among the signingThreads threads of the
+     * responder, the method waits until all are signed.
+     *
+     * @return number of re-signed responses
+     */
+    public int refresh() {
+        return refresh(System.currentTimeMillis());
+    }
+
+    int refresh(final long nowMillis) {
+        final long refreshAfterMillis = nowMillis + refreshBeforeSeconds * 1000L;
+        final List<Map.Entry<OcspCertId, PreSignedResponse>> due = responses.entrySet().stream()
+            .filter(entry -> entry.getValue().nextUpdateMillis <= refreshAfterMillis)
+            .collect(Collectors.toList());
+        final AtomicInteger count = new AtomicInteger();
+        final int partitions = Math.min(signingThreads, due.size());
+        final List<Future<?>> signings = new ArrayList<>(partitions);
+        for (int partition = 0; partition < partitions; partition++) {
+            final int first = partition;
+            signings.add(signingExecutor.submit(() -> {
+                for (int i = first; i < due.size() && !Thread.currentThread().isInterrupted(); i += partitions) {
+                    reSign(due.get(i), count);
+                }
+            }));
+        }
+        try {
+            for (final Future<?> signing : signings) {
+                signing.get();
+            }
+        } catch (final InterruptedException e) {
+            signings.forEach(signing -> signing.cancel(true));
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException e) {
+            log.warn("Re-sign of OCSP responses failed: {}", e.getCause().getMessage());
+        }
+        if (count.get() > 0) {
+            log.info("{} OCSP Responses neu signiert", count.get());
+        }
+        return count.get();
+    }
+
+    private void reSign(final Map.Entry<OcspCertId, PreSignedResponse> entry, final AtomicInteger count) {
+        try {
+            if (responses.replace(entry.getKey(), entry.getValue(), sign(entry.getValue().certificateId))) {
+                count.incrementAndGet();
+            }
+        } catch (final GemPkiException e) {
+            log.warn("Re-sign of OCSP response for certificate serial number {} failed: {}", entry.getKey().getSerialNumber(), e.getMessage());
+        }
+    }
+
+    /**
+     * Getter for the number of pre-signed responses
+     *
+     * @return number of responses
+     */
+    public int getSize() {
+        return responses.size();
+    }
+
+    /**
+     * Stop re-signing responses in the background and release the signing threads. Responses are still served, {@link #refresh()} must not be called
+     * afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        signingExecutor.shutdownNow();
+    }
+
+    private PreSignedResponse sign(final CertificateID certificateId) throws GemPkiException {
+        final long thisUpdateMillis = System.currentTimeMillis();
+        final OCSPResp ocspResp = ocspResponseGenerator.gen(OcspRequestGenerator.generateSingleOcspRequest(certificateId));
+        try {
+            return new PreSignedResponse(certificateId, ocspResp.getEncoded(), thisUpdateMillis + validitySeconds * 1000L);
+        } catch (final IOException e) {
+            throw new GemPkiException(ErrorCode.UNKNOWN, "Ocsp response generation failed.", e);
+        }
+    }
+
+    private static final class PreSignedResponse {
+
+        private final CertificateID certificateId;
+        private final byte[] encoded;
+        private final long nextUpdateMillis;
+
+        private PreSignedResponse(final CertificateID certificateId, final byte[] encoded, final long nextUpdateMillis) {
+            this.certificateId = certificateId;
+            this.encoded = encoded;
+            this.nextUpdateMillis = nextUpdateMillis;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.gematik.pki.tsl;
+
+import eu.europa.esig.trustedlist.jaxb.tsl.ObjectFactory;
+import eu.europa.esig.trustedlist.jaxb.tsl.TrustStatusListType;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Set;
+import javax.xml.XMLConstants;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.annotation.XmlElementDecl;
+import javax.xml.bind.annotation.XmlSeeAlso;
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Result;
+import javax.xml.transform.Source;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import lombok.NonNull;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+/**
+ * Shared, thread safe codec for TSLs. Holds one {@link JAXBContext} for {@link TrustStatusListType}, creating it costs hundreds of milliseconds, and one
+ * configured DocumentBuilderFactory and TransformerFactory. Unmarshaller, Marshaller, DocumentBuilder and Transformer are not thread safe, every thread gets
+ * its own instances which are reused for all its calls.
+ */
+public final class TslCodec {
+
+    private static volatile TslCodec instance;
+
+    private final JAXBContext jaxbContext;
+    private final DocumentBuilderFactory documentBuilderFactory;
+    private final TransformerFactory transformerFactory;
+    private final XMLInputFactory xmlInputFactory;
+    private final Set<QName> globalElements;
+    private final ThreadLocal<Unmarshaller> unmarshaller;
+    private final ThreadLocal<Marshaller> marshaller;
+    private final ThreadLocal<DocumentBuilder> documentBuilder;
+    private final ThreadLocal<Transformer> transformer;
+
+    private TslCodec() throws JAXBException {
+        jaxbContext = JAXBContext.newInstance(TrustStatusListType.class);
+        documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        documentBuilderFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        documentBuilderFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, ""); // compliant
+        documentBuilderFactory.setNamespaceAware(true); // very important
+        transformerFactory = TransformerFactory.newInstance();
+        transformerFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        transformerFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
+        xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        globalElements = collectGlobalElements(ObjectFactory.class, new HashSet<>(), new HashSet<>());
+        unmarshaller = ThreadLocal.withInitial(() -> create(jaxbContext::createUnmarshaller));
+        marshaller = ThreadLocal.withInitial(() -> create(this::createMarshaller));
+        documentBuilder = ThreadLocal.withInitial(() -> create(this::createDocumentBuilder));
+        transformer = ThreadLocal.withInitial(() -> create(this::createTransformer));
+    }
+
+    /**
+     * Getter for the shared codec, created on first use
+     *
+     * @return the codec
+     * @throws JAXBException if the JAXBContext cannot be created
+     */
+    public static TslCodec getInstance() throws JAXBException {
+        TslCodec codec = instance;
+        if (codec == null) {
+            synchronized (TslCodec.class) {
+                codec = instance;
+                if (codec == null) {
+                    codec = new TslCodec();
+                    instance = codec;
+                }
+            }
+        }
+        return codec;
+    }
+
+    /**
+     * Create an empty DOM document
+     *
+     * @return new document
+     * @throws ParserConfigurationException if no DocumentBuilder can be created
+     */
+    public Document newDocument() throws ParserConfigurationException {
+        return get(documentBuilder, ParserConfigurationException.class).newDocument();
+    }
+
+    /**
+     * Parse XML to a DOM document
+     *
+     * @param in XML input
+     * @return parsed document
+     * @throws ParserConfigurationException if no DocumentBuilder can be created
+     * @throws SAXException                 if the input is no valid XML
+     * @throws IOException                  if the input cannot be read
+     */
+    public Document parse(@NonNull final InputStream in) throws ParserConfigurationException, SAXException, IOException {
+        final DocumentBuilder builder = get(documentBuilder, ParserConfigurationException.class);
+        try {
+            return builder.parse(in);
+        } finally {
+            builder.reset();
+        }
+    }
+
+    /**
+     * Unmarshal a TSL from its DOM node
+     *
+     * @param node node of the TrustServiceStatusList element
+     * @return the TSL
+     * @throws JAXBException if the node is no valid TSL
+     */
+    public TrustStatusListType unmarshal(@NonNull final Node node) throws JAXBException {
+        return get(unmarshaller, JAXBException.class).unmarshal(node, TrustStatusListType.class).getValue();
+    }
+
+    /**
+     * Unmarshal a global element, e.g. AdditionalServiceInformation in an extension, from the current element of a stream reader. Afterwards the reader
+     * points at the event after the end of the element.
+     *
+     * @param reader stream reader positioned at the start of the element
+     * @return the element as {@link javax.xml.bind.JAXBElement}
+     * @throws JAXBException if the element cannot be unmarshalled
+     */
+    public Object unmarshal(@NonNull final XMLStreamReader reader) throws JAXBException {
+        return get(unmarshaller, JAXBException.class).unmarshal(reader);
+    }
+
+    /**
+     * Check if JAXB knows an element as global element. In content of any type (e.g. extensions) JAXB unmarshals these to JAXBElements and all others to
+     * DOM elements.
+     *
+     * @param name qualified name of the element
+     * @return true if the element is a global element of the TSL schema
+     */
+    public boolean isGlobalElement(@NonNull final QName name) {
+        return globalElements.contains(name);
+    }
+
+    /**
+     * Create a stream reader for XML, DTDs and external entities are not supported
+     *
+     * @param in XML input
+     * @return new stream reader, to be closed by the caller
+     * @throws XMLStreamException if the stream reader cannot be created
+     */
+    public XMLStreamReader createXmlStreamReader(@NonNull final InputStream in) throws XMLStreamException {
+        synchronized (xmlInputFactory) {
+            return xmlInputFactory.createXMLStreamReader(in);
+        }
+    }
+
+    /**
+     * Marshal a TSL to a DOM node
+     *
+     * @param tsl  the TSL
+     * @param node node to append the TrustServiceStatusList element to, e.g. an empty document
+     * @throws JAXBException if the TSL cannot be marshalled
+     */
+    public void marshal(@NonNull final TrustStatusListType tsl, @NonNull final Node node) throws JAXBException {
+        get(marshaller, JAXBException.class).marshal(TslHelper.createJaxbElement(tsl), node);
+    }
+
+    /**
+     * Marshal a TSL to a file
+     *
+     * @param tsl  the TSL
+     * @param file file to write
+     * @throws JAXBException if the TSL cannot be marshalled or written
+     */
+    public void marshal(@NonNull final TrustStatusListType tsl, @NonNull final File file) throws JAXBException {
+        get(marshaller, JAXBException.class).marshal(TslHelper.createJaxbElement(tsl), file);
+    }
+
+    /**
+     * Transform XML without stylesheet, e.g. a DOM document to bytes
+     *
+     * @param source XML source
+     * @param result target of the transformation
+     * @throws TransformerException if the transformation fails
+     */
+    public void transform(@NonNull final Source source, @NonNull final Result result) throws TransformerException {
+        final Transformer identityTransformer = get(transformer, TransformerException.class);
+        try {
+            identityTransformer.transform(source, result);
+        } finally {
+            identityTransformer.reset();
+        }
+    }
+
+    private static Set<QName> collectGlobalElements(final Class<?> objectFactory, final Set<Class<?>> visited, final Set<QName> names) {
+        if (!visited.add(objectFactory)) {
+            return names;
+        }
+        for (final Method method : objectFactory.getMethods()) {
+            final XmlElementDecl elementDecl = method.getAnnotation(XmlElementDecl.class);
+            if (elementDecl != null && elementDecl.scope() == XmlElementDecl.GLOBAL.class) {
+                names.add(new QName(elementDecl.namespace(), elementDecl.name()));
+            }
+        }
+        final XmlSeeAlso seeAlso = objectFactory.getAnnotation(XmlSeeAlso.class);
+        if (seeAlso != null) {
+            for (final Class<?> clazz : seeAlso.value()) {
+                if ("ObjectFactory".equals(clazz.getSimpleName())) {
+                    collectGlobalElements(clazz, visited, names);
+                }
+            }
+        }
+        return Set.copyOf(names);
+    }
+
+    private static <T, E extends Exception> T get(final ThreadLocal<T> threadLocal, final Class<E> exceptionType) throws E {
+        try {
+            return threadLocal.get();
+        } catch (final CreationException e) {
+            threadLocal.remove();
+            if (exceptionType.isInstance(e.getCause())) {
+                throw exceptionType.cast(e.getCause());
+            }
+            throw e;
+        }
+    }
+
+    private Marshaller createMarshaller() throws JAXBException {
+        final Marshaller jaxbMarshaller = jaxbContext.createMarshaller();
+        // remove xml header
+        jaxbMarshaller.setProperty("com.sun.xml.bind.xmlDeclaration", false);
+        // set own xml header (without "standalone")
+        jaxbMarshaller.setProperty("com.sun.xml.bind.xmlHeaders", "<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        // no pretty print
+        jaxbMarshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, false);
+        return jaxbMarshaller;
+    }
+
+    private DocumentBuilder createDocumentBuilder() throws ParserConfigurationException {
+        synchronized (documentBuilderFactory) {
+            return documentBuilderFactory.newDocumentBuilder();
+        }
+    }
+
+    private Transformer createTransformer() throws TransformerConfigurationException {
+        synchronized (transformerFactory) {
+            return transformerFactory.newTransformer();
+        }
+    }
+
+    private static <T> T create(final Factory<T> factory) {
+        try {
+            return factory.create();
+        } catch (final Exception e) {
+            throw new CreationException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Factory<T> {
+
+        T create() throws Exception;
+    }
+
+    /**
+     * Carries a checked exception of a thread local initializer
+     */
+    private static class CreationException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private CreationException(final Exception cause) {
+            super(cause);
+        }
+    }
+}
@@ -16,10 +16,6 @@
 
 package de.gematik.pki.tsl;
 
-import static de.gematik.pki.tsl.TslHelper.createDocBuilder;
-import static de.gematik.pki.tsl.TslHelper.createJaxbElement;
-import static de.gematik.pki.tsl.TslHelper.createMarshaller;
-import static de.gematik.pki.tsl.TslHelper.getTransformerFactory;
 import de.gematik.pki.error.ErrorCode;
 import de.gematik.pki.exception.GemPkiException;
 import eu.europa.esig.trustedlist.jaxb.tsl.TrustStatusListType;
@@ -28,13 +24,9 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Objects;
 import java.util.Optional;
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Unmarshaller;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import lombok.AccessLevel;
@@ -61,9 +53,10 @@ public class TslConverter {
      */
     public static Optional<Document> tslToDoc(@NonNull final TrustStatusListType tsl) throws GemPkiException {
         try {
-            final Document doc = createDocBuilder().newDocument();
+            final TslCodec tslCodec = TslCodec.getInstance();
+            final Document doc = tslCodec.newDocument();
             doc.setXmlStandalone(true);
-            createMarshaller().marshal(createJaxbElement(tsl), doc);
+            tslCodec.marshal(tsl, doc);
             return Optional.of(doc);
         } catch (final JAXBException | ParserConfigurationException e) {
             throw new GemPkiException(ErrorCode.TSL_READ, "Conversion of TrustServiceStatusList to document failed.", e);
@@ -78,11 +71,11 @@ public class TslConverter {
     public static Optional<Document> bytesToDoc(final byte[] tslBytes) throws GemPkiException {
         Objects.requireNonNull(tslBytes, TSL_BYTES_NULL);
         try (final ByteArrayInputStream bais = new ByteArrayInputStream(tslBytes)) {
-            final Document document = createDocBuilder().parse(bais);
+            final Document document = TslCodec.getInstance().parse(bais);
             document.setXmlStandalone(true);
             document.normalize();
             return Optional.of(document);
-        } catch (final ParserConfigurationException | SAXException | IOException e) {
+        } catch (final JAXBException | ParserConfigurationException | SAXException | IOException e) {
             throw new GemPkiException(ErrorCode.TSL_READ, ERROR_READING_TSL, e);
         }
     }
@@ -93,11 +86,10 @@ public class TslConverter {
      * @throws GemPkiException on any conversion error
      */
     public static Optional<byte[]> docToBytes(@NonNull final Document tslDoc) throws GemPkiException {
-        final TransformerFactory tf = getTransformerFactory();
         try (final ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            tf.newTransformer().transform(new DOMSource(tslDoc), new StreamResult(baos));
+            TslCodec.getInstance().transform(new DOMSource(tslDoc), new StreamResult(baos));
             return Optional.of(baos.toByteArray());
-        } catch (final TransformerException | IOException e) {
+        } catch (final JAXBException | TransformerException | IOException e) {
             throw new GemPkiException(ErrorCode.TSL_READ, ERROR_READING_TSL, e);
         }
     }
@@ -109,14 +101,8 @@ public class TslConverter {
      */
     public static Optional<TrustStatusListType> bytesToTsl(final byte[] tslBytes) throws GemPkiException {
         Objects.requireNonNull(tslBytes, TSL_BYTES_NULL);
-        final JAXBContext jaxbContext;
         try {
-            jaxbContext = JAXBContext
-                .newInstance(TrustStatusListType.class);
-            final Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
-            final JAXBElement<TrustStatusListType> jaxbElement =
-                unmarshaller.unmarshal(bytesToDoc(tslBytes).orElseThrow().getFirstChild(), TrustStatusListType.class);
-            return Optional.of(jaxbElement.getValue());
+            return Optional.of(TslCodec.getInstance().unmarshal(bytesToDoc(tslBytes).orElseThrow().getFirstChild()));
         } catch (final JAXBException e) {
             throw new GemPkiException(ErrorCode.TSL_READ, ERROR_READING_TSL, e);
         }
@@ -21,16 +21,8 @@ import eu.europa.esig.trustedlist.jaxb.tsl.OtherTSLPointerType;
 import eu.europa.esig.trustedlist.jaxb.tsl.TrustStatusListType;
 import java.util.Optional;
 import java.util.function.Predicate;
-import javax.xml.XMLConstants;
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
-import javax.xml.bind.JAXBException;
-import javax.xml.bind.Marshaller;
 import javax.xml.namespace.QName;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.TransformerFactory;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 import lombok.NonNull;
@@ -50,33 +42,6 @@ class TslHelper {
             .equals(oid);
     }
 
-    static DocumentBuilder createDocBuilder() throws ParserConfigurationException {
-        final DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-        dbf.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
-        dbf.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, ""); // compliant
-        dbf.setNamespaceAware(true); // very important
-        return dbf.newDocumentBuilder();
-    }
-
-    static TransformerFactory getTransformerFactory() {
-        final TransformerFactory tf = TransformerFactory.newInstance();
-        tf.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
-        tf.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
-        return tf;
-    }
-
-    static Marshaller createMarshaller() throws JAXBException {
-        final JAXBContext jaxbContext = JAXBContext.newInstance(TrustStatusListType.class);
-        final Marshaller jaxbMarshaller = jaxbContext.createMarshaller();
-        // remove xml header
-        jaxbMarshaller.setProperty("com.sun.xml.bind.xmlDeclaration", false);
-        // set own xml header (without "standalone")
-        jaxbMarshaller.setProperty("com.sun.xml.bind.xmlHeaders", "<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-        // no pretty print
-        jaxbMarshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, false);
-        return jaxbMarshaller;
-    }
-
     static JAXBElement<TrustStatusListType> createJaxbElement(@NonNull final TrustStatusListType trustServiceStatusList) {
         return new JAXBElement<>(
             new QName("http://uri.etsi.org/02231/v2#", "TrustServiceStatusList"),
@@ -0,0 +1,370 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.gematik.pki.tsl;
+
+import de.gematik.pki.error.ErrorCode;
+import de.gematik.pki.exception.GemPkiException;
+import eu.europa.esig.trustedlist.jaxb.tsl.ExtensionType;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import javax.xml.XMLConstants;
+import javax.xml.bind.JAXBException;
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Class to read a TSL in a single streaming pass into a {@link TslTrustModel}. Unlike {@link TslReader} neither a DOM nor a JAXB graph of the whole TSL is
+ * built. The signature of the TSL is not validated.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class TslStreamReader {
+
+    private static final String TSL_NAMESPACE = "http://uri.etsi.org/02231/v2#";
+    private static final String SERVICE_INFORMATION = "ServiceInformation";
+
+    /**
+     * @param tslPath File path to TSL
+     * @return trust model of the TSL
+     * @throws GemPkiException on any read or conversion error
+     */
+    public static TslTrustModel read(@NonNull final Path tslPath) throws GemPkiException {
+        try (final InputStream in = new BufferedInputStream(Files.newInputStream(tslPath))) {
+            return read(in);
+        } catch (final IOException e) {
+            throw new GemPkiException(ErrorCode.TSL_READ, TslConverter.ERROR_READING_TSL, e);
+        }
+    }
+
+    /**
+     * @param tslBytes A TSL as byte array
+     * @return trust model of the TSL
+     * @throws GemPkiException on any conversion error
+     */
+    public static TslTrustModel read(@NonNull final byte[] tslBytes) throws GemPkiException {
+        return read(new ByteArrayInputStream(tslBytes));
+    }
+
+    /**
+     * @param in A TSL as stream, not closed by this method
+     * @return trust model of the TSL
+     * @throws GemPkiException on any conversion error
+     */
+    public static TslTrustModel read(@NonNull final InputStream in) throws GemPkiException {
+        try {
+            final TslCodec tslCodec = TslCodec.getInstance();
+            final XMLStreamReader reader = tslCodec.createXmlStreamReader(in);
+            try {
+                return new Parser(tslCodec, reader, DatatypeFactory.newInstance(), tslCodec.newDocument()).parse();
+            } finally {
+                reader.close();
+            }
+        } catch (final JAXBException | ParserConfigurationException | XMLStreamException | DatatypeConfigurationException
+                       | IllegalArgumentException e) {
+            throw new GemPkiException(ErrorCode.TSL_READ, TslConverter.ERROR_READING_TSL, e);
+        }
+    }
+
+    /**
+     * State of one streaming pass, tracks the path of TSL elements from the root to the current element
+     */
+    private static final class Parser {
+
+        private final TslCodec tslCodec;
+        private final XMLStreamReader reader;
+        private final DatatypeFactory datatypeFactory;
+        private final Document extensionDocument;
+        private final Deque<String> path = new ArrayDeque<>();
+        private final List<TslTrustService> trustServices = new ArrayList<>();
+
+        private boolean rootFound;
+        private String id;
+        private int sequenceNumber;
+        private ZonedDateTime issueDate;
+        private ZonedDateTime nextUpdate;
+        private String tspName;
+        private boolean inService;
+        private String serviceTypeIdentifier;
+        private String serviceStatus;
+        private ZonedDateTime statusStartingTime;
+        private String serviceName;
+        private List<String> serviceSupplyPoints;
+        private List<ExtensionType> extensions;
+        private List<byte[]> caCertificates;
+
+        private Parser(final TslCodec tslCodec, final XMLStreamReader reader, final DatatypeFactory datatypeFactory, final Document extensionDocument) {
+            this.tslCodec = tslCodec;
+            this.reader = reader;
+            this.datatypeFactory = datatypeFactory;
+            this.extensionDocument = extensionDocument;
+        }
+
+        private TslTrustModel parse() throws XMLStreamException, JAXBException {
+            int event = reader.getEventType();
+            while (event != XMLStreamConstants.END_DOCUMENT) {
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    path.push(TSL_NAMESPACE.equals(reader.getNamespaceURI()) ? reader.getLocalName() : "");
+                    if (startElement()) {
+                        // reader already points at the event after the element
+                        event = reader.getEventType();
+                        continue;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    endElement();
+                    path.pop();
+                }
+                event = reader.next();
+            }
+            if (!rootFound) {
+                throw new XMLStreamException("Kein TrustServiceStatusList Element gefunden");
+            }
+            return TslTrustModel.builder()
+                .id(id)
+                .sequenceNumber(sequenceNumber)
+                .issueDate(issueDate)
+                .nextUpdate(nextUpdate)
+                .trustServices(List.copyOf(trustServices))
+                .build();
+        }
+
+        /**
+         * Handle the start of an element. Text only elements are read up to their end element.
+         *
+         * @return true if the reader was moved behind the end of the element
+         */
+        private boolean startElement() throws XMLStreamException, JAXBException {
+            final String name = path.peek();
+            switch (name) {
+                case "TrustServiceStatusList":
+                    if (path.size() == 1) {
+                        rootFound = true;
+                        id = reader.getAttributeValue(null, "Id");
+                    }
+                    return false;
+                case "TSLSequenceNumber":
+                    if (isChildOf("SchemeInformation")) {
+                        sequenceNumber = Integer.parseInt(readText());
+                    }
+                    return false;
+                case "ListIssueDateTime":
+                    if (isChildOf("SchemeInformation")) {
+                        issueDate = readDateTime();
+                    }
+                    return false;
+                case "dateTime":
+                    if (isChildOf("NextUpdate")) {
+                        nextUpdate = readDateTime();
+                    }
+                    return false;
+                case "Name":
+                    readName();
+                    return false;
+                case "TSPService":
+                    inService = true;
+                    serviceTypeIdentifier = null;
+                    serviceStatus = null;
+                    statusStartingTime = null;
+                    serviceName = null;
+                    serviceSupplyPoints = new ArrayList<>();
+                    caCertificates = new ArrayList<>();
+                    extensions = null;
+                    return false;
+                default:
+                    return inService && readServiceInformation(name);
+            }
+        }
+
+        private boolean readServiceInformation(final String name) throws XMLStreamException, JAXBException {
+            switch (name) {
+                case "ServiceTypeIdentifier":
+                    if (isChildOf(SERVICE_INFORMATION)) {
+                        serviceTypeIdentifier = readText();
+                    }
+                    return false;
+                case "ServiceStatus":
+                    if (isChildOf(SERVICE_INFORMATION)) {
+                        serviceStatus = readText();
+                    }
+                    return false;
+                case "StatusStartingTime":
+                    if (isChildOf(SERVICE_INFORMATION)) {
+                        statusStartingTime = readDateTime();
+                    }
+                    return false;
+                case "X509Certificate":
+                    if (isChildOf("DigitalId", "ServiceDigitalIdentity", SERVICE_INFORMATION)) {
+                        caCertificates.add(Base64.getMimeDecoder().decode(readText()));
+                    }
+                    return false;
+                case "ServiceSupplyPoint":
+                    if (isChildOf("ServiceSupplyPoints", SERVICE_INFORMATION)) {
+                        serviceSupplyPoints.add(readText().trim());
+                    }
+                    return false;
+                case "ServiceInformationExtensions":
+                    if (isChildOf(SERVICE_INFORMATION)) {
+                        extensions = new ArrayList<>();
+                    }
+                    return false;
+                case "Extension":
+                    if (extensions != null && isChildOf("ServiceInformationExtensions", SERVICE_INFORMATION)) {
+                        extensions.add(readExtension());
+                        path.pop();
+                        return true;
+                    }
+                    return false;
+                default:
+                    return false;
+            }
+        }
+
+        /**
+         * Read an extension like JAXB does: mixed text as strings, global elements of the TSL schema as JAXBElements and other elements as DOM elements.
+         * Unmarshalling each extension with JAXB would cost more than reading the whole TSL. Afterwards the reader points at the event after the end of the
+         * extension.
+         */
+        private ExtensionType readExtension() throws XMLStreamException, JAXBException {
+            final ExtensionType extension = new ExtensionType();
+            final String critical = reader.getAttributeValue(null, "Critical");
+            extension.setCritical("true".equals(critical) || "1".equals(critical));
+            int event = reader.next();
+            while (event != XMLStreamConstants.END_ELEMENT) {
+                if (event == XMLStreamConstants.START_ELEMENT && tslCodec.isGlobalElement(reader.getName())) {
+                    extension.getContent().add(tslCodec.unmarshal(reader));
+                    // reader already points at the event after the element
+                    event = reader.getEventType();
+                    continue;
+                }
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    extension.getContent().add(readElement());
+                } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                    extension.getContent().add(reader.getText());
+                }
+                event = reader.next();
+            }
+            reader.next();
+            return extension;
+        }
+
+        /**
+         * Copy the current element into a DOM element, afterwards the reader points at its end element
+         */
+        private Element readElement() throws XMLStreamException {
+            final Element element = extensionDocument.createElementNS(reader.getNamespaceURI(), qualifiedName(reader.getPrefix(), reader.getLocalName()));
+            for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                final String prefix = reader.getNamespacePrefix(i);
+                element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+                    prefix == null || prefix.isEmpty() ? XMLConstants.XMLNS_ATTRIBUTE : qualifiedName(XMLConstants.XMLNS_ATTRIBUTE, prefix),
+                    reader.getNamespaceURI(i));
+            }
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                element.setAttributeNS(reader.getAttributeNamespace(i), qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)),
+                    reader.getAttributeValue(i));
+            }
+            int event = reader.next();
+            while (event != XMLStreamConstants.END_ELEMENT) {
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    element.appendChild(readElement());
+                } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                    element.appendChild(extensionDocument.createTextNode(reader.getText()));
+                }
+                event = reader.next();
+            }
+            return element;
+        }
+
+        private static String qualifiedName(final String prefix, final String localName) {
+            return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+        }
+
+        private void readName() throws XMLStreamException {
+            if (isChildOf("TSPName", "TSPInformation") && tspName == null) {
+                tspName = readText();
+            } else if (inService && isChildOf("ServiceName", SERVICE_INFORMATION) && serviceName == null) {
+                serviceName = readText();
+            }
+        }
+
+        private void endElement() {
+            switch (path.peek()) {
+                case "TrustServiceProvider":
+                    tspName = null;
+                    return;
+                case "TSPService":
+                    trustServices.add(TslTrustService.builder()
+                        .tspName(tspName)
+                        .serviceName(serviceName)
+                        .serviceTypeIdentifier(serviceTypeIdentifier)
+                        .serviceStatus(serviceStatus)
+                        .statusStartingTime(statusStartingTime)
+                        .serviceSupplyPoints(List.copyOf(serviceSupplyPoints))
+                        .extensions(extensions == null ? null : List.copyOf(extensions))
+                        .caCertificates(List.copyOf(caCertificates))
+                        .build());
+                    inService = false;
+                    return;
+                default:
+            }
+        }
+
+        /**
+         * Check the ancestors of the current element, starting with its parent
+         */
+        private boolean isChildOf(final String... ancestors) {
+            final Iterator<String> it = path.iterator();
+            it.next();
+            for (final String ancestor : ancestors) {
+                if (!it.hasNext() || !ancestor.equals(it.next())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Read the text of the current element, afterwards the reader points at its end element which is not handled anymore
+         */
+        private String readText() throws XMLStreamException {
+            final String text = reader.getElementText();
+            path.pop();
+            return text;
+        }
+
+        private ZonedDateTime readDateTime() throws XMLStreamException {
+            return datatypeFactory.newXMLGregorianCalendar(readText().trim()).toGregorianCalendar().toZonedDateTime();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.gematik.pki.tsl;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Compact trust model of a TSL: scheme information and its {@link TslTrustService}s, without signature, addresses and other information not needed to
+ * verify certificates.
+ */
+@Builder
+@Getter
+public class TslTrustModel {
+
+    private final String id;
+    private final int sequenceNumber;
+    private final ZonedDateTime issueDate;
+    private final ZonedDateTime nextUpdate;
+    @NonNull
+    private final List<TslTrustService> trustServices;
+
+    /**
+     * Get trust services to given service type identifiers.
+     *
+     * @param stiFilterList list with ServiceTypeIdentifiers to filter on
+     * @return list with {@link TslTrustService}
+     */
+    public List<TslTrustService> getFilteredTrustServices(@NonNull final List<String> stiFilterList) {
+        return trustServices.stream()
+            .filter(trustService -> stiFilterList.contains(trustService.getServiceTypeIdentifier()))
+            .collect(Collectors.toList());
+    }
+}
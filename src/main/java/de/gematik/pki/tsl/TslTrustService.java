@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.gematik.pki.tsl;
+
+import eu.europa.esig.trustedlist.jaxb.tsl.ExtensionType;
+import java.time.ZonedDateTime;
+import java.util.List;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Compact view of a TSPService of a TSL, containing only the information needed to verify certificates. Optional elements missing in the TSL are null.
+ */
+@Builder
+@Getter
+public class TslTrustService {
+
+    private final String tspName;
+    private final String serviceName;
+    private final String serviceTypeIdentifier;
+    private final String serviceStatus;
+    private final ZonedDateTime statusStartingTime;
+    @NonNull
+    private final List<String> serviceSupplyPoints;
+    private final List<ExtensionType> extensions;
+    @NonNull
+    private final List<byte[]> caCertificates;
+}
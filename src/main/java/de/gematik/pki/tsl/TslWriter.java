@@ -22,7 +22,6 @@ import eu.europa.esig.trustedlist.jaxb.tsl.TrustStatusListType;
 import java.nio.file.Path;
 import javax.xml.bind.JAXBException;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import lombok.AccessLevel;
@@ -40,17 +39,16 @@ public class TslWriter {
 
     public static void write(@NonNull final TrustStatusListType tsl, @NonNull final Path tslFilePath) throws GemPkiException {
         try {
-            TslHelper.createMarshaller().marshal(TslHelper.createJaxbElement(tsl), tslFilePath.toFile());
+            TslCodec.getInstance().marshal(tsl, tslFilePath.toFile());
         } catch (final JAXBException e) {
             throw new GemPkiException(ErrorCode.UNKNOWN, STATUS_LIST_TO_FILE_FAILED, e);
         }
     }
 
     public static void write(@NonNull final Document tsl, @NonNull final Path filePath) throws GemPkiException {
-        final TransformerFactory tf = TslHelper.getTransformerFactory();
         try {
-            tf.newTransformer().transform(new DOMSource(tsl.getDocumentElement()), new StreamResult(filePath.toFile()));
-        } catch (final TransformerException e) {
+            TslCodec.getInstance().transform(new DOMSource(tsl.getDocumentElement()), new StreamResult(filePath.toFile()));
+        } catch (final JAXBException | TransformerException e) {
             throw new GemPkiException(ErrorCode.UNKNOWN, STATUS_LIST_TO_FILE_FAILED, e);
         }
     }
@@ -0,0 +1,326 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.gematik.pki.tsl;
+
+import de.gematik.pki.error.ErrorCode;
+import de.gematik.pki.exception.GemPkiException;
+import eu.europa.esig.trustedlist.jaxb.tsl.AttributedNonEmptyURIType;
+import eu.europa.esig.trustedlist.jaxb.tsl.DigitalIdentityType;
+import eu.europa.esig.trustedlist.jaxb.tsl.ExtensionType;
+import eu.europa.esig.trustedlist.jaxb.tsl.ServiceSupplyPointsType;
+import eu.europa.esig.trustedlist.jaxb.tsl.TSPServiceInformationType;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import javax.security.auth.x500.X500Principal;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.SubjectKeyIdentifier;
+
+/**
+ * Index of the CA certificates of a list of {@link TspService}s by subject principal and SKI (subject key identifier), built once per list. Every CA
+ * certificate is parsed once and mapped to a prebuilt {@link TspServiceSubset}, the issuer of an end-entity certificate is found by its issuer principal and
+ * AKI (authority key identifier).
+ * <p>
+ * The results are the same as of a scan through the TSP services in TSL order: the first matching CA certificate wins, TSP services with missing information
+ * are skipped and a CA certificate which cannot be parsed fails all lookups not answered by a CA certificate before it.
+ */
+@Slf4j
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+final class TspIssuerIndex {
+
+    private final Map<X500Principal, List<IssuerEntry>> entriesByPrincipal;
+    private final Map<IssuerKey, IssuerEntry> entriesByKey;
+    private final CertificateException brokenCertificateException;
+    @Getter
+    private final List<X509Certificate> x509IssuerCerts;
+
+    /**
+     * Build the index of the CA certificates of the given TSP services
+     *
+     * @param tspServices TSP services in TSL order
+     * @return the index
+     */
+    static TspIssuerIndex build(@NonNull final List<TspService> tspServices) {
+        final Map<X500Principal, List<IssuerEntry>> entriesByPrincipal = new HashMap<>();
+        final Map<IssuerKey, IssuerEntry> entriesByKey = new HashMap<>();
+        final List<X509Certificate> x509IssuerCerts = new ArrayList<>();
+        final CertificateFactory certFactory;
+        try {
+            certFactory = CertificateFactory.getInstance("X.509");
+        } catch (final CertificateException e) {
+            return new TspIssuerIndex(Map.of(), Map.of(), e, List.of());
+        }
+        for (int serviceIndex = 0; serviceIndex < tspServices.size(); serviceIndex++) {
+            final TspService tspService = tspServices.get(serviceIndex);
+            final ServiceData serviceData = ServiceData.of(tspService);
+            try {
+                for (final DigitalIdentityType dit : tspService.getTspServiceType().getServiceInformation()
+                    .getServiceDigitalIdentity()
+                    .getDigitalId()) {
+                    final X509Certificate x509IssuerCert = getX509CertificateFromByteArray(certFactory, dit.getX509Certificate());
+                    final IssuerEntry entry = new IssuerEntry(serviceIndex, getSubjectKeyIdentifier(x509IssuerCert),
+                        serviceData.toTspServiceSubset(x509IssuerCert), serviceData.errorCode);
+                    final X500Principal principal = x509IssuerCert.getSubjectX500Principal();
+                    entriesByPrincipal.computeIfAbsent(principal, p -> new ArrayList<>()).add(entry);
+                    if (entry.isUsable() && entry.subjectKeyIdentifier != null) {
+                        entriesByKey.putIfAbsent(new IssuerKey(principal, entry.subjectKeyIdentifier), entry);
+                    }
+                    if (entry.tspServiceSubset != null) {
+                        x509IssuerCerts.add(x509IssuerCert);
+                    }
+                }
+            } catch (final NullPointerException e) {
+                log.debug("skipped {} due to missing tsp information", serviceData.serviceName);
+            } catch (final CertificateException e) {
+                // every lookup not answered before this certificate fails
+                return new TspIssuerIndex(entriesByPrincipal, entriesByKey, e, List.copyOf(x509IssuerCerts));
+            }
+        }
+        return new TspIssuerIndex(entriesByPrincipal, entriesByKey, null, List.copyOf(x509IssuerCerts));
+    }
+
+    /**
+     * Find the TSP service of the issuer of the given end-entity certificate
+     *
+     * @param x509EeCert  end-entity certificate
+     * @param productType product type for error messages
+     * @return information subset of the TspService with the issuer certificate
+     * @throws GemPkiException if the issuer certificate cannot be found or the TSL information of the issuer is invalid
+     */
+    TspServiceSubset getTspServiceSubset(@NonNull final X509Certificate x509EeCert, final String productType) throws GemPkiException {
+        final X500Principal principal = x509EeCert.getIssuerX500Principal();
+        final Optional<ByteBuffer> authorityKeyIdentifier = getAuthorityKeyIdentifier(x509EeCert);
+        if (authorityKeyIdentifier.isPresent()) {
+            final IssuerEntry entry = entriesByKey.get(new IssuerKey(principal, authorityKeyIdentifier.get()));
+            if (entry != null) {
+                if (entry.errorCode != null) {
+                    throw new GemPkiException(productType, entry.errorCode);
+                }
+                return entry.tspServiceSubset;
+            }
+        }
+        if (brokenCertificateException != null) {
+            throw new GemPkiException(productType, ErrorCode.TE_1002, brokenCertificateException);
+        }
+        if (issuerWithOtherKeyFound(entriesByPrincipal.getOrDefault(principal, List.of()), authorityKeyIdentifier.orElse(null))) {
+            throw new GemPkiException(productType, ErrorCode.SE_1023);
+        }
+        throw new GemPkiException(productType, ErrorCode.TE_1027);
+    }
+
+    /**
+     * Check for a CA certificate with the issuer principal but without matching SKI. In a skipped TSP service the certificates after a matching one are not
+     * considered, as in a scan.
+     */
+    private static boolean issuerWithOtherKeyFound(final List<IssuerEntry> entries, final ByteBuffer authorityKeyIdentifier) {
+        int skippedServiceIndex = -1;
+        for (final IssuerEntry entry : entries) {
+            if (entry.serviceIndex == skippedServiceIndex) {
+                continue;
+            }
+            if (authorityKeyIdentifier != null && authorityKeyIdentifier.equals(entry.subjectKeyIdentifier)) {
+                skippedServiceIndex = entry.serviceIndex;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static X509Certificate getX509CertificateFromByteArray(final CertificateFactory certFactory, final byte[] bytes) throws CertificateException {
+        try (final InputStream in = new ByteArrayInputStream(bytes)) {
+            return (X509Certificate) certFactory.generateCertificate(in);
+        } catch (final IOException e) {
+            throw new CertificateException(e);
+        }
+    }
+
+    private static ByteBuffer getSubjectKeyIdentifier(final X509Certificate x509IssuerCert) {
+        final byte[] subjectKeyIdentifier = x509IssuerCert.getExtensionValue(Extension.subjectKeyIdentifier.getId());
+        if (subjectKeyIdentifier == null) {
+            log.debug("Extension SUBJECT_KEY_IDENTIFIER_OID: {} konnte in {} nicht gefunden werden.",
+                Extension.subjectKeyIdentifier.getId(),
+                x509IssuerCert.getSubjectX500Principal());
+            return null;
+        }
+        try {
+            return ByteBuffer.wrap(SubjectKeyIdentifier.getInstance(ASN1OctetString.getInstance(subjectKeyIdentifier).getOctets()).getKeyIdentifier());
+        } catch (final IllegalArgumentException e) {
+            log.debug("SUBJECT_KEY_IDENTIFIER in {} konnte nicht gelesen werden.", x509IssuerCert.getSubjectX500Principal());
+            log.trace(e.toString());
+            return null;
+        }
+    }
+
+    private static Optional<ByteBuffer> getAuthorityKeyIdentifier(final X509Certificate x509EeCert) {
+        final byte[] authorityKeyIdentifier = x509EeCert.getExtensionValue(Extension.authorityKeyIdentifier.getId());
+        if (authorityKeyIdentifier == null) {
+            log.debug("Extension AUTHORITY_KEY_IDENTIFIER_OID: {} konnte in {} nicht gefunden werden.",
+                Extension.authorityKeyIdentifier.getId(),
+                x509EeCert.getSubjectX500Principal());
+            return Optional.empty();
+        }
+        final ASN1Primitive akiSequenceAsOctet;
+        try {
+            akiSequenceAsOctet = ASN1Primitive.fromByteArray(ASN1OctetString.getInstance(authorityKeyIdentifier).getOctets());
+        } catch (final IOException e) {
+            log.debug("Octets des AUTHORITY_KEY_IDENTIFIER konnten in {} nicht gefunden werden.",
+                x509EeCert.getSubjectX500Principal());
+            log.trace(e.toString());
+            return Optional.empty();
+        }
+        return Optional.ofNullable(AuthorityKeyIdentifier.getInstance(akiSequenceAsOctet).getKeyIdentifier()).map(ByteBuffer::wrap);
+    }
+
+    /**
+     * Information of a TSP service shared by all its CA certificates. A service with missing information has neither subset information nor error code.
+     */
+    @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+    private static final class ServiceData {
+
+        private final String serviceName;
+        private final String serviceStatus;
+        private final ZonedDateTime statusStartingTime;
+        private final List<String> serviceSupplyPoints;
+        private final List<ExtensionType> extensions;
+        private final ErrorCode errorCode;
+        private final boolean complete;
+
+        private static ServiceData of(final TspService tspService) {
+            final TSPServiceInformationType serviceInformation = tspService.getTspServiceType().getServiceInformation();
+            final String serviceName = getServiceName(serviceInformation);
+            try {
+                final String serviceStatus = serviceInformation.getServiceStatus();
+                final Optional<List<String>> serviceSupplyPoints = getServiceSupplyPoints(serviceInformation);
+                if (serviceSupplyPoints.isEmpty()) {
+                    return new ServiceData(serviceName, null, null, null, null, ErrorCode.TE_1026, true);
+                }
+                final ZonedDateTime statusStartingTime = serviceInformation.getStatusStartingTime().toGregorianCalendar().toZonedDateTime();
+                final List<ExtensionType> extensions = serviceInformation.getServiceInformationExtensions().getExtension();
+                return new ServiceData(serviceName, serviceStatus, statusStartingTime, serviceSupplyPoints.get(), extensions, null, true);
+            } catch (final NullPointerException e) {
+                log.debug("skipped {} due to missing tsp information", serviceName);
+                return new ServiceData(serviceName, null, null, null, null, null, false);
+            }
+        }
+
+        private static String getServiceName(final TSPServiceInformationType serviceInformation) {
+            try {
+                return serviceInformation.getServiceName().getName().get(0).getValue();
+            } catch (final NullPointerException | IndexOutOfBoundsException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Get OCSP responder URLs. The first one is mandatory, further blank ones are skipped.
+         *
+         * @return ServiceSupplyPoints as strings (URLs) in order of the TSL, empty if the first one is missing
+         */
+        private static Optional<List<String>> getServiceSupplyPoints(final TSPServiceInformationType serviceInformation) {
+            final ServiceSupplyPointsType serviceSupplyPointsType = serviceInformation.getServiceSupplyPoints();
+            if (serviceSupplyPointsType == null || serviceSupplyPointsType.getServiceSupplyPoint().isEmpty()) {
+                return Optional.empty();
+            }
+            final String firstServiceSupplyPoint = serviceSupplyPointsType.getServiceSupplyPoint().get(0).getValue();
+            if (firstServiceSupplyPoint.isBlank()) {
+                return Optional.empty();
+            }
+            log.debug("Der erste ServiceSupplyPoint wurde ermittelt {}", firstServiceSupplyPoint);
+            return Optional.of(serviceSupplyPointsType.getServiceSupplyPoint().stream()
+                .map(AttributedNonEmptyURIType::getValue)
+                .filter(ssp -> !ssp.isBlank())
+                .collect(Collectors.toUnmodifiableList()));
+        }
+
+        private TspServiceSubset toTspServiceSubset(final X509Certificate x509IssuerCert) {
+            if (!complete || errorCode != null) {
+                return null;
+            }
+            return TspServiceSubset.builder()
+                .x509IssuerCert(x509IssuerCert)
+                .serviceStatus(serviceStatus)
+                .statusStartingTime(statusStartingTime)
+                .serviceSupplyPoint(serviceSupplyPoints.get(0))
+                .serviceSupplyPoints(serviceSupplyPoints)
+                .extensions(extensions)
+                .build();
+        }
+    }
+
+    /**
+     * CA certificate of a TSP service with either its prebuilt subset or the error code of its TSP service. Entries of skipped TSP services have neither.
+     */
+    @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+    private static final class IssuerEntry {
+
+        private final int serviceIndex;
+        private final ByteBuffer subjectKeyIdentifier;
+        private final TspServiceSubset tspServiceSubset;
+        private final ErrorCode errorCode;
+
+        private boolean isUsable() {
+            return tspServiceSubset != null || errorCode != null;
+        }
+    }
+
+    /**
+     * Key of the index: subject principal and SKI of a CA certificate
+     */
+    @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+    private static final class IssuerKey {
+
+        private final X500Principal principal;
+        private final ByteBuffer keyIdentifier;
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof IssuerKey)) {
+                return false;
+            }
+            final IssuerKey other = (IssuerKey) o;
+            return principal.equals(other.principal) && keyIdentifier.equals(other.keyIdentifier);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * principal.hashCode() + keyIdentifier.hashCode();
+        }
+    }
+}
@@ -34,5 +34,6 @@ public class TspServiceSubset {
     private final String serviceStatus;
     private final ZonedDateTime statusStartingTime;
     private final String serviceSupplyPoint;
+    private final List<String> serviceSupplyPoints;
     private final List<ExtensionType> extensions;
 }
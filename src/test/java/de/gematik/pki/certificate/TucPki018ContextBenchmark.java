@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.gematik.pki.certificate;
+
+import static de.gematik.pki.utils.BenchmarkRunner.allocatedBytesPerOp;
+import static de.gematik.pki.utils.BenchmarkRunner.score;
+import static org.assertj.core.api.Assertions.assertThat;
+import de.gematik.pki.exception.GemPkiException;
+import de.gematik.pki.tsl.TslInformationProvider;
+import de.gematik.pki.tsl.TslReader;
+import de.gematik.pki.tsl.TspService;
+import de.gematik.pki.tsl.TspServiceSubset;
+import de.gematik.pki.utils.BenchmarkRunner;
+import de.gematik.pki.utils.CertificateProvider;
+import de.gematik.pki.utils.ResourceReader;
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.results.RunResult;
+
+/**
+ * JMH benchmark of the verifier context, run with mvn test -Pbenchmark
+ */
+@Slf4j
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TucPki018ContextBenchmark {
+
+    private static final String FILE_NAME_TSL_DEFAULT = "tsls/valid/TSL_default.xml";
+    private static final String PRODUCT_TYPE_IDP = "IDP";
+    private static final List<CertificateProfile> certificateProfiles = List.of(CertificateProfile.C_HCI_AUT_ECC);
+    private List<TspService> tspServiceList;
+    private X509Certificate validX509EeCert;
+    private TucPki018Verifier reusedVerifier;
+
+    @Setup
+    @SneakyThrows
+    public void setUp() {
+        tspServiceList = new TslInformationProvider(
+            TslReader.getTsl(ResourceReader.getFilePathFromResources(FILE_NAME_TSL_DEFAULT)).orElseThrow())
+            .getTspServices();
+        validX509EeCert = CertificateProvider
+            .getX509Certificate("src/test/resources/certificates/GEM.SMCB-CA10/valid/DrMedGunther.pem");
+        reusedVerifier = buildTucPki18Verifier();
+    }
+
+    private TucPki018Verifier buildTucPki18Verifier() {
+        return TucPki018Verifier.builder()
+            .productType(PRODUCT_TYPE_IDP)
+            .tspServiceList(tspServiceList)
+            .certificateProfiles(certificateProfiles)
+            .withOcspCheck(false)
+            .build();
+    }
+
+    @Benchmark
+    public void verifierPerCheck(final Blackhole blackhole) throws GemPkiException {
+        blackhole.consume(check(buildTucPki18Verifier()));
+    }
+
+    @Benchmark
+    public void reusedVerifierContext(final Blackhole blackhole) throws GemPkiException {
+        blackhole.consume(check(reusedVerifier));
+    }
+
+    private Object check(final TucPki018Verifier verifier) throws GemPkiException {
+        final TspServiceSubset tspServiceSubset = verifier.getContext().getTspServiceSubset(validX509EeCert);
+        return verifier.tucPki018ProfileChecks(validX509EeCert, tspServiceSubset);
+    }
+
+    /**
+     * Compare issuer lookup and profile checks of a verifier built per check with a reused verifier and its context
+     */
+    @Test
+    void compareVerifierPerCheckWithReusedContext() throws Exception {
+        final Collection<RunResult> results = BenchmarkRunner.run(BenchmarkRunner.options(TucPki018ContextBenchmark.class));
+        final double perCheckBytes = allocatedBytesPerOp(results, "verifierPerCheck");
+        final double reusedBytes = allocatedBytesPerOp(results, "reusedVerifierContext");
+        log.info("verifier per check: {} µs/op, {} bytes/op; reused context: {} µs/op, {} bytes/op",
+            score(results, "verifierPerCheck"), perCheckBytes, score(results, "reusedVerifierContext"), reusedBytes);
+        assertThat(reusedBytes).isLessThan(perCheckBytes);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.gematik.pki.certificate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import de.gematik.pki.error.ErrorCode;
+import de.gematik.pki.exception.GemPkiException;
+import de.gematik.pki.ocsp.OcspRespSignatureVerifier;
+import de.gematik.pki.tsl.TslInformationProvider;
+import de.gematik.pki.tsl.TslReader;
+import de.gematik.pki.tsl.TspService;
+import de.gematik.pki.tsl.TspServiceSubset;
+import de.gematik.pki.utils.CertificateProvider;
+import de.gematik.pki.utils.ResourceReader;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class TucPki018ContextTest {
+
+    private static final String FILE_NAME_TSL_DEFAULT = "tsls/valid/TSL_default.xml";
+    private static final String PRODUCT_TYPE_IDP = "IDP";
+    private static final List<CertificateProfile> certificateProfiles = List.of(CertificateProfile.C_HCI_AUT_ECC);
+    private static List<TspService> tspServiceList;
+    private static X509Certificate VALID_X509_EE_CERT;
+
+    @BeforeAll
+    @SneakyThrows
+    static void setUp() {
+        tspServiceList = new TslInformationProvider(
+            TslReader.getTsl(ResourceReader.getFilePathFromResources(FILE_NAME_TSL_DEFAULT)).orElseThrow())
+            .getTspServices();
+        VALID_X509_EE_CERT = CertificateProvider
+            .getX509Certificate("src/test/resources/certificates/GEM.SMCB-CA10/valid/DrMedGunther.pem");
+    }
+
+    private static TucPki018Context buildContext(final OcspRespSignatureVerifier ocspRespSignatureVerifier) {
+        return TucPki018Context.builder()
+            .productType(PRODUCT_TYPE_IDP)
+            .tspServiceList(tspServiceList)
+            .certificateProfiles(certificateProfiles)
+            .withOcspCheck(true)
+            .ocspRespSignatureVerifier(ocspRespSignatureVerifier)
+            .build();
+    }
+
+    private static TucPki018Verifier buildTucPki18Verifier() {
+        return TucPki018Verifier.builder()
+            .productType(PRODUCT_TYPE_IDP)
+            .tspServiceList(tspServiceList)
+            .certificateProfiles(certificateProfiles)
+            .withOcspCheck(false)
+            .build();
+    }
+
+    @Test
+    void verifierBuildsContextOnce() {
+        final TucPki018Verifier verifier = buildTucPki18Verifier();
+        assertThat(verifier.getContext()).isSameAs(verifier.getContext());
+    }
+
+    @Test
+    void verifyCertificateProfileValid() throws GemPkiException {
+        final TucPki018Context context = buildContext(null);
+        final TspServiceSubset tspServiceSubset = context.getTspServiceSubset(VALID_X509_EE_CERT);
+        assertThat(tspServiceSubset).isSameAs(context.getTspServiceSubset(VALID_X509_EE_CERT));
+        assertDoesNotThrow(() -> context.verifyCertificateProfile(VALID_X509_EE_CERT, CertificateProfile.C_HCI_AUT_ECC, tspServiceSubset));
+    }
+
+    @Test
+    void verifyCertificateProfileNotInContext() throws GemPkiException {
+        final TucPki018Context context = buildContext(null);
+        final TspServiceSubset tspServiceSubset = context.getTspServiceSubset(VALID_X509_EE_CERT);
+        assertThatThrownBy(() -> context.verifyCertificateProfile(VALID_X509_EE_CERT, CertificateProfile.C_HP_AUT_ECC, tspServiceSubset))
+            .isInstanceOf(GemPkiException.class)
+            .hasMessageContaining(ErrorCode.SE_1016.name());
+    }
+
+    @Test
+    void suppliedOcspRespSignatureVerifierBuiltOnce() throws GemPkiException {
+        final TucPki018Context context = buildContext(null);
+        assertThat(context.getSuppliedOcspRespSignatureVerifier()).isSameAs(context.getSuppliedOcspRespSignatureVerifier());
+    }
+
+    @Test
+    void suppliedOcspRespSignatureVerifierConfigured() throws GemPkiException {
+        final OcspRespSignatureVerifier ocspRespSignatureVerifier = new OcspRespSignatureVerifier(tspServiceList, PRODUCT_TYPE_IDP);
+        assertThat(buildContext(ocspRespSignatureVerifier).getSuppliedOcspRespSignatureVerifier()).isSameAs(ocspRespSignatureVerifier);
+    }
+
+    @Test
+    void nonNull() {
+        assertThatThrownBy(() -> TucPki018Context.builder().productType(PRODUCT_TYPE_IDP).certificateProfiles(certificateProfiles).build())
+            .isInstanceOf(NullPointerException.class);
+    }
+
+    @Test
+    void reusedVerifierChecksLikeVerifierPerCheck() throws GemPkiException {
+        final TucPki018Verifier reusedVerifier = buildTucPki18Verifier();
+        for (int i = 0; i < 3; i++) {
+            final TucPki018Verifier verifierPerCheck = buildTucPki18Verifier();
+            assertThat(check(reusedVerifier).getProfessionOids()).isEqualTo(check(verifierPerCheck).getProfessionOids());
+            assertThat(reusedVerifier.getContext().getTspServiceSubset(VALID_X509_EE_CERT).getX509IssuerCert())
+                .isEqualTo(verifierPerCheck.getContext().getTspServiceSubset(VALID_X509_EE_CERT).getX509IssuerCert());
+        }
+    }
+
+    private static Admission check(final TucPki018Verifier verifier) throws GemPkiException {
+        final TspServiceSubset tspServiceSubset = verifier.getContext().getTspServiceSubset(VALID_X509_EE_CERT);
+        return verifier.tucPki018ProfileChecks(VALID_X509_EE_CERT, tspServiceSubset);
+    }
+}
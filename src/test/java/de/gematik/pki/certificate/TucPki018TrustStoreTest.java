@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.gematik.pki.certificate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import de.gematik.pki.error.ErrorCode;
+import de.gematik.pki.exception.GemPkiException;
+import de.gematik.pki.ocsp.OcspCertId;
+import de.gematik.pki.ocsp.OcspConstants;
+import de.gematik.pki.ocsp.OcspRequestGenerator;
+import de.gematik.pki.ocsp.OcspRespCache;
+import de.gematik.pki.ocsp.OcspResponseGenerator;
+import de.gematik.pki.tsl.TslInformationProvider;
+import de.gematik.pki.tsl.TslReader;
+import de.gematik.pki.tsl.TspService;
+import de.gematik.pki.tsl.TspServiceSubset;
+import de.gematik.pki.utils.CertificateProvider;
+import de.gematik.pki.utils.P12Container;
+import de.gematik.pki.utils.ResourceReader;
+import java.security.cert.X509Certificate;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import lombok.SneakyThrows;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class TucPki018TrustStoreTest {
+
+    private static final String PRODUCT_TYPE_IDP = "IDP";
+    private static List<TspService> tspServicesDefault;
+    private static List<TspService> tspServicesAltCa;
+    private static X509Certificate VALID_X509_EE_CERT;
+    private static X509Certificate VALID_X509_EE_CERT_ALT_CA;
+    private static X509Certificate OTHER_X509_EE_CERT;
+    private static X509Certificate VALID_X509_ISSUER_CERT;
+    private static final ZonedDateTime PRODUCED_AT = ZonedDateTime.parse("2022-01-01T12:00:00Z");
+
+    @BeforeAll
+    @SneakyThrows
+    static void setUp() {
+        tspServicesDefault = readTspServices("tsls/valid/TSL_default.xml");
+        tspServicesAltCa = readTspServices("tsls/valid/TSL_altCA.xml");
+        VALID_X509_EE_CERT = CertificateProvider
+            .getX509Certificate("src/test/resources/certificates/GEM.SMCB-CA10/valid/DrMedGunther.pem");
+        VALID_X509_EE_CERT_ALT_CA = CertificateProvider
+            .getX509Certificate("src/test/resources/certificates/GEM.SMCB-CA33/DrMedGuntherKZV.pem");
+        OTHER_X509_EE_CERT = CertificateProvider
+            .getX509Certificate("src/test/resources/certificates/GEM.SMCB-CA10/valid/DrMedGunther_invalid-profession-item.pem");
+        VALID_X509_ISSUER_CERT = CertificateProvider
+            .getX509Certificate("src/test/resources/certificates/GEM.SMCB-CA10/GEM.SMCB-CA10_TEST-ONLY.pem");
+    }
+
+    @SneakyThrows
+    private static List<TspService> readTspServices(final String tslFileName) {
+        return new TslInformationProvider(TslReader.getTsl(ResourceReader.getFilePathFromResources(tslFileName)).orElseThrow()).getTspServices();
+    }
+
+    private static TucPki018TrustStore buildTrustStore() throws GemPkiException {
+        return TucPki018TrustStore.builder()
+            .productType(PRODUCT_TYPE_IDP)
+            .tspServiceList(tspServicesDefault)
+            .certificateProfiles(List.of(CertificateProfile.C_HCI_AUT_ECC))
+            .withOcspCheck(false)
+            .build();
+    }
+
+    private static TspServiceSubset getTspServiceSubset(final TucPki018TrustStore trustStore, final X509Certificate x509EeCert) throws GemPkiException {
+        return trustStore.verify(verifier -> verifier.getContext().getTspServiceSubset(x509EeCert));
+    }
+
+    @Test
+    void updatePublishesNewVersion() throws GemPkiException {
+        final TucPki018TrustStore trustStore = buildTrustStore();
+        assertThat(trustStore.getVersion()).isEqualTo(1);
+        assertThatThrownBy(() -> getTspServiceSubset(trustStore, VALID_X509_EE_CERT_ALT_CA))
+            .isInstanceOf(GemPkiException.class)
+            .hasMessageContaining(ErrorCode.TE_1027.name());
+
+        final CompletableFuture<Void> retired = trustStore.update(tspServicesAltCa);
+        assertThat(retired).isDone();
+        assertThat(trustStore.getVersion()).isEqualTo(2);
+        assertThat(getTspServiceSubset(trustStore, VALID_X509_EE_CERT_ALT_CA)).isNotNull();
+    }
+
+    @Test
+    void checkInFlightKeepsVersion() throws GemPkiException {
+        final TucPki018TrustStore trustStore = buildTrustStore();
+        final CompletableFuture<Void> retired = trustStore.verify(verifier -> {
+            final CompletableFuture<Void> retiredDuringCheck = trustStore.update(tspServicesAltCa);
+            assertThat(retiredDuringCheck).isNotDone();
+            assertThatThrownBy(() -> verifier.getContext().getTspServiceSubset(VALID_X509_EE_CERT_ALT_CA))
+                .isInstanceOf(GemPkiException.class)
+                .hasMessageContaining(ErrorCode.TE_1027.name());
+            return retiredDuringCheck;
+        });
+        assertThat(retired).isDone();
+        assertThat(getTspServiceSubset(trustStore, VALID_X509_EE_CERT_ALT_CA)).isNotNull();
+    }
+
+    @Test
+    void failedUpdateKeepsVersion() throws GemPkiException {
+        final TucPki018TrustStore trustStore = buildTrustStore();
+        assertThatThrownBy(() -> trustStore.update(null))
+            .isInstanceOf(NullPointerException.class);
+        assertThat(trustStore.getVersion()).isEqualTo(1);
+        assertThat(getTspServiceSubset(trustStore, VALID_X509_EE_CERT)).isNotNull();
+    }
+
+    @Test
+    @SneakyThrows
+    void checksDuringUpdates() {
+        final TucPki018TrustStore trustStore = buildTrustStore();
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final AtomicBoolean updating = new AtomicBoolean(true);
+        try {
+            final List<Future<Integer>> checks = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                checks.add(executor.submit(() -> {
+                    int count = 0;
+                    do {
+                        assertThat(getTspServiceSubset(trustStore, VALID_X509_EE_CERT)).isNotNull();
+                        count++;
+                    } while (updating.get());
+                    return count;
+                }));
+            }
+            final List<CompletableFuture<Void>> retired = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                retired.add(trustStore.update(i % 2 == 0 ? tspServicesAltCa : tspServicesDefault));
+            }
+            updating.set(false);
+            for (final Future<Integer> check : checks) {
+                assertThat(check.get(10, TimeUnit.SECONDS)).isPositive();
+            }
+            CompletableFuture.allOf(retired.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+            assertThat(trustStore.getVersion()).isEqualTo(11);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void updateWithoutSignatureVerificationKeepsOcspRespCache() throws GemPkiException {
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
+        final TucPki018TrustStore trustStore = buildTrustStore(ocspRespCache, false);
+        ocspRespCache.saveResponse(generateOcspResponse(OcspConstants.getOcspSignerRsa(), VALID_X509_EE_CERT));
+
+        assertThat(trustStore.update(tspServicesAltCa)).isDone();
+        assertThat(ocspRespCache.getSize()).isEqualTo(1);
+    }
+
+    @Test
+    void updateWithSameOcspSignersKeepsOcspRespCache() throws GemPkiException {
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
+        final TucPki018TrustStore trustStore = buildTrustStore(ocspRespCache, true);
+        ocspRespCache.saveResponse(generateOcspResponse(OcspConstants.getOcspSignerRsa(), VALID_X509_EE_CERT));
+
+        assertThat(trustStore.update(tspServicesDefault)).isDone();
+        assertThat(ocspRespCache.getSize()).isEqualTo(1);
+    }
+
+    @Test
+    void updateDeletesResponsesOfUntrustedOcspSigners() throws GemPkiException {
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
+        final TucPki018TrustStore trustStore = buildTrustStore(ocspRespCache, true);
+        ocspRespCache.saveResponse(generateOcspResponse(OcspConstants.getOcspSignerRsa(), VALID_X509_EE_CERT));
+        ocspRespCache.saveResponse(generateOcspResponse(OcspConstants.getOcspSignerEcc(), OTHER_X509_EE_CERT));
+        assertThat(ocspRespCache.getSize()).isEqualTo(2);
+
+        assertThat(trustStore.update(withoutOcspSigner(tspServicesDefault, OcspConstants.getOcspSignerRsa()))).isDone();
+        assertThat(ocspRespCache.getSize()).isEqualTo(1);
+        assertThat(ocspRespCache.getResponse(OcspCertId.of(generateCertificateId(OTHER_X509_EE_CERT)))).isPresent();
+    }
+
+    @Test
+    void responsesOfChecksInFlightOfUntrustedOcspSignersDeletedOnRetirement() throws GemPkiException {
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
+        final TucPki018TrustStore trustStore = buildTrustStore(ocspRespCache, true);
+        final CompletableFuture<Void> retired = trustStore.verify(verifier -> {
+            final CompletableFuture<Void> retiredDuringCheck = trustStore.update(withoutOcspSigner(tspServicesDefault, OcspConstants.getOcspSignerRsa()));
+            ocspRespCache.saveResponse(generateOcspResponse(OcspConstants.getOcspSignerRsa(), VALID_X509_EE_CERT));
+            assertThat(ocspRespCache.getSize()).isEqualTo(1);
+            return retiredDuringCheck;
+        });
+        assertThat(retired).isDone();
+        assertThat(ocspRespCache.getSize()).isZero();
+    }
+
+    private static TucPki018TrustStore buildTrustStore(final OcspRespCache ocspRespCache, final boolean withOcspRespSignatureVerification)
+        throws GemPkiException {
+        return TucPki018TrustStore.builder()
+            .productType(PRODUCT_TYPE_IDP)
+            .tspServiceList(tspServicesDefault)
+            .certificateProfiles(List.of(CertificateProfile.C_HCI_AUT_ECC))
+            .withOcspCheck(false)
+            .ocspRespCache(ocspRespCache)
+            .withOcspRespSignatureVerification(withOcspRespSignatureVerification)
+            .build();
+    }
+
+    @SneakyThrows
+    private static List<TspService> withoutOcspSigner(final List<TspService> tspServices, final P12Container ocspSigner) {
+        final byte[] encodedSigner = ocspSigner.getCertificate().getEncoded();
+        return tspServices.stream()
+            .filter(tspService -> tspService.getTspServiceType().getServiceInformation().getServiceDigitalIdentity().getDigitalId().stream()
+                .noneMatch(digitalId -> Arrays.equals(digitalId.getX509Certificate(), encodedSigner)))
+            .collect(Collectors.toList());
+    }
+
+    @SneakyThrows
+    private static CertificateID generateCertificateId(final X509Certificate x509EeCert) {
+        return OcspRequestGenerator.generateCertificateId(x509EeCert, VALID_X509_ISSUER_CERT);
+    }
+
+    @SneakyThrows
+    private static OCSPResp generateOcspResponse(final P12Container ocspSigner, final X509Certificate x509EeCert) {
+        // producedAt within the validity of the OCSP signer certificates
+        return OcspResponseGenerator.builder()
+            .signer(ocspSigner)
+            .build()
+            .gen(OcspRequestGenerator.generateSingleOcspRequest(x509EeCert, VALID_X509_ISSUER_CERT), PRODUCED_AT);
+    }
+}
@@ -22,11 +22,17 @@ import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import de.gematik.pki.common.OcspResponderMock;
 import de.gematik.pki.error.ErrorCode;
 import de.gematik.pki.exception.GemPkiException;
+import de.gematik.pki.ocsp.OcspConstants;
+import de.gematik.pki.ocsp.OcspPriority;
 import de.gematik.pki.ocsp.OcspRequestGenerator;
 import de.gematik.pki.ocsp.OcspRespCache;
+import de.gematik.pki.ocsp.OcspResponseGenerator;
+import de.gematik.pki.ocsp.OcspTransport;
 import de.gematik.pki.tsl.TslInformationProvider;
 import de.gematik.pki.tsl.TslReader;
+import de.gematik.pki.tsl.TspInformationProvider;
 import de.gematik.pki.tsl.TspService;
+import de.gematik.pki.tsl.TspServiceSubset;
 import de.gematik.pki.utils.CertificateProvider;
 import de.gematik.pki.utils.ResourceReader;
 import de.gematik.pki.utils.VariableSource;
@@ -36,9 +42,13 @@ import java.io.IOException;
 import java.net.URISyntaxException;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.ZonedDateTime;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import lombok.SneakyThrows;
 import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPResp;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -69,7 +79,7 @@ class TucPki018VerifierTest {
     @SneakyThrows
     private static void configureOcspResponderMockForOcspRequest(final X509Certificate x509EeCert) {
         final X509Certificate VALID_X509_ISSUER_CERT = CertificateProvider
-            .getX509Certificate("src/test/resources/certificates/GEM.RCA1_TEST-ONLY.pem");
+            .getX509Certificate("src/test/resources/certificates/GEM.SMCB-CA10/GEM.SMCB-CA10_TEST-ONLY.pem");
         final OCSPReq ocspReq = OcspRequestGenerator.generateSingleOcspRequest(x509EeCert,
             VALID_X509_ISSUER_CERT);
         ocspResponderMock.configureForOcspRequest(ocspReq);
@@ -77,21 +87,27 @@ class TucPki018VerifierTest {
 
     private static TucPki018Verifier buildTucPki18Verifier(final List<CertificateProfile> certificateProfiles)
         throws GemPkiException, IOException {
+        return buildTucPki18Verifier(certificateProfiles, ocspRespCache);
+    }
 
-        final List<TspService> tspServiceList = new TslInformationProvider(
-            TslReader.getTsl(ResourceReader.getFilePathFromResources(FILE_NAME_TSL_DEFAULT)).orElseThrow())
-            .getTspServices();
-
-        overwriteSspUrls(tspServiceList);
-
+    private static TucPki018Verifier buildTucPki18Verifier(final List<CertificateProfile> certificateProfiles, final OcspRespCache ocspRespCache)
+        throws GemPkiException, IOException {
         return TucPki018Verifier.builder()
             .productType(PRODUCT_TYPE_IDP)
-            .tspServiceList(tspServiceList)
+            .tspServiceList(buildTspServiceList())
             .certificateProfiles(certificateProfiles)
             .ocspRespCache(ocspRespCache)
             .build();
     }
 
+    private static List<TspService> buildTspServiceList() throws GemPkiException, IOException {
+        final List<TspService> tspServiceList = new TslInformationProvider(
+            TslReader.getTsl(ResourceReader.getFilePathFromResources(FILE_NAME_TSL_DEFAULT)).orElseThrow())
+            .getTspServices();
+        overwriteSspUrls(tspServiceList);
+        return tspServiceList;
+    }
+
     @SneakyThrows
     private static void overwriteSspUrls(final List<TspService> tspServiceList) {
         final ServiceSupplyPointsType serviceSupplyPointsType = new ServiceSupplyPointsType();
@@ -107,6 +123,150 @@ class TucPki018VerifierTest {
         assertDoesNotThrow(() -> tucPki018Verifier.performTucPki18Checks(VALID_X509_EE_CERT));
     }
 
+    @Test
+    void verifyDoOcspBatchSendsOneRequestPerIssuer() throws GemPkiException, IOException {
+        final X509Certificate otherX509EeCert = CertificateProvider
+            .getX509Certificate("src/test/resources/certificates/GEM.SMCB-CA10/valid/DrMedGunther_invalid-profession-item.pem");
+        final List<X509Certificate> x509EeCerts = List.of(VALID_X509_EE_CERT, otherX509EeCert);
+        final TspInformationProvider tspInformationProvider = new TspInformationProvider(
+            new TslInformationProvider(TslReader.getTsl(ResourceReader.getFilePathFromResources(FILE_NAME_TSL_DEFAULT)).orElseThrow())
+                .getTspServices(), PRODUCT_TYPE_IDP);
+        final List<TspServiceSubset> tspServiceSubsets = List.of(tspInformationProvider.getTspServiceSubset(VALID_X509_EE_CERT),
+            tspInformationProvider.getTspServiceSubset(otherX509EeCert));
+        ocspResponderMock.configureForOcspRequest(
+            OcspRequestGenerator.generateOcspRequest(x509EeCerts, tspServiceSubsets.get(0).getX509IssuerCert()));
+        final TucPki018Verifier verifier = TucPki018Verifier.builder()
+            .productType(PRODUCT_TYPE_IDP)
+            .tspServiceList(List.of())
+            .certificateProfiles(certificateProfiles)
+            .ocspRespCache(new OcspRespCache(30))
+            .build();
+
+        final int requestsBefore = ocspResponderMock.getReceivedRequestCount();
+        final List<TspServiceSubset> subsetsWithMockSsp = List.of(withMockSsp(tspServiceSubsets.get(0)), withMockSsp(tspServiceSubsets.get(1)));
+        assertDoesNotThrow(() -> verifier.doOcsp(x509EeCerts, subsetsWithMockSsp));
+        assertThat(ocspResponderMock.getReceivedRequestCount() - requestsBefore).isEqualTo(1);
+        configureOcspResponderMockForOcspRequest(VALID_X509_EE_CERT);
+    }
+
+    @Test
+    void verifyDoOcspWithSuppliedResponseSendsNoRequest() throws GemPkiException, IOException {
+        final TspServiceSubset tspServiceSubset = new TspInformationProvider(buildTspServiceList(), PRODUCT_TYPE_IDP)
+            .getTspServiceSubset(VALID_X509_EE_CERT);
+        final OCSPResp ocspResp = genOcspResp(VALID_X509_EE_CERT, tspServiceSubset.getX509IssuerCert());
+        final OcspRespCache cache = new OcspRespCache(30);
+        final TucPki018Verifier verifier = buildTucPki18Verifier(certificateProfiles, cache);
+
+        final int requestsBefore = ocspResponderMock.getReceivedRequestCount();
+        assertDoesNotThrow(() -> verifier.doOcsp(VALID_X509_EE_CERT, tspServiceSubset, ocspResp));
+        assertThat(ocspResponderMock.getReceivedRequestCount()).isEqualTo(requestsBefore);
+        assertThat(cache.getSize()).isEqualTo(1);
+    }
+
+    @Test
+    void verifyDoOcspWithSuppliedResponseOfOtherCertificateRequestsStatus() throws GemPkiException, IOException {
+        final TspServiceSubset tspServiceSubset = new TspInformationProvider(buildTspServiceList(), PRODUCT_TYPE_IDP)
+            .getTspServiceSubset(VALID_X509_EE_CERT);
+        final X509Certificate otherX509EeCert = CertificateProvider
+            .getX509Certificate("src/test/resources/certificates/GEM.SMCB-CA10/valid/DrMedGunther_invalid-profession-item.pem");
+        final OCSPResp ocspResp = genOcspResp(otherX509EeCert, tspServiceSubset.getX509IssuerCert());
+        final TucPki018Verifier verifier = buildTucPki18Verifier(certificateProfiles, new OcspRespCache(30));
+
+        final int requestsBefore = ocspResponderMock.getReceivedRequestCount();
+        assertDoesNotThrow(() -> verifier.doOcsp(VALID_X509_EE_CERT, tspServiceSubset, ocspResp));
+        assertThat(ocspResponderMock.getReceivedRequestCount()).isEqualTo(requestsBefore + 1);
+    }
+
+    @Test
+    void verifyDoOcspUsesConfiguredTransport() throws GemPkiException, IOException {
+        final TspServiceSubset tspServiceSubset = new TspInformationProvider(buildTspServiceList(), PRODUCT_TYPE_IDP)
+            .getTspServiceSubset(VALID_X509_EE_CERT);
+        ocspResponderMock.configureForOcspRequest(
+            OcspRequestGenerator.generateSingleOcspRequest(VALID_X509_EE_CERT, tspServiceSubset.getX509IssuerCert()), 2000);
+        try {
+            final TucPki018Verifier verifier = TucPki018Verifier.builder()
+                .productType(PRODUCT_TYPE_IDP)
+                .tspServiceList(List.of())
+                .certificateProfiles(certificateProfiles)
+                .ocspTransport(OcspTransport.builder().requestTimeoutSeconds(1).negativeCacheSeconds(0).build())
+                .build();
+            assertThatThrownBy(() -> verifier.doOcsp(VALID_X509_EE_CERT, withMockSsp(tspServiceSubset)))
+                .isInstanceOf(GemPkiException.class);
+        } finally {
+            configureOcspResponderMockForOcspRequest(VALID_X509_EE_CERT);
+        }
+    }
+
+    @Test
+    void verifyDoOcspUsesConfiguredDeadline() throws GemPkiException, IOException {
+        final TspServiceSubset tspServiceSubset = new TspInformationProvider(buildTspServiceList(), PRODUCT_TYPE_IDP)
+            .getTspServiceSubset(VALID_X509_EE_CERT);
+        ocspResponderMock.configureForOcspRequest(
+            OcspRequestGenerator.generateSingleOcspRequest(VALID_X509_EE_CERT, tspServiceSubset.getX509IssuerCert()), 2000);
+        try {
+            final TucPki018Verifier verifier = TucPki018Verifier.builder()
+                .productType(PRODUCT_TYPE_IDP)
+                .tspServiceList(List.of())
+                .certificateProfiles(certificateProfiles)
+                .ocspTransport(OcspTransport.builder().negativeCacheSeconds(0).build())
+                .ocspPriority(OcspPriority.BULK)
+                .ocspDeadline(Duration.ofMillis(300))
+                .build();
+            final long startNanos = System.nanoTime();
+            assertThatThrownBy(() -> verifier.doOcsp(VALID_X509_EE_CERT, withMockSsp(tspServiceSubset)))
+                .isInstanceOf(GemPkiException.class);
+            assertThat(System.nanoTime() - startNanos).isLessThan(TimeUnit.MILLISECONDS.toNanos(1500));
+        } finally {
+            configureOcspResponderMockForOcspRequest(VALID_X509_EE_CERT);
+        }
+    }
+
+    @Test
+    void verifyDoOcspBatchUsesGivenPriority() throws GemPkiException, IOException {
+        final TspServiceSubset tspServiceSubset = withMockSsp(new TspInformationProvider(buildTspServiceList(), PRODUCT_TYPE_IDP)
+            .getTspServiceSubset(VALID_X509_EE_CERT));
+        final OCSPReq ocspReq = OcspRequestGenerator.generateOcspRequest(List.of(VALID_X509_EE_CERT), tspServiceSubset.getX509IssuerCert());
+        ocspResponderMock.configureForOcspRequest(ocspReq, 1000);
+        try {
+            // one bulk connection per host: a bulk batch waits for the running bulk request, an interactive one does not
+            final OcspTransport ocspTransport = OcspTransport.builder().maxConnectionsPerHost(2).maxBulkConnectionsPerHost(1).negativeCacheSeconds(0).build();
+            final TucPki018Verifier verifier = TucPki018Verifier.builder()
+                .productType(PRODUCT_TYPE_IDP)
+                .tspServiceList(List.of())
+                .certificateProfiles(certificateProfiles)
+                .ocspTransport(ocspTransport)
+                .ocspDeadline(Duration.ofMillis(1600))
+                .build();
+
+            ocspTransport.sendAsync(List.of(ocspResponderMock.getSspUrl()), ocspReq, OcspPriority.BULK, null);
+            assertThatThrownBy(() -> verifier.doOcsp(List.of(VALID_X509_EE_CERT), List.of(tspServiceSubset)))
+                .isInstanceOf(GemPkiException.class);
+
+            ocspTransport.sendAsync(List.of(ocspResponderMock.getSspUrl()), ocspReq, OcspPriority.BULK, null);
+            assertDoesNotThrow(() -> verifier.doOcsp(List.of(VALID_X509_EE_CERT), List.of(tspServiceSubset), OcspPriority.INTERACTIVE));
+        } finally {
+            configureOcspResponderMockForOcspRequest(VALID_X509_EE_CERT);
+        }
+    }
+
+    private static OCSPResp genOcspResp(final X509Certificate x509EeCert, final X509Certificate x509IssuerCert) throws GemPkiException {
+        // producedAt within the validity of the OCSP signer certificate, thisUpdate is now
+        return OcspResponseGenerator.builder()
+            .signer(OcspConstants.getOcspSignerRsa())
+            .build()
+            .gen(OcspRequestGenerator.generateSingleOcspRequest(x509EeCert, x509IssuerCert), ZonedDateTime.parse("2022-01-01T12:00:00Z"));
+    }
+
+    private static TspServiceSubset withMockSsp(final TspServiceSubset tspServiceSubset) {
+        return TspServiceSubset.builder()
+            .x509IssuerCert(tspServiceSubset.getX509IssuerCert())
+            .serviceStatus(tspServiceSubset.getServiceStatus())
+            .statusStartingTime(tspServiceSubset.getStatusStartingTime())
+            .serviceSupplyPoint(ocspResponderMock.getSspUrl())
+            .extensions(tspServiceSubset.getExtensions())
+            .build();
+    }
+
     @Test
     void verifyEgkAutEccCertValid() {
         assertDoesNotThrow(() -> buildTucPki18Verifier(List.of(CertificateProfile.C_CH_AUT_ECC))
@@ -145,8 +305,14 @@ class TucPki018VerifierTest {
     @Test
     void verifyProfessionOidsValid() throws IOException, GemPkiException, CertificateEncodingException, URISyntaxException {
         final X509Certificate cert = CertificateProvider.getX509Certificate("src/test/resources/certificates/GEM.SMCB-CA24-RSA/c-hci-osig_apo.valid.crt");
-        assertThat(buildTucPki18Verifier(List.of(CertificateProfile.C_HCI_OSIG))
-            .performTucPki18Checks(cert).getProfessionOids()).contains(Role.OID_OEFFENTLICHE_APOTHEKE.getProfessionOid());
+        ocspResponderMock.configureForOcspRequest(OcspRequestGenerator.generateSingleOcspRequest(cert,
+            new TspInformationProvider(buildTspServiceList(), PRODUCT_TYPE_IDP).getTspServiceSubset(cert).getX509IssuerCert()));
+        try {
+            assertThat(buildTucPki18Verifier(List.of(CertificateProfile.C_HCI_OSIG))
+                .performTucPki18Checks(cert).getProfessionOids()).contains(Role.OID_OEFFENTLICHE_APOTHEKE.getProfessionOid());
+        } finally {
+            configureOcspResponderMockForOcspRequest(VALID_X509_EE_CERT);
+        }
     }
 
     @Test
@@ -18,6 +18,7 @@ package de.gematik.pki.common;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
 import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
 import com.github.tomakehurst.wiremock.WireMockServer;
@@ -25,7 +26,7 @@ import de.gematik.pki.exception.GemPkiException;
 import de.gematik.pki.ocsp.OcspConstants;
 import de.gematik.pki.ocsp.OcspResponseGenerator;
 import lombok.SneakyThrows;
-import org.apache.http.HttpStatus;
+import org.apache.hc.core5.http.HttpStatus;
 import org.bouncycastle.cert.ocsp.OCSPReq;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 
@@ -50,6 +51,11 @@ public class OcspResponderMock {
     }
 
     public void configureForOcspRequest(final OCSPReq ocspReq)
+        throws GemPkiException {
+        configureForOcspRequest(ocspReq, 0);
+    }
+
+    public void configureForOcspRequest(final OCSPReq ocspReq, final int fixedDelayMilliseconds)
         throws GemPkiException {
         // build OCSP Response depending on request
         final OCSPResp ocspRespToSent = OcspResponseGenerator.builder()
@@ -58,7 +64,11 @@ public class OcspResponderMock {
             .gen(ocspReq);
 
         // configure WireMock with OCSP Response
-        configureWireMockReceiveHttpPost(ocspRespToSent, HttpStatus.SC_OK);
+        configureWireMockReceiveHttpPost(ocspRespToSent, HttpStatus.SC_OK, fixedDelayMilliseconds);
+    }
+
+    public int getReceivedRequestCount() {
+        return wireMockServer.findAll(postRequestedFor(urlEqualTo(sspDir))).size();
     }
 
     @SneakyThrows
@@ -75,10 +85,11 @@ public class OcspResponderMock {
     }
 
     @SneakyThrows
-    private void configureWireMockReceiveHttpPost(final OCSPResp ocspRespTx, final int httpStatus) {
+    private void configureWireMockReceiveHttpPost(final OCSPResp ocspRespTx, final int httpStatus, final int fixedDelayMilliseconds) {
         wireMockServer.stubFor(post(urlEqualTo(sspDir))
             .willReturn(aResponse()
                 .withStatus(httpStatus)
+                .withFixedDelay(fixedDelayMilliseconds)
                 .withHeader("Content-Type", "application/ocsp-response")
                 .withBody(ocspRespTx.getEncoded())));
     }
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.gematik.pki.ocsp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import de.gematik.pki.common.OcspResponderMock;
+import de.gematik.pki.exception.GemPkiException;
+import de.gematik.pki.utils.CertificateProvider;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.Map;
+import lombok.SneakyThrows;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class OcspBatchTransceiverTest {
+
+    private static X509Certificate VALID_X509_EE_CERT;
+    private static X509Certificate OTHER_X509_EE_CERT;
+    private static X509Certificate VALID_X509_ISSUER_CERT;
+    private final static String LOCAL_SSP_DIR = "/services/ocsp";
+    private final static String OCSP_HOST = "http://localhost:";
+    private static OcspResponderMock ocspResponderMock;
+
+    @SneakyThrows
+    @BeforeAll
+    public static void start() {
+        ocspResponderMock = new OcspResponderMock(LOCAL_SSP_DIR, OCSP_HOST);
+        VALID_X509_EE_CERT = CertificateProvider
+            .getX509Certificate("src/test/resources/certificates/GEM.SMCB-CA10/valid/DrMedGunther.pem");
+        OTHER_X509_EE_CERT = CertificateProvider
+            .getX509Certificate("src/test/resources/certificates/GEM.SMCB-CA10/valid/DrMedGunther_invalid-profession-item.pem");
+        VALID_X509_ISSUER_CERT = CertificateProvider
+            .getX509Certificate("src/test/resources/certificates/GEM.RCA1_TEST-ONLY.pem");
+        final OCSPReq ocspReq = OcspRequestGenerator.generateOcspRequest(List.of(VALID_X509_EE_CERT, OTHER_X509_EE_CERT),
+            VALID_X509_ISSUER_CERT);
+        ocspResponderMock.configureForOcspRequest(ocspReq);
+    }
+
+    @Test
+    void verifyOcspStatusSendsOneRequest() throws GemPkiException {
+        final int requestsBefore = ocspResponderMock.getReceivedRequestCount();
+        final Map<X509Certificate, Boolean> status = buildOcspBatchTransceiver(List.of(VALID_X509_EE_CERT, OTHER_X509_EE_CERT))
+            .verifyOcspStatusGood(null);
+        assertThat(status).containsEntry(VALID_X509_EE_CERT, true).containsEntry(OTHER_X509_EE_CERT, true);
+        assertThat(ocspResponderMock.getReceivedRequestCount() - requestsBefore).isEqualTo(1);
+    }
+
+    @Test
+    void verifyOcspStatusSplitsRequests() throws GemPkiException {
+        final int requestsBefore = ocspResponderMock.getReceivedRequestCount();
+        final Map<X509Certificate, Boolean> status = OcspBatchTransceiver.builder()
+            .x509EeCerts(List.of(VALID_X509_EE_CERT, OTHER_X509_EE_CERT))
+            .x509IssuerCert(VALID_X509_ISSUER_CERT)
+            .ssp(ocspResponderMock.getSspUrl())
+            .maxCertificatesPerRequest(1)
+            .build()
+            .verifyOcspStatusGood(null);
+        assertThat(status).hasSize(2);
+        assertThat(ocspResponderMock.getReceivedRequestCount() - requestsBefore).isEqualTo(2);
+    }
+
+    @Test
+    void verifyOcspStatusCachedCertificatesNotRequested() throws GemPkiException {
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
+        buildOcspBatchTransceiver(List.of(VALID_X509_EE_CERT, OTHER_X509_EE_CERT)).verifyOcspStatusGood(ocspRespCache);
+        assertThat(ocspRespCache.getSize()).isEqualTo(2);
+
+        final int requestsBefore = ocspResponderMock.getReceivedRequestCount();
+        final Map<X509Certificate, Boolean> status = buildOcspBatchTransceiver(List.of(OTHER_X509_EE_CERT, VALID_X509_EE_CERT))
+            .verifyOcspStatusGood(ocspRespCache);
+        assertThat(status.keySet()).containsExactly(OTHER_X509_EE_CERT, VALID_X509_EE_CERT);
+        assertThat(status.values()).containsOnly(true);
+        assertThat(ocspResponderMock.getReceivedRequestCount()).isEqualTo(requestsBefore);
+    }
+
+    /**
+     * The responder mock answers every request with single responses for both certificates, only the requested one may be cached.
+     */
+    @Test
+    void verifyOcspStatusCachesRequestedCertificatesOnly() throws GemPkiException {
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
+        final Map<X509Certificate, Boolean> status = buildOcspBatchTransceiver(List.of(VALID_X509_EE_CERT)).verifyOcspStatusGood(ocspRespCache);
+        assertThat(status).containsOnlyKeys(VALID_X509_EE_CERT);
+        assertThat(ocspRespCache.getSize()).isEqualTo(1);
+    }
+
+    @Test
+    void verifySspUrlInvalidThrowsGemPkiException() {
+        assertThatThrownBy(() -> OcspBatchTransceiver.builder()
+            .x509EeCerts(List.of(VALID_X509_EE_CERT, OTHER_X509_EE_CERT))
+            .x509IssuerCert(VALID_X509_ISSUER_CERT)
+            .ssp("http://no/wiremock/started")
+            .build()
+            .verifyOcspStatusGood(null))
+            .isInstanceOf(GemPkiException.class)
+            .hasMessageContaining("OCSP senden/empfangen fehlgeschlagen");
+    }
+
+    private static OcspBatchTransceiver buildOcspBatchTransceiver(final List<X509Certificate> x509EeCerts) {
+        return OcspBatchTransceiver.builder()
+            .x509EeCerts(x509EeCerts)
+            .x509IssuerCert(VALID_X509_ISSUER_CERT)
+            .ssp(ocspResponderMock.getSspUrl())
+            .build();
+    }
+}
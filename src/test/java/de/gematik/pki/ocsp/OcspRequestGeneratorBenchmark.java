@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.gematik.pki.ocsp;
+
+import static de.gematik.pki.ocsp.OcspRequestGeneratorTest.generateCertificateIdWithoutTemplate;
+import static de.gematik.pki.utils.BenchmarkRunner.allocatedBytesPerOp;
+import static de.gematik.pki.utils.BenchmarkRunner.score;
+import static org.assertj.core.api.Assertions.assertThat;
+import de.gematik.pki.exception.GemPkiException;
+import de.gematik.pki.utils.BenchmarkRunner;
+import de.gematik.pki.utils.CertificateProvider;
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.results.RunResult;
+
+/**
+ * JMH benchmark of the certificate id generation, run with mvn test -Pbenchmark
+ */
+@Slf4j
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OcspRequestGeneratorBenchmark {
+
+    private X509Certificate x509EeCert;
+    private X509Certificate x509IssuerCert;
+
+    @Setup
+    public void setUp() throws IOException {
+        x509EeCert = CertificateProvider.getX509Certificate("src/test/resources/certificates/GEM.SMCB-CA10/valid/DrMedGunther.pem");
+        x509IssuerCert = CertificateProvider.getX509Certificate("src/test/resources/certificates/GEM.RCA1_TEST-ONLY.pem");
+    }
+
+    @Benchmark
+    public void generateCertificateIdWithoutIssuerTemplate(final Blackhole blackhole) throws Exception {
+        blackhole.consume(generateCertificateIdWithoutTemplate(x509EeCert, x509IssuerCert));
+    }
+
+    @Benchmark
+    public void generateCertificateIdWithIssuerTemplate(final Blackhole blackhole) throws GemPkiException {
+        blackhole.consume(OcspRequestGenerator.generateCertificateId(x509EeCert, x509IssuerCert));
+    }
+
+    /**
+     * Compares time and allocated bytes per certificate id of the template based generation against hashing the issuer every time.
+     */
+    @Test
+    void generateCertificateIdCosts() throws Exception {
+        final Collection<RunResult> results = BenchmarkRunner.run(BenchmarkRunner.options(OcspRequestGeneratorBenchmark.class));
+        final double withoutTemplateBytes = allocatedBytesPerOp(results, "generateCertificateIdWithoutIssuerTemplate");
+        final double withTemplateBytes = allocatedBytesPerOp(results, "generateCertificateIdWithIssuerTemplate");
+        log.info("CertificateID without template: {} ns/op, {} bytes/op; with template: {} ns/op, {} bytes/op",
+            score(results, "generateCertificateIdWithoutIssuerTemplate"), withoutTemplateBytes,
+            score(results, "generateCertificateIdWithIssuerTemplate"), withTemplateBytes);
+        assertThat(withTemplateBytes).isLessThan(withoutTemplateBytes);
+    }
+}
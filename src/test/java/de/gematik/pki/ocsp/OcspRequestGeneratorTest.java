@@ -16,13 +16,18 @@
 
 package de.gematik.pki.ocsp;
 
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 
 import de.gematik.pki.exception.GemPkiException;
 import de.gematik.pki.utils.CertificateProvider;
 import java.io.IOException;
 import java.security.cert.X509Certificate;
+import java.util.List;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.ocsp.CertificateID;
 import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
@@ -48,4 +53,42 @@ class OcspRequestGeneratorTest {
         assertThat(ocspReq.getRequestList()).hasSize(1);
     }
 
+    @Test
+    void verifyGenerateOCSPRequestForSeveralCertificates() throws GemPkiException, IOException {
+        final X509Certificate otherX509EeCert = CertificateProvider
+            .getX509Certificate("src/test/resources/certificates/GEM.SMCB-CA10/valid/DrMedGunther_invalid-profession-item.pem");
+        final OCSPReq ocspReq = OcspRequestGenerator
+            .generateOcspRequest(List.of(VALID_X509_EE_CERT, otherX509EeCert), VALID_X509_ISSUER_CERT);
+        assertThat(ocspReq.getRequestList()).hasSize(2);
+        assertThat(ocspReq.getRequestList()[0].getCertID().getSerialNumber()).isEqualTo(VALID_X509_EE_CERT.getSerialNumber());
+        assertThat(ocspReq.getRequestList()[1].getCertID().getSerialNumber()).isEqualTo(otherX509EeCert.getSerialNumber());
+    }
+
+    @Test
+    void verifyGenerateOCSPRequestWithoutCertificates() {
+        assertThatThrownBy(() -> OcspRequestGenerator.generateOcspRequest(List.of(), VALID_X509_ISSUER_CERT))
+            .isInstanceOf(GemPkiException.class);
+    }
+
+    @Test
+    void generateCertificateIdMatchesFullComputation() throws Exception {
+        assertThat(OcspRequestGenerator.generateCertificateId(VALID_X509_EE_CERT, VALID_X509_ISSUER_CERT))
+            .isEqualTo(generateCertificateIdWithoutTemplate(VALID_X509_EE_CERT, VALID_X509_ISSUER_CERT));
+    }
+
+    @Test
+    void generateCertificateIdAfterPrecompute() throws Exception {
+        final X509Certificate x509IssuerCert = CertificateProvider
+            .getX509Certificate("src/test/resources/certificates/GEM.SMCB-CA10/GEM.SMCB-CA10_TEST-ONLY.pem");
+        OcspRequestGenerator.precomputeCertificateIdTemplate(x509IssuerCert);
+        assertThat(OcspRequestGenerator.generateCertificateId(VALID_X509_EE_CERT, x509IssuerCert))
+            .isEqualTo(generateCertificateIdWithoutTemplate(VALID_X509_EE_CERT, x509IssuerCert));
+    }
+
+    static CertificateID generateCertificateIdWithoutTemplate(final X509Certificate x509EeCert, final X509Certificate x509IssuerCert)
+        throws Exception {
+        return new CertificateID(new JcaDigestCalculatorProviderBuilder().build().get(CertificateID.HASH_SHA1),
+            new JcaX509CertificateHolder(x509IssuerCert), x509EeCert.getSerialNumber());
+    }
+
 }
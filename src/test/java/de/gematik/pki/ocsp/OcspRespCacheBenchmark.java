@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.gematik.pki.ocsp;
+
+import static de.gematik.pki.utils.BenchmarkRunner.score;
+import static org.assertj.core.api.Assertions.assertThat;
+import de.gematik.pki.utils.BenchmarkRunner;
+import de.gematik.pki.utils.CertificateProvider;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * JMH benchmark of concurrent cache lookups, run with mvn test -Pbenchmark
+ */
+@Slf4j
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OcspRespCacheBenchmark {
+
+    /**
+     * minimal share of linear scaling the lookup throughput has to reach with one thread per core
+     */
+    private static final double MIN_SCALING_EFFICIENCY = 0.5;
+
+    private OcspRespCache ocspRespCache;
+    private OcspCertId certId;
+
+    @Setup
+    @SneakyThrows
+    public void setUp() {
+        final X509Certificate x509EeCert = CertificateProvider
+            .getX509Certificate("src/test/resources/certificates/GEM.SMCB-CA10/valid/DrMedGunther.pem");
+        final X509Certificate x509IssuerCert = CertificateProvider
+            .getX509Certificate("src/test/resources/certificates/GEM.RCA1_TEST-ONLY.pem");
+        final OCSPReq ocspReq = OcspRequestGenerator.generateSingleOcspRequest(x509EeCert, x509IssuerCert);
+        certId = OcspCertId.of(ocspReq.getRequestList()[0].getCertID());
+        ocspRespCache = new OcspRespCache(30);
+        ocspRespCache.saveResponse(OcspResponseGenerator.builder()
+            .signer(OcspConstants.getOcspSignerRsa())
+            .build()
+            .gen(ocspReq));
+    }
+
+    @Benchmark
+    public void getResponse(final Blackhole blackhole) {
+        blackhole.consume(ocspRespCache.getResponse(certId).orElseThrow());
+    }
+
+    /**
+     * Lookups of one hot entry with one thread and with one thread per core, the throughput has to scale with the cores
+     */
+    @SneakyThrows
+    @Test
+    void getResponseConcurrently() {
+        final int cores = Runtime.getRuntime().availableProcessors();
+        final double singleThreadOps = lookupThroughput(1);
+        final double allCoresOps = lookupThroughput(cores);
+        log.info("1 thread: {} lookups/s, {} threads: {} lookups/s", singleThreadOps, cores, allCoresOps);
+        assertThat(allCoresOps).isGreaterThanOrEqualTo(singleThreadOps * cores * MIN_SCALING_EFFICIENCY);
+    }
+
+    private static double lookupThroughput(final int threads) throws Exception {
+        return score(BenchmarkRunner.run(BenchmarkRunner.options(OcspRespCacheBenchmark.class).threads(threads)), "getResponse");
+    }
+}
@@ -16,20 +16,47 @@
 
 package de.gematik.pki.ocsp;
 
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.within;
+import de.gematik.pki.exception.GemPkiException;
+import de.gematik.pki.tsl.TslInformationProvider;
+import de.gematik.pki.tsl.TslReader;
+import de.gematik.pki.tsl.TspService;
 import de.gematik.pki.utils.CertificateProvider;
+import de.gematik.pki.utils.ResourceReader;
+import java.io.DataOutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.cert.X509Certificate;
+import java.time.ZonedDateTime;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import lombok.SneakyThrows;
+import org.bouncycastle.asn1.nist.NISTObjectIdentifiers;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
 import org.bouncycastle.cert.ocsp.OCSPReq;
 import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
 class OcspRespCacheTest {
 
+    private static final int LOOKUPS_PER_THREAD = 1_000;
+
     static X509Certificate VALID_X509_EE_CERT;
     static X509Certificate VALID_X509_ISSUER_CERT;
     static OCSPReq ocspReq;
+    static OcspCertId certId;
 
     @SneakyThrows
     @BeforeAll
@@ -41,6 +68,7 @@ class OcspRespCacheTest {
             .getX509Certificate("src/test/resources/certificates/GEM.RCA1_TEST-ONLY.pem");
         ocspReq = OcspRequestGenerator.generateSingleOcspRequest(VALID_X509_EE_CERT,
             VALID_X509_ISSUER_CERT);
+        certId = OcspCertId.of(ocspReq.getRequestList()[0].getCertID());
     }
 
     @Test
@@ -59,7 +87,7 @@ class OcspRespCacheTest {
             .signer(OcspConstants.getOcspSignerRsa())
             .build()
             .gen(ocspReq);
-        ocspRespCache.saveResponse(VALID_X509_EE_CERT.getSerialNumber(), ocspResp);
+        ocspRespCache.saveResponse(ocspResp);
         assertThat(ocspRespCache.getSize()).isEqualTo(1);
     }
 
@@ -68,13 +96,394 @@ class OcspRespCacheTest {
     void saveAndGetResponse() {
         final OcspRespCache ocspRespCache = new OcspRespCache(30);
 
-        assertThat(ocspRespCache.getResponse(VALID_X509_EE_CERT.getSerialNumber())).isEmpty();
+        assertThat(ocspRespCache.getResponse(certId)).isEmpty();
+        final OCSPResp ocspResp = OcspResponseGenerator.builder()
+            .signer(OcspConstants.getOcspSignerRsa())
+            .build()
+            .gen(ocspReq);
+        ocspRespCache.saveResponse(ocspResp);
+        assertThat(ocspRespCache.getResponse(certId)).isPresent();
+    }
+
+    @SneakyThrows
+    @Test
+    void expiredResponseIsNotReturned() {
+        final OcspRespCache ocspRespCache = new OcspRespCache(0);
+        final OCSPResp ocspResp = OcspResponseGenerator.builder()
+            .signer(OcspConstants.getOcspSignerRsa())
+            .build()
+            .gen(ocspReq);
+        ocspRespCache.saveResponse(ocspResp);
+        assertThat(ocspRespCache.getResponse(certId)).isEmpty();
+        assertThat(ocspRespCache.getSize()).isZero();
+    }
+
+    @SneakyThrows
+    @Test
+    void timeToLiveIsLimitedByNextUpdate() {
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
+        final OcspResponseGenerator.OcspResponseGeneratorBuilder generator = OcspResponseGenerator.builder().signer(OcspConstants.getOcspSignerRsa());
+        final OcspRespEntry shortValidity = OcspVerifier.getSingleResponses(generator.validitySeconds(10).build().gen(ocspReq)).get(0);
+        final OcspRespEntry longValidity = OcspVerifier.getSingleResponses(generator.validitySeconds(3600).build().gen(ocspReq)).get(0);
+        final OcspRespEntry withoutNextUpdate = OcspVerifier.getSingleResponses(generator.validitySeconds(null).build().gen(ocspReq)).get(0);
+        assertThat(ocspRespCache.getTimeToLiveMillis(shortValidity)).isEqualTo(10_000L);
+        assertThat(ocspRespCache.getTimeToLiveMillis(longValidity)).isEqualTo(30_000L);
+        assertThat(ocspRespCache.getTimeToLiveMillis(withoutNextUpdate)).isEqualTo(30_000L);
+
+        ocspRespCache.saveResponse(OcspResponseGenerator.builder().signer(OcspConstants.getOcspSignerRsa()).validitySeconds(0).build().gen(ocspReq));
+        assertThat(ocspRespCache.getResponse(certId)).isEmpty();
+    }
+
+    @SneakyThrows
+    @Test
+    void timeToLiveIsShortenedByRevocationChurn() {
+        final X509Certificate otherEeCert = CertificateProvider
+            .getX509Certificate("src/test/resources/certificates/GEM.SMCB-CA10/valid/DrMedGunther_invalid-profession-item.pem");
+        final BigInteger revokedSerialNumber = otherEeCert.getSerialNumber();
+        final OCSPResp ocspResp = OcspResponseGenerator.builder()
+            .signer(OcspConstants.getOcspSignerRsa())
+            .statusStore(certificateId -> certificateId.getSerialNumber().equals(revokedSerialNumber)
+                ? new RevokedStatus(new Date(), CRLReason.keyCompromise) : CertificateStatus.GOOD)
+            .build()
+            .gen(OcspRequestGenerator.generateOcspRequest(List.of(VALID_X509_EE_CERT, otherEeCert), VALID_X509_ISSUER_CERT));
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
+        ocspRespCache.saveFetchedResponse(ocspResp);
+        final OcspRespEntry goodEntry = ocspRespCache.getResponse(certId).orElseThrow();
+        assertThat(ocspRespCache.getRevocationRate(certId)).isCloseTo(0.5, within(0.001));
+        assertThat(ocspRespCache.getTimeToLiveMillis(goodEntry)).isEqualTo(30_000L);
+
+        ocspRespCache.setRevocationChurnFactor(2);
+        assertThat(ocspRespCache.getTimeToLiveMillis(goodEntry)).isBetween(14_990L, 15_010L);
+    }
+
+    @SneakyThrows
+    @Test
+    void revocationRateCountsFetchedResponsesOnly() {
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
+        final OCSPResp goodResp = OcspResponseGenerator.builder().signer(OcspConstants.getOcspSignerRsa()).build().gen(ocspReq);
+        final OCSPResp revokedResp = OcspResponseGenerator.builder()
+            .signer(OcspConstants.getOcspSignerRsa())
+            .statusStore(certificateId -> new RevokedStatus(new Date(), CRLReason.keyCompromise))
+            .build()
+            .gen(ocspReq);
+        ocspRespCache.saveFetchedResponse(revokedResp);
+        for (int i = 0; i < 10; i++) {
+            ocspRespCache.saveResponse(goodResp);
+        }
+        assertThat(ocspRespCache.getRevocationRate(certId)).isCloseTo(1.0, within(0.001));
+
+        ocspRespCache.saveFetchedResponse(goodResp);
+        assertThat(ocspRespCache.getRevocationRate(certId)).isCloseTo(0.5, within(0.001));
+    }
+
+    @SneakyThrows
+    @Test
+    void refreshedResponseDroppedAfterClear() {
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
+        final OCSPResp ocspResp = OcspResponseGenerator.builder()
+            .signer(OcspConstants.getOcspSignerRsa())
+            .build()
+            .gen(ocspReq);
+        final OcspRespEntry entry = OcspVerifier.getSingleResponses(ocspResp).get(0);
+        assertThat(ocspRespCache.saveRefreshedResponse(entry)).isFalse();
+
+        ocspRespCache.saveResponse(ocspResp);
+        assertThat(ocspRespCache.saveRefreshedResponse(entry)).isTrue();
+        ocspRespCache.clear();
+        assertThat(ocspRespCache.saveRefreshedResponse(entry)).isFalse();
+        assertThat(ocspRespCache.getResponse(certId)).isEmpty();
+    }
+
+    @SneakyThrows
+    @Test
+    void deleteExpiredResponses() {
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
+        final OCSPResp ocspResp = OcspResponseGenerator.builder()
+            .signer(OcspConstants.getOcspSignerRsa())
+            .build()
+            .gen(ocspReq);
+        ocspRespCache.saveResponse(ocspResp);
+        ocspRespCache.deleteExpiredResponses();
+        assertThat(ocspRespCache.getSize()).isEqualTo(1);
+        ocspRespCache.setOcspGracePeriodSeconds(0);
+        ocspRespCache.deleteExpiredResponses();
+        assertThat(ocspRespCache.getSize()).isZero();
+    }
+
+    @SneakyThrows
+    @Test
+    void maximumSizeIsNotExceeded() {
+        final OcspRespCache ocspRespCache = new OcspRespCache(30, 1);
+        assertThat(ocspRespCache.getMaximumSize()).isEqualTo(1);
+        final OCSPResp ocspResp = OcspResponseGenerator.builder()
+            .signer(OcspConstants.getOcspSignerRsa())
+            .build()
+            .gen(ocspReq);
+        final OcspRespEntry entry = OcspVerifier.getSingleResponses(ocspResp).get(0);
+        ocspRespCache.saveResponse(entry);
+        ocspRespCache.saveResponse(copyWithSerialNumber(entry, VALID_X509_EE_CERT.getSerialNumber().add(BigInteger.ONE)));
+        ocspRespCache.saveResponse(copyWithSerialNumber(entry, VALID_X509_EE_CERT.getSerialNumber().add(BigInteger.TWO)));
+        assertThat(ocspRespCache.getSize()).isEqualTo(1);
+        assertThat(ocspRespCache.getEvictionCount()).isEqualTo(2);
+    }
+
+    @SneakyThrows
+    @Test
+    void hitAndMissCount() {
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
+        final OCSPResp ocspResp = OcspResponseGenerator.builder()
+            .signer(OcspConstants.getOcspSignerRsa())
+            .build()
+            .gen(ocspReq);
+        assertThat(ocspRespCache.getResponse(certId)).isEmpty();
+        ocspRespCache.saveResponse(ocspResp);
+        assertThat(ocspRespCache.getResponse(certId)).isPresent();
+        assertThat(ocspRespCache.getResponse(certId)).isPresent();
+        assertThat(ocspRespCache.getHitCount()).isEqualTo(2);
+        assertThat(ocspRespCache.getMissCount()).isEqualTo(1);
+    }
+
+    @SneakyThrows
+    @Test
+    void sameSerialNumberOfDifferentIssuersDoesNotCollide() {
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
+        final OCSPResp ocspResp = OcspResponseGenerator.builder()
+            .signer(OcspConstants.getOcspSignerRsa())
+            .build()
+            .gen(ocspReq);
+        ocspRespCache.saveResponse(ocspResp);
+        final OcspCertId otherIssuerCertId = OcspCertId.of(OcspRequestGenerator.generateCertificateId(VALID_X509_EE_CERT, VALID_X509_EE_CERT));
+        assertThat(otherIssuerCertId.getSerialNumber()).isEqualTo(certId.getSerialNumber());
+        assertThat(ocspRespCache.getResponse(otherIssuerCertId)).isEmpty();
+        assertThat(ocspRespCache.getResponse(certId)).isPresent();
+    }
+
+    @Test
+    void sameHashesOfDifferentHashAlgorithmsDoNotCollide() {
+        final CertificateID certificateId = ocspReq.getRequestList()[0].getCertID();
+        final OcspCertId sha256CertId = OcspCertId.of(NISTObjectIdentifiers.id_sha256, certificateId.getIssuerNameHash(),
+            certificateId.getIssuerKeyHash(), certificateId.getSerialNumber());
+        assertThat(sha256CertId.getSerialNumber()).isEqualTo(certId.getSerialNumber());
+        assertThat(sha256CertId).isNotEqualTo(certId);
+        assertThat(OcspCertId.of(certificateId.getHashAlgOID(), certificateId.getIssuerNameHash(), certificateId.getIssuerKeyHash(),
+            certificateId.getSerialNumber())).isEqualTo(certId);
+    }
+
+    @SneakyThrows
+    @Test
+    void getResponseReturnsParsedStatus() {
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
+        final OCSPResp ocspResp = OcspResponseGenerator.builder()
+            .signer(OcspConstants.getOcspSignerRsa())
+            .build()
+            .gen(ocspReq);
+        ocspRespCache.saveResponse(ocspResp);
+        final OcspRespEntry entry = ocspRespCache.getResponse(certId).orElseThrow();
+        assertThat(entry.isStatusGood()).isTrue();
+        assertThat(entry.getCertId()).isEqualTo(certId);
+        assertThat(entry.getEncoded()).isEqualTo(ocspResp.getEncoded());
+    }
+
+    @SneakyThrows
+    @Test
+    void writeAndRestoreSnapshot() {
+        final Path snapshotFile = Path.of("target/ocspRespCache.snapshot");
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
+        final OCSPResp ocspResp = OcspResponseGenerator.builder()
+            .signer(OcspConstants.getOcspSignerRsa())
+            .build()
+            .gen(ocspReq);
+        ocspRespCache.saveResponse(ocspResp);
+        assertThat(ocspRespCache.writeSnapshot(snapshotFile)).isEqualTo(1);
+
+        final OcspRespCache restoredCache = new OcspRespCache(30);
+        assertThat(restoredCache.restoreSnapshot(snapshotFile)).isEqualTo(1);
+        assertThat(restoredCache.getResponse(certId)).isPresent();
+
+        final OcspRespCache expiredCache = new OcspRespCache(0);
+        assertThat(expiredCache.restoreSnapshot(snapshotFile)).isZero();
+        assertThat(expiredCache.getSize()).isZero();
+    }
+
+    @SneakyThrows
+    @Test
+    void writeSnapshotOncePerOcspResponse() {
+        final Path snapshotFile = Path.of("target/ocspRespCacheBatch.snapshot");
+        final X509Certificate otherEeCert = CertificateProvider
+            .getX509Certificate("src/test/resources/certificates/GEM.SMCB-CA10/valid/DrMedGunther_invalid-profession-item.pem");
+        final OCSPResp batchResp = OcspResponseGenerator.builder()
+            .signer(OcspConstants.getOcspSignerRsa())
+            .build()
+            .gen(OcspRequestGenerator.generateOcspRequest(List.of(VALID_X509_EE_CERT, otherEeCert), VALID_X509_ISSUER_CERT));
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
+        ocspRespCache.saveResponse(batchResp);
+        assertThat(ocspRespCache.getSize()).isEqualTo(2);
+        assertThat(ocspRespCache.writeSnapshot(snapshotFile)).isEqualTo(1);
+
+        final OcspRespCache restoredCache = new OcspRespCache(30);
+        assertThat(restoredCache.restoreSnapshot(snapshotFile)).isEqualTo(2);
+        assertThat(restoredCache.getSize()).isEqualTo(2);
+    }
+
+    @SneakyThrows
+    @Test
+    void restoreSnapshotKeepsNewerCachedResponse() {
+        final Path snapshotFile = Path.of("target/ocspRespCacheNewer.snapshot");
+        final OcspResponseGenerator generator = OcspResponseGenerator.builder().signer(OcspConstants.getOcspSignerRsa()).build();
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
+        ocspRespCache.saveResponse(generator.gen(ocspReq));
+        ocspRespCache.writeSnapshot(snapshotFile);
+
+        Thread.sleep(1100);
+        final OcspRespCache restoredCache = new OcspRespCache(30);
+        final OCSPResp newerResp = generator.gen(ocspReq);
+        restoredCache.saveResponse(newerResp);
+        assertThat(restoredCache.restoreSnapshot(snapshotFile)).isZero();
+        assertThat(restoredCache.getResponse(certId).orElseThrow().getEncoded()).isEqualTo(newerResp.getEncoded());
+    }
+
+    @SneakyThrows
+    @Test
+    void restoreSnapshotVerifiesSignatures() {
+        final Path snapshotFile = Path.of("target/ocspRespCacheVerified.snapshot");
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
+        // producedAt within the validity of the OCSP signer certificate
+        ocspRespCache.saveResponse(OcspResponseGenerator.builder().signer(OcspConstants.getOcspSignerRsa()).build()
+            .gen(ocspReq, ZonedDateTime.parse("2022-01-01T12:00:00Z")));
+        ocspRespCache.writeSnapshot(snapshotFile);
+
+        final OcspRespCache untrustedCache = new OcspRespCache(30);
+        assertThat(untrustedCache.restoreSnapshot(snapshotFile, new OcspRespSignatureVerifier(List.of(), "IDP"))).isZero();
+        assertThat(untrustedCache.getSize()).isZero();
+
+        final List<TspService> tspServiceList = new TslInformationProvider(
+            TslReader.getTsl(ResourceReader.getFilePathFromResources("tsls/valid/TSL_default.xml")).orElseThrow()).getTspServices();
+        final OcspRespCache trustedCache = new OcspRespCache(30);
+        assertThat(trustedCache.restoreSnapshot(snapshotFile, new OcspRespSignatureVerifier(tspServiceList, "IDP"))).isEqualTo(1);
+        assertThat(trustedCache.getResponse(certId)).isPresent();
+    }
+
+    @SneakyThrows
+    @Test
+    void restoreSnapshotInvalidRecordLength() {
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
+        for (final int length : new int[]{-1, 1024 * 1024 + 1}) {
+            final Path snapshotFile = Path.of("target/ocspRespCacheInvalidLength.snapshot");
+            try (final DataOutputStream out = new DataOutputStream(Files.newOutputStream(snapshotFile))) {
+                out.writeInt(0x4F435350);
+                out.writeInt(1);
+                out.writeInt(length);
+            }
+            assertThatThrownBy(() -> ocspRespCache.restoreSnapshot(snapshotFile))
+                .isInstanceOf(GemPkiException.class)
+                .hasMessageContaining("Invalid record length " + length);
+        }
+    }
+
+    @SneakyThrows
+    @Test
+    void writeSnapshotFailedDeletesTemporaryFile() {
+        final Path snapshotFile = Path.of("target/ocspRespCacheDirectory.snapshot");
+        Files.createDirectories(snapshotFile.resolve("occupied"));
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
+        ocspRespCache.saveResponse(OcspResponseGenerator.builder().signer(OcspConstants.getOcspSignerRsa()).build().gen(ocspReq));
+        assertThatThrownBy(() -> ocspRespCache.writeSnapshot(snapshotFile))
+            .isInstanceOf(GemPkiException.class)
+            .hasMessageContaining("Write of OCSP response cache snapshot failed");
+        assertThat(Files.exists(Path.of("target/ocspRespCacheDirectory.snapshot.tmp"))).isFalse();
+    }
+
+    @Test
+    void restoreSnapshotInvalidFile() {
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
+        assertThatThrownBy(() -> ocspRespCache.restoreSnapshot(Path.of("src/test/resources/log4j2.xml")))
+            .isInstanceOf(GemPkiException.class)
+            .hasMessageContaining("Unknown format");
+    }
+
+    @SneakyThrows
+    @Test
+    void tryStartRefresh() {
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
         final OCSPResp ocspResp = OcspResponseGenerator.builder()
             .signer(OcspConstants.getOcspSignerRsa())
             .build()
             .gen(ocspReq);
-        ocspRespCache.saveResponse(VALID_X509_EE_CERT.getSerialNumber(), ocspResp);
-        assertThat(ocspRespCache.getResponse(VALID_X509_EE_CERT.getSerialNumber())).isPresent();
+        ocspRespCache.saveResponse(ocspResp);
+        ocspRespCache.getResponse(certId);
+        ocspRespCache.getResponse(certId);
+        assertThat(ocspRespCache.tryStartRefresh(certId)).isFalse();
+
+        ocspRespCache.setRefreshAheadSeconds(30);
+        assertThat(ocspRespCache.tryStartRefresh(certId)).isTrue();
+        assertThat(ocspRespCache.tryStartRefresh(certId)).isFalse();
+
+        ocspRespCache.refreshFailed(certId);
+        assertThat(ocspRespCache.getResponse(certId)).isPresent();
+        assertThat(ocspRespCache.tryStartRefresh(certId)).isFalse();
+    }
+
+    @SneakyThrows
+    @Test
+    void tryStartRefreshNeedsMinHits() {
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
+        ocspRespCache.setRefreshAheadSeconds(30);
+        ocspRespCache.setRefreshAheadMinHits(3);
+        final OCSPResp ocspResp = OcspResponseGenerator.builder()
+            .signer(OcspConstants.getOcspSignerRsa())
+            .build()
+            .gen(ocspReq);
+        ocspRespCache.saveResponse(ocspResp);
+        ocspRespCache.getResponse(certId);
+        ocspRespCache.getResponse(certId);
+        assertThat(ocspRespCache.tryStartRefresh(certId)).isFalse();
+        ocspRespCache.getResponse(certId);
+        assertThat(ocspRespCache.tryStartRefresh(certId)).isTrue();
+    }
+
+    private static OcspRespEntry copyWithSerialNumber(final OcspRespEntry entry, final BigInteger serialNumber) {
+        final CertificateID certificateId = ocspReq.getRequestList()[0].getCertID();
+        return OcspRespEntry.builder()
+            .certId(OcspCertId.of(certificateId.getHashAlgOID(), certificateId.getIssuerNameHash(), certificateId.getIssuerKeyHash(), serialNumber))
+            .certStatus(entry.getCertStatus())
+            .thisUpdate(entry.getThisUpdate())
+            .encoded(entry.getEncoded())
+            .build();
+    }
+
+    @SneakyThrows
+    @Test
+    void getResponseConcurrently() {
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
+        final OCSPResp ocspResp = OcspResponseGenerator.builder()
+            .signer(OcspConstants.getOcspSignerRsa())
+            .build()
+            .gen(ocspReq);
+        ocspRespCache.saveResponse(ocspResp);
+
+        final int threads = 4;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        final LongAdder hits = new LongAdder();
+        for (int i = 0; i < threads; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int j = 0; j < LOOKUPS_PER_THREAD; j++) {
+                    if (ocspRespCache.getResponse(certId).isPresent()) {
+                        hits.increment();
+                    }
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+        assertThat(hits.sum()).isEqualTo((long) threads * LOOKUPS_PER_THREAD);
     }
 
 }
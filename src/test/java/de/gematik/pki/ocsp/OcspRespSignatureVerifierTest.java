@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.gematik.pki.ocsp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import de.gematik.pki.certificate.CertificateCommonVerification;
+import de.gematik.pki.error.ErrorCode;
+import de.gematik.pki.exception.GemPkiException;
+import de.gematik.pki.tsl.TslConstants;
+import de.gematik.pki.tsl.TslInformationProvider;
+import de.gematik.pki.tsl.TslReader;
+import de.gematik.pki.tsl.TspService;
+import de.gematik.pki.utils.CertificateProvider;
+import de.gematik.pki.utils.P12Container;
+import de.gematik.pki.utils.ResourceReader;
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+import java.time.ZonedDateTime;
+import java.util.List;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class OcspRespSignatureVerifierTest {
+
+    private static final String FILE_NAME_TSL_DEFAULT = "tsls/valid/TSL_default.xml";
+    private static final String PRODUCT_TYPE = "IDP";
+    // within the validity of the OCSP signer certificates
+    private static final ZonedDateTime PRODUCED_AT = ZonedDateTime.parse("2022-01-01T12:00:00Z");
+    private static List<TspService> tspServiceList;
+    private static OCSPReq ocspReq;
+
+    @BeforeAll
+    public static void start() throws IOException, GemPkiException {
+        tspServiceList = new TslInformationProvider(
+            TslReader.getTsl(ResourceReader.getFilePathFromResources(FILE_NAME_TSL_DEFAULT)).orElseThrow())
+            .getTspServices();
+        final X509Certificate eeCert = CertificateProvider
+            .getX509Certificate("src/test/resources/certificates/GEM.SMCB-CA10/valid/DrMedGunther.pem");
+        final X509Certificate issuerCert = CertificateProvider
+            .getX509Certificate("src/test/resources/certificates/GEM.RCA1_TEST-ONLY.pem");
+        ocspReq = OcspRequestGenerator.generateSingleOcspRequest(eeCert, issuerCert);
+    }
+
+    @Test
+    void verifyValidSignature() throws GemPkiException {
+        final OcspRespSignatureVerifier verifier = new OcspRespSignatureVerifier(tspServiceList, PRODUCT_TYPE);
+        for (final P12Container signer : List.of(OcspConstants.getOcspSignerRsa(), OcspConstants.getOcspSignerEcc())) {
+            final OCSPResp ocspResp = OcspResponseGenerator.builder().signer(signer).build().gen(ocspReq, PRODUCED_AT);
+            assertDoesNotThrow(() -> verifier.verify(ocspResp));
+            assertDoesNotThrow(() -> verifier.verify(ocspResp));
+        }
+        assertThat(verifier.getValidatedResponderCount()).isEqualTo(2);
+    }
+
+    @Test
+    void verifyInvalidSignature() throws GemPkiException {
+        final P12Container wrongKey = P12Container.builder()
+            .certificate(OcspConstants.getOcspSignerRsa().getCertificate())
+            .privateKey(OcspConstants.getOcspSignerEcc().getPrivateKey())
+            .build();
+        final OCSPResp ocspResp = OcspResponseGenerator.builder().signer(wrongKey).build().gen(ocspReq, PRODUCED_AT);
+        final OcspRespSignatureVerifier verifier = new OcspRespSignatureVerifier(tspServiceList, PRODUCT_TYPE);
+        assertThatThrownBy(() -> verifier.verify(ocspResp))
+            .isInstanceOf(GemPkiException.class)
+            .hasMessageContaining(ErrorCode.SE_1031.name());
+    }
+
+    @Test
+    void verifyResponderNotInTsl() throws GemPkiException {
+        final OCSPResp ocspResp = OcspResponseGenerator.builder().signer(OcspConstants.getOcspSignerRsa()).build().gen(ocspReq, PRODUCED_AT);
+        final OcspRespSignatureVerifier verifier = new OcspRespSignatureVerifier(List.of(), PRODUCT_TYPE);
+        assertThatThrownBy(() -> verifier.verify(ocspResp))
+            .isInstanceOf(GemPkiException.class)
+            .hasMessageContaining(ErrorCode.TE_1030.name());
+    }
+
+    @Test
+    void hasSameOcspSigners() throws GemPkiException {
+        final OcspRespSignatureVerifier verifier = new OcspRespSignatureVerifier(tspServiceList, PRODUCT_TYPE);
+        assertThat(verifier.hasSameOcspSigners(new OcspRespSignatureVerifier(tspServiceList, PRODUCT_TYPE))).isTrue();
+        assertThat(verifier.hasSameOcspSigners(new OcspRespSignatureVerifier(List.of(), PRODUCT_TYPE))).isFalse();
+    }
+
+    @Test
+    void verifyResponderOfRevokedOcspServiceNotTrusted() throws GemPkiException, IOException {
+        final List<TspService> revokedOcspServices = new TslInformationProvider(
+            TslReader.getTsl(ResourceReader.getFilePathFromResources(FILE_NAME_TSL_DEFAULT)).orElseThrow())
+            .getTspServices();
+        revokedOcspServices.stream()
+            .map(tspService -> tspService.getTspServiceType().getServiceInformation())
+            .filter(serviceInformation -> TslConstants.STI_OCSP.equals(serviceInformation.getServiceTypeIdentifier()))
+            .forEach(serviceInformation -> serviceInformation.setServiceStatus(CertificateCommonVerification.SVCSTATUS_REVOKED));
+        final OCSPResp ocspResp = OcspResponseGenerator.builder().signer(OcspConstants.getOcspSignerRsa()).build().gen(ocspReq, PRODUCED_AT);
+        final OcspRespSignatureVerifier verifier = new OcspRespSignatureVerifier(revokedOcspServices, PRODUCT_TYPE);
+        assertThatThrownBy(() -> verifier.verify(ocspResp))
+            .isInstanceOf(GemPkiException.class)
+            .hasMessageContaining(ErrorCode.TE_1030.name());
+    }
+
+    @Test
+    void verifyResponderNotValidAtProducedAt() throws GemPkiException {
+        final OCSPResp ocspResp = OcspResponseGenerator.builder().signer(OcspConstants.getOcspSignerRsa()).build()
+            .gen(ocspReq, ZonedDateTime.parse("2030-01-01T12:00:00Z"));
+        final OcspRespSignatureVerifier verifier = new OcspRespSignatureVerifier(tspServiceList, PRODUCT_TYPE);
+        assertThatThrownBy(() -> verifier.verify(ocspResp))
+            .isInstanceOf(GemPkiException.class)
+            .hasMessageContaining(ErrorCode.SE_1021.name());
+    }
+
+    @Test
+    void verifyUnsuccessfulResponse() throws Exception {
+        final OCSPResp ocspResp = new OCSPRespBuilder().build(OCSPRespBuilder.TRY_LATER, null);
+        final OcspRespSignatureVerifier verifier = new OcspRespSignatureVerifier(tspServiceList, PRODUCT_TYPE);
+        assertDoesNotThrow(() -> verifier.verify(ocspResp));
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.gematik.pki.ocsp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import de.gematik.pki.exception.GemPkiException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.util.encoders.Hex;
+
+/**
+ * Embeddable HTTP OCSP responder for load and soak tests without external services. Every CA gets its own path and {@link PreSignedOcspResponder}.
+ * Artificial latency and errors can be injected and changed while the server is running. Latency does not block a handler thread: the response of a delayed
+ * request is sent by a scheduled task, so the number of concurrent connections is not limited by the number of threads.
+ * <p>
+ * Requests are accepted as POST and as GET (RFC 5019). Responses carry an ETag and, with cacheMaxAgeSeconds set, a Cache-Control max-age; GET requests
+ * with a matching If-None-Match are answered with 304.
+ * <p>
+ * The server is not part of the library jar, it is published as separate artifact with classifier ocsp-responder (type test-jar) next to it.
+ */
+@Slf4j
+public class OcspResponderServer implements AutoCloseable {
+
+    public static final int DEFAULT_THREADS = 16;
+
+    private static final String CONTENT_TYPE_OCSP_RESPONSE = "application/ocsp-response";
+
+    private final HttpServer httpServer;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService delayScheduler;
+    @Getter
+    @Setter
+    private volatile int latencyMillis;
+    @Getter
+    @Setter
+    private volatile int latencyJitterMillis;
+    @Getter
+    @Setter
+    private volatile double errorRate;
+    @Getter
+    @Setter
+    private volatile int errorHttpStatus;
+    @Getter
+    @Setter
+    private volatile int cacheMaxAgeSeconds;
+    private final LongAdder requestCount = new LongAdder();
+    private final LongAdder injectedErrorCount = new LongAdder();
+    private final LongAdder notModifiedCount = new LongAdder();
+
+    /**
+     * Constructor, use {@link #builder()}. The server listens on the loopback address and is started by {@link #start()}.
+     *
+     * @param port                port to listen on, default 0 (any free port)
+     * @param threads             number of threads handling requests, default {@link #DEFAULT_THREADS}
+     * @param latencyMillis       artificial latency of every response, default 0
+     * @param latencyJitterMillis maximum random latency added to latencyMillis, default 0
+     * @param errorRate           share of requests (0.0 to 1.0) answered with errorHttpStatus, default 0
+     * @param errorHttpStatus     HTTP status of injected errors, default 500
+     * @param cacheMaxAgeSeconds  Cache-Control max-age of responses, 0: no-cache, default 0
+     * @throws IOException if the server socket cannot be bound
+     */
+    @Builder
+    private OcspResponderServer(final Integer port, final Integer threads, final Integer latencyMillis, final Integer latencyJitterMillis,
+        final Double errorRate, final Integer errorHttpStatus, final Integer cacheMaxAgeSeconds) throws IOException {
+        this.latencyMillis = latencyMillis != null ? latencyMillis : 0;
+        this.latencyJitterMillis = latencyJitterMillis != null ? latencyJitterMillis : 0;
+        this.errorRate = errorRate != null ? errorRate : 0;
+        this.errorHttpStatus = errorHttpStatus != null ? errorHttpStatus : 500;
+        this.cacheMaxAgeSeconds = cacheMaxAgeSeconds != null ? cacheMaxAgeSeconds : 0;
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads != null ? threads : DEFAULT_THREADS, runnable -> {
+            final Thread thread = new Thread(runnable, "ocsp-responder-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.delayScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "ocsp-responder-delay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port != null ? port : 0), 0);
+        this.httpServer.setExecutor(executor);
+    }
+
+    /**
+     * Answer OCSP requests to the given path with the given responder, e.g. one path per CA.
+     *
+     * @param path      path of the SSP, e.g. "/ocsp/smcb-ca10"
+     * @param responder responder to answer the requests
+     * @return this server
+     */
+    public OcspResponderServer addResponder(@NonNull final String path, @NonNull final PreSignedOcspResponder responder) {
+        httpServer.createContext(path, exchange -> handle(exchange, responder));
+        return this;
+    }
+
+    /**
+     * Start the server.
+     *
+     * @return this server
+     */
+    public OcspResponderServer start() {
+        httpServer.start();
+        log.info("OCSP Responder gestartet auf Port {}", getPort());
+        return this;
+    }
+
+    /**
+     * Getter for the port the server listens on
+     *
+     * @return port
+     */
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    /**
+     * Getter for the SSP URL of a path
+     *
+     * @param path path of the SSP as given to {@link #addResponder(String, PreSignedOcspResponder)}
+     * @return SSP URL
+     */
+    public String getSspUrl(@NonNull final String path) {
+        return "http://" + httpServer.getAddress().getHostString() + ":" + getPort() + path;
+    }
+
+    /**
+     * Getter for the number of received requests
+     *
+     * @return number of requests
+     */
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    /**
+     * Getter for the number of requests answered with an injected error
+     *
+     * @return number of injected errors
+     */
+    public long getInjectedErrorCount() {
+        return injectedErrorCount.sum();
+    }
+
+    /**
+     * Getter for the number of GET requests answered with 304 Not Modified
+     *
+     * @return number of 304 responses
+     */
+    public long getNotModifiedCount() {
+        return notModifiedCount.sum();
+    }
+
+    /**
+     * Stop the server.
+     */
+    @Override
+    public void close() {
+        httpServer.stop(0);
+        delayScheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private void handle(final HttpExchange exchange, final PreSignedOcspResponder responder) throws IOException {
+        requestCount.increment();
+        final byte[] encodedOcspReq;
+        try {
+            final boolean get = "GET".equals(exchange.getRequestMethod());
+            if (!get && !"POST".equals(exchange.getRequestMethod())) {
+                sendAndClose(exchange, 405);
+                return;
+            }
+            if (get) {
+                try {
+                    encodedOcspReq = Base64.getDecoder().decode(getEncodedOcspReqFromPath(exchange));
+                } catch (final IllegalArgumentException e) {
+                    sendAndClose(exchange, 400);
+                    return;
+                }
+            } else {
+                try (final InputStream body = exchange.getRequestBody()) {
+                    encodedOcspReq = body.readAllBytes();
+                }
+            }
+        } catch (final IOException | RuntimeException e) {
+            exchange.close();
+            throw e;
+        }
+        final long delayMillis = getDelayMillis();
+        if (delayMillis <= 0) {
+            respond(exchange, responder, encodedOcspReq);
+            return;
+        }
+        try {
+            delayScheduler.schedule(() -> executor.execute(() -> respondAsync(exchange, responder, encodedOcspReq)), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (final RejectedExecutionException e) {
+            exchange.close();
+        }
+    }
+
+    private void respondAsync(final HttpExchange exchange, final PreSignedOcspResponder responder, final byte[] encodedOcspReq) {
+        try {
+            respond(exchange, responder, encodedOcspReq);
+        } catch (final IOException e) {
+            log.debug("OCSP Response konnte nicht gesendet werden: {}", e.getMessage());
+        }
+    }
+
+    private void respond(final HttpExchange exchange, final PreSignedOcspResponder responder, final byte[] encodedOcspReq) throws IOException {
+        try {
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                injectedErrorCount.increment();
+                exchange.sendResponseHeaders(errorHttpStatus, -1);
+                return;
+            }
+            final byte[] encodedOcspResp;
+            try {
+                encodedOcspResp = responder.respond(encodedOcspReq);
+            } catch (final GemPkiException e) {
+                log.warn("OCSP Request konnte nicht beantwortet werden: {}", e.getMessage());
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+            final String etag = "\"" + sha256Hex(encodedOcspResp) + "\"";
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.getResponseHeaders().set("Cache-Control", cacheMaxAgeSeconds > 0 ? "max-age=" + cacheMaxAgeSeconds : "no-cache");
+            if ("GET".equals(exchange.getRequestMethod()) && etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModifiedCount.increment();
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE_OCSP_RESPONSE);
+            exchange.sendResponseHeaders(200, encodedOcspResp.length);
+            try (final OutputStream out = exchange.getResponseBody()) {
+                out.write(encodedOcspResp);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void sendAndClose(final HttpExchange exchange, final int httpStatus) throws IOException {
+        try {
+            exchange.sendResponseHeaders(httpStatus, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static String sha256Hex(final byte[] data) {
+        try {
+            return Hex.toHexString(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The base64 encoded request is the part of the (URL decoded) path after the path of the responder
+     */
+    private static String getEncodedOcspReqFromPath(final HttpExchange exchange) {
+        final String encodedOcspReq = exchange.getRequestURI().getPath().substring(exchange.getHttpContext().getPath().length());
+        return encodedOcspReq.startsWith("/") ? encodedOcspReq.substring(1) : encodedOcspReq;
+    }
+
+    private long getDelayMillis() {
+        final int jitter = latencyJitterMillis;
+        return latencyMillis + (jitter > 0 ? ThreadLocalRandom.current().nextInt(jitter + 1) : 0);
+    }
+}
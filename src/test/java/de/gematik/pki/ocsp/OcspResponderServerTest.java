@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.gematik.pki.ocsp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import de.gematik.pki.exception.GemPkiException;
+import de.gematik.pki.utils.CertificateProvider;
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+@Slf4j
+class OcspResponderServerTest {
+
+    private static final String RSA_CA_PATH = "/ocsp/rsa-ca";
+    private static final String ECC_CA_PATH = "/ocsp/ecc-ca";
+    private static final int REQUESTS = 500;
+    private static X509Certificate VALID_X509_EE_CERT;
+    private static X509Certificate VALID_X509_ISSUER_CERT;
+    private static OcspResponderServer ocspResponderServer;
+
+    @BeforeAll
+    public static void start() throws IOException, GemPkiException {
+        VALID_X509_EE_CERT = CertificateProvider
+            .getX509Certificate("src/test/resources/certificates/GEM.SMCB-CA10/valid/DrMedGunther.pem");
+        VALID_X509_ISSUER_CERT = CertificateProvider
+            .getX509Certificate("src/test/resources/certificates/GEM.RCA1_TEST-ONLY.pem");
+        final PreSignedOcspResponder eccResponder = PreSignedOcspResponder.builder().signer(OcspConstants.getOcspSignerEcc()).build();
+        eccResponder.preSign(VALID_X509_ISSUER_CERT, List.of(VALID_X509_EE_CERT.getSerialNumber()));
+        ocspResponderServer = OcspResponderServer.builder()
+            .threads(20)
+            .build()
+            .addResponder(RSA_CA_PATH, PreSignedOcspResponder.builder().signer(OcspConstants.getOcspSignerRsa()).build())
+            .addResponder(ECC_CA_PATH, eccResponder)
+            .start();
+    }
+
+    @AfterAll
+    public static void stop() {
+        ocspResponderServer.close();
+    }
+
+    @Test
+    void verifyOcspStatusAtSeveralCas() throws GemPkiException {
+        for (final String path : List.of(RSA_CA_PATH, ECC_CA_PATH)) {
+            assertThat(buildOcspTransceiver(ocspResponderServer.getSspUrl(path)).verifyOcspStatusGood(null)).isTrue();
+        }
+    }
+
+    @Test
+    void unknownPathIsNotFound() {
+        assertThatThrownBy(() -> buildOcspTransceiver(ocspResponderServer.getSspUrl("/unknown")).verifyOcspStatusGood(null))
+            .isInstanceOf(GemPkiException.class)
+            .hasMessageContaining("HttpStatus: 404");
+    }
+
+    @Test
+    void injectedErrorsAndLatency() throws GemPkiException, IOException {
+        try (final OcspResponderServer server = OcspResponderServer.builder()
+            .errorRate(1.0)
+            .errorHttpStatus(503)
+            .build()
+            .addResponder(ECC_CA_PATH, PreSignedOcspResponder.builder().signer(OcspConstants.getOcspSignerEcc()).build())
+            .start()) {
+            final OcspTransceiver ocspTransceiver = OcspTransceiver.builder()
+                .x509EeCert(VALID_X509_EE_CERT)
+                .x509IssuerCert(VALID_X509_ISSUER_CERT)
+                .ssp(server.getSspUrl(ECC_CA_PATH))
+                .ocspTransport(OcspTransport.builder().negativeCacheSeconds(0).build())
+                .build();
+            assertThatThrownBy(() -> ocspTransceiver.verifyOcspStatusGood(null))
+                .isInstanceOf(GemPkiException.class)
+                .hasMessageContaining("HttpStatus: 503");
+            assertThat(server.getInjectedErrorCount()).isEqualTo(1);
+
+            server.setErrorRate(0);
+            server.setLatencyMillis(300);
+            final long startNanos = System.nanoTime();
+            assertThat(ocspTransceiver.verifyOcspStatusGood(null)).isTrue();
+            assertThat(System.nanoTime() - startNanos).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(300));
+            assertThat(server.getRequestCount()).isEqualTo(2);
+        }
+    }
+
+    /**
+     * Injected latency must not occupy a handler thread: 40 concurrent requests with 500 ms latency on 2 threads take about 500 ms, not 10 s.
+     */
+    @Test
+    void latencyDoesNotLimitConcurrentRequests() throws GemPkiException, IOException {
+        final int concurrentRequests = 40;
+        try (final OcspResponderServer server = OcspResponderServer.builder()
+            .threads(2)
+            .latencyMillis(500)
+            .build()
+            .addResponder(ECC_CA_PATH, PreSignedOcspResponder.builder().signer(OcspConstants.getOcspSignerEcc()).build())
+            .start()) {
+            final OcspTransport ocspTransport = OcspTransport.builder().maxConnectionsPerHost(concurrentRequests).build();
+            final OCSPReq ocspReq = OcspRequestGenerator.generateSingleOcspRequest(VALID_X509_EE_CERT, VALID_X509_ISSUER_CERT);
+            final long startNanos = System.nanoTime();
+            final List<CompletableFuture<OCSPResp>> responses = IntStream.range(0, concurrentRequests)
+                .mapToObj(i -> ocspTransport.sendAsync(server.getSspUrl(ECC_CA_PATH), ocspReq))
+                .collect(Collectors.toList());
+            for (final CompletableFuture<OCSPResp> response : responses) {
+                assertThat(response.join().getStatus()).isZero();
+            }
+            assertThat(System.nanoTime() - startNanos).isLessThan(TimeUnit.SECONDS.toNanos(5));
+            assertThat(server.getRequestCount()).isEqualTo(concurrentRequests);
+        }
+    }
+
+    /**
+     * Sends many concurrent requests to the server and logs the throughput.
+     */
+    @Test
+    void sendRequestsConcurrently() throws GemPkiException {
+        final OcspTransceiver ocspTransceiver = buildOcspTransceiver(ocspResponderServer.getSspUrl(ECC_CA_PATH));
+        final OCSPReq ocspReq = OcspRequestGenerator.generateSingleOcspRequest(VALID_X509_EE_CERT, VALID_X509_ISSUER_CERT);
+        final long startNanos = System.nanoTime();
+        final List<CompletableFuture<OCSPResp>> responses = IntStream.range(0, REQUESTS)
+            .mapToObj(i -> ocspTransceiver.sendOcspRequestAsync(ocspReq))
+            .collect(Collectors.toList());
+        for (final CompletableFuture<OCSPResp> response : responses) {
+            assertThat(OcspVerifier.isStatusGood(response.join())).isTrue();
+        }
+        final long durationNanos = System.nanoTime() - startNanos;
+        log.info("{} requests: {} responses/s", REQUESTS, REQUESTS * TimeUnit.SECONDS.toNanos(1) / Math.max(durationNanos, 1));
+    }
+
+    private static OcspTransceiver buildOcspTransceiver(final String ssp) {
+        return OcspTransceiver.builder()
+            .x509EeCert(VALID_X509_EE_CERT)
+            .x509IssuerCert(VALID_X509_ISSUER_CERT)
+            .ssp(ssp)
+            .build();
+    }
+}
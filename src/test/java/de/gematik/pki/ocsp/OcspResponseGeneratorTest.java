@@ -16,10 +16,12 @@
 
 package de.gematik.pki.ocsp;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import de.gematik.pki.exception.GemPkiException;
 import de.gematik.pki.utils.CertificateProvider;
+import de.gematik.pki.utils.P12Container;
 import de.gematik.pki.utils.P12Reader;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -27,14 +29,28 @@ import java.nio.file.Path;
 import java.security.cert.X509Certificate;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.asn1.x509.CRLReason;
 import org.bouncycastle.cert.ocsp.OCSPReq;
 import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
 import org.junit.jupiter.api.Test;
 
+@Slf4j
 class OcspResponseGeneratorTest {
 
+    private static final int RESPONSES_PER_THREAD = 200;
+
     final X509Certificate VALID_X509_EE_CERT = CertificateProvider.getX509Certificate(
         "src/test/resources/certificates/GEM.SMCB-CA10/valid/DrMedGunther.pem");
     final X509Certificate VALID_X509_ISSUER_CERT = CertificateProvider.getX509Certificate("src/test/resources/certificates/GEM.RCA1_TEST-ONLY.pem");
@@ -79,6 +95,53 @@ class OcspResponseGeneratorTest {
             .isInstanceOf(GemPkiException.class);
     }
 
+    @Test
+    void genWithStatusFromStatusStore() throws GemPkiException {
+        final Date revocationTime = new Date(1_600_000_000_000L);
+        final OCSPResp ocspResp = OcspResponseGenerator.builder()
+            .signer(OcspConstants.getOcspSignerEcc())
+            .statusStore(certificateId -> new RevokedStatus(revocationTime, CRLReason.keyCompromise))
+            .build()
+            .gen(ocspReq);
+
+        final List<OcspRespEntry> entries = OcspVerifier.getSingleResponses(ocspResp);
+        assertThat(entries).hasSize(1);
+        assertThat(entries.get(0).getCertStatus()).isEqualTo(OcspCertStatus.REVOKED);
+        assertThat(entries.get(0).getRevocationTime().toInstant()).isEqualTo(revocationTime.toInstant());
+    }
+
+    /**
+     * Signs responses with one reused generator on all cores and logs the throughput.
+     */
+    @Test
+    void genConcurrently() throws Exception {
+        final int threads = Runtime.getRuntime().availableProcessors();
+        for (final P12Container signer : List.of(OcspConstants.getOcspSignerRsa(), OcspConstants.getOcspSignerEcc())) {
+            final OcspResponseGenerator ocspResponseGenerator = OcspResponseGenerator.builder().signer(signer).build();
+            final ExecutorService executor = Executors.newFixedThreadPool(threads);
+            final LongAdder responses = new LongAdder();
+            final long startNanos = System.nanoTime();
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < RESPONSES_PER_THREAD; j++) {
+                        assertThat(OcspVerifier.isStatusGood(ocspResponseGenerator.gen(ocspReq))).isTrue();
+                        responses.increment();
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+            executor.shutdown();
+            final long durationNanos = System.nanoTime() - startNanos;
+            log.info("{} on {} thread(s): {} responses/s", signer.getPrivateKey().getAlgorithm(), threads,
+                responses.sum() * TimeUnit.SECONDS.toNanos(1) / Math.max(durationNanos, 1));
+            assertThat(responses.sum()).isEqualTo((long) threads * RESPONSES_PER_THREAD);
+        }
+    }
+
     private static void writeOcspRespToFile(final OCSPResp ocspResp) throws IOException {
         Files.write(createOcspResponseLogFile(), ocspResp.getEncoded());
     }
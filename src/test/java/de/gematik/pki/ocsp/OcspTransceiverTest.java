@@ -21,11 +21,28 @@ import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import de.gematik.pki.common.OcspResponderMock;
 import de.gematik.pki.error.ErrorCode;
 import de.gematik.pki.exception.GemPkiException;
+import de.gematik.pki.tsl.TslInformationProvider;
+import de.gematik.pki.tsl.TslReader;
+import de.gematik.pki.tsl.TspService;
 import de.gematik.pki.utils.CertificateProvider;
+import de.gematik.pki.utils.ResourceReader;
+import java.io.IOException;
 import java.security.cert.X509Certificate;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import lombok.SneakyThrows;
+import org.bouncycastle.asn1.x509.CRLReason;
 import org.bouncycastle.cert.ocsp.OCSPReq;
 import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
@@ -57,6 +74,20 @@ class OcspTransceiverTest {
                 .verifyOcspStatusGood(null)).isTrue();
     }
 
+    @Test
+    void verifyOcspStatusOfResponseWithoutRequestedCertificateThrows() throws GemPkiException, IOException {
+        ocspResponderMock.configureForOcspRequest(OcspRequestGenerator.generateSingleOcspRequest(CertificateProvider
+            .getX509Certificate("src/test/resources/certificates/GEM.SMCB-CA10/valid/DrMedGunther_invalid-profession-item.pem"), VALID_X509_ISSUER_CERT));
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
+        final OcspTransceiver ocspTransceiver = OcspTransceiver.builder().x509EeCert(VALID_X509_EE_CERT).x509IssuerCert(VALID_X509_ISSUER_CERT)
+            .ssp(ocspResponderMock.getSspUrl())
+            .build();
+        assertThatThrownBy(() -> ocspTransceiver.verifyOcspStatusGood(ocspRespCache))
+            .isInstanceOf(GemPkiException.class)
+            .hasMessageContaining("angefragte Zertifikat");
+        assertThat(ocspRespCache.getSize()).isZero();
+    }
+
     @Test
     void verifySspUrlInvalidThrowsGemPkiExceptionOnly() {
         assertThatThrownBy(
@@ -114,6 +145,178 @@ class OcspTransceiverTest {
     }
 
 
+    @SneakyThrows
+    @Test
+    void verifyOcspStatusRefreshesAhead() {
+        configureOcspResponderMockForOcspRequest();
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
+        ocspRespCache.setRefreshAheadSeconds(30);
+        ocspRespCache.setRefreshAheadMinHits(1);
+        final OcspTransceiver ocspTransceiver = OcspTransceiver.builder().x509EeCert(VALID_X509_EE_CERT)
+            .x509IssuerCert(VALID_X509_ISSUER_CERT)
+            .ssp(ocspResponderMock.getSspUrl())
+            .build();
+
+        final int requestCount = ocspResponderMock.getReceivedRequestCount();
+        assertThat(ocspTransceiver.verifyOcspStatusGood(ocspRespCache)).isTrue();
+        assertThat(ocspResponderMock.getReceivedRequestCount()).isEqualTo(requestCount + 1);
+        assertThat(ocspTransceiver.verifyOcspStatusGood(ocspRespCache)).isTrue();
+        for (int i = 0; i < 100 && ocspResponderMock.getReceivedRequestCount() < requestCount + 2; i++) {
+            Thread.sleep(50);
+        }
+        assertThat(ocspResponderMock.getReceivedRequestCount()).isEqualTo(requestCount + 2);
+        assertThat(ocspRespCache.getSize()).isEqualTo(1);
+    }
+
+    /**
+     * Concurrent verifications of one certificate while the responder is slow must result in one OCSP request only.
+     */
+    @SneakyThrows
+    @Test
+    void verifyOcspStatusConcurrentlySendsOneRequest() {
+        final OCSPReq ocspReq = OcspRequestGenerator.generateSingleOcspRequest(VALID_X509_EE_CERT, VALID_X509_ISSUER_CERT);
+        ocspResponderMock.configureForOcspRequest(ocspReq, 1000);
+        final OcspTransceiver ocspTransceiver = OcspTransceiver.builder().x509EeCert(VALID_X509_EE_CERT)
+            .x509IssuerCert(VALID_X509_ISSUER_CERT)
+            .ssp(ocspResponderMock.getSspUrl())
+            .build();
+
+        final int threads = 10;
+        final int requestCount = ocspResponderMock.getReceivedRequestCount();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return ocspTransceiver.verifyOcspStatusGood(null);
+            }));
+        }
+        start.countDown();
+        for (final Future<Boolean> result : results) {
+            assertThat(result.get(1, TimeUnit.MINUTES)).isTrue();
+        }
+        executor.shutdown();
+        assertThat(ocspResponderMock.getReceivedRequestCount()).isEqualTo(requestCount + 1);
+    }
+
+    @Test
+    void verifyOcspStatusWithUntrustedResponderIsNotCached() throws GemPkiException {
+        configureOcspResponderMockForOcspRequest();
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
+        final OcspTransceiver ocspTransceiver = OcspTransceiver.builder()
+            .x509EeCert(VALID_X509_EE_CERT)
+            .x509IssuerCert(VALID_X509_ISSUER_CERT)
+            .ssp(ocspResponderMock.getSspUrl())
+            .ocspRespSignatureVerifier(new OcspRespSignatureVerifier(List.of(), "IDP"))
+            .build();
+        assertThatThrownBy(() -> ocspTransceiver.verifyOcspStatusGood(ocspRespCache))
+            .isInstanceOf(GemPkiException.class)
+            .hasMessageContaining(ErrorCode.TE_1030.name());
+        assertThat(ocspRespCache.getSize()).isZero();
+    }
+
+    @Test
+    void acceptOcspResponseFreshAndSigned() throws GemPkiException, IOException {
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
+        final OCSPResp ocspResp = genOcspResp(VALID_X509_EE_CERT);
+        final Optional<OcspRespEntry> entry = buildOcspTransceiverWithSignatureVerifier().acceptOcspResponse(ocspResp, ocspRespCache);
+        assertThat(entry).isPresent();
+        assertThat(entry.get().isStatusGood()).isTrue();
+        assertThat(ocspRespCache.getResponse(entry.get().getCertId())).isPresent();
+    }
+
+    @Test
+    void acceptOcspResponseCachesRequestedCertificateOnly() throws GemPkiException, IOException {
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
+        final OCSPResp ocspResp = OcspResponseGenerator.builder()
+            .signer(OcspConstants.getOcspSignerRsa())
+            .build()
+            .gen(OcspRequestGenerator.generateOcspRequest(List.of(VALID_X509_EE_CERT, CertificateProvider
+                    .getX509Certificate("src/test/resources/certificates/GEM.SMCB-CA10/valid/DrMedGunther_invalid-profession-item.pem")),
+                VALID_X509_ISSUER_CERT), ZonedDateTime.parse("2022-01-01T12:00:00Z"));
+        assertThat(buildOcspTransceiverWithSignatureVerifier().acceptOcspResponse(ocspResp, ocspRespCache)).isPresent();
+        assertThat(ocspRespCache.getSize()).isEqualTo(1);
+    }
+
+    @SneakyThrows
+    @Test
+    void acceptOcspResponseDoesNotReplaceNewerCachedResponse() {
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
+        final OCSPResp olderGood = genOcspResp(VALID_X509_EE_CERT);
+        Thread.sleep(1100);
+        final OCSPResp newerRevoked = OcspResponseGenerator.builder()
+            .signer(OcspConstants.getOcspSignerRsa())
+            .statusStore(certificateId -> new RevokedStatus(new Date(), CRLReason.keyCompromise))
+            .build()
+            .gen(OcspRequestGenerator.generateSingleOcspRequest(VALID_X509_EE_CERT, VALID_X509_ISSUER_CERT), ZonedDateTime.parse("2022-01-01T12:00:00Z"));
+        ocspRespCache.saveResponse(newerRevoked);
+
+        final Optional<OcspRespEntry> entry = buildOcspTransceiverWithSignatureVerifier().acceptOcspResponse(olderGood, ocspRespCache);
+        assertThat(entry).isPresent();
+        assertThat(entry.get().isStatusGood()).isFalse();
+        assertThat(ocspRespCache.getResponse(entry.get().getCertId()).orElseThrow().getCertStatus()).isEqualTo(OcspCertStatus.REVOKED);
+    }
+
+    @Test
+    void acceptOcspResponseOfOtherCertificateIsNotUsed() throws GemPkiException, IOException {
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
+        final OCSPResp ocspResp = genOcspResp(CertificateProvider
+            .getX509Certificate("src/test/resources/certificates/GEM.SMCB-CA10/valid/DrMedGunther_invalid-profession-item.pem"));
+        assertThat(buildOcspTransceiverWithSignatureVerifier().acceptOcspResponse(ocspResp, ocspRespCache)).isEmpty();
+        assertThat(ocspRespCache.getSize()).isZero();
+    }
+
+    @Test
+    void acceptOcspResponseNotFreshIsNotUsed() throws GemPkiException, IOException {
+        final OcspRespCache ocspRespCache = new OcspRespCache(0);
+        assertThat(buildOcspTransceiverWithSignatureVerifier().acceptOcspResponse(genOcspResp(VALID_X509_EE_CERT), ocspRespCache)).isEmpty();
+    }
+
+    @Test
+    void acceptOcspResponseWithInvalidSignerThrows() throws GemPkiException {
+        final OCSPResp ocspResp = OcspResponseGenerator.builder()
+            .signer(OcspConstants.getOcspSignerRsa())
+            .build()
+            .gen(OcspRequestGenerator.generateSingleOcspRequest(VALID_X509_EE_CERT, VALID_X509_ISSUER_CERT));
+        final OcspRespCache ocspRespCache = new OcspRespCache(30);
+        final OcspTransceiver ocspTransceiver = OcspTransceiver.builder()
+            .x509EeCert(VALID_X509_EE_CERT)
+            .x509IssuerCert(VALID_X509_ISSUER_CERT)
+            .ocspRespSignatureVerifier(new OcspRespSignatureVerifier(List.of(), "IDP"))
+            .build();
+        assertThatThrownBy(() -> ocspTransceiver.acceptOcspResponse(ocspResp, ocspRespCache))
+            .isInstanceOf(GemPkiException.class)
+            .hasMessageContaining(ErrorCode.TE_1030.name());
+        assertThat(ocspRespCache.getSize()).isZero();
+    }
+
+    @Test
+    void acceptOcspResponseNeedsSignatureVerifier() {
+        final OcspTransceiver ocspTransceiver = OcspTransceiver.builder().x509EeCert(VALID_X509_EE_CERT).x509IssuerCert(VALID_X509_ISSUER_CERT).build();
+        assertThatThrownBy(() -> ocspTransceiver.acceptOcspResponse(genOcspResp(VALID_X509_EE_CERT), null))
+            .isInstanceOf(GemPkiException.class);
+    }
+
+    private static OCSPResp genOcspResp(final X509Certificate x509EeCert) throws GemPkiException {
+        // producedAt within the validity of the OCSP signer certificate, thisUpdate is now
+        return OcspResponseGenerator.builder()
+            .signer(OcspConstants.getOcspSignerRsa())
+            .build()
+            .gen(OcspRequestGenerator.generateSingleOcspRequest(x509EeCert, VALID_X509_ISSUER_CERT), ZonedDateTime.parse("2022-01-01T12:00:00Z"));
+    }
+
+    private static OcspTransceiver buildOcspTransceiverWithSignatureVerifier() throws GemPkiException, IOException {
+        final List<TspService> tspServiceList = new TslInformationProvider(
+            TslReader.getTsl(ResourceReader.getFilePathFromResources("tsls/valid/TSL_default.xml")).orElseThrow())
+            .getTspServices();
+        return OcspTransceiver.builder()
+            .x509EeCert(VALID_X509_EE_CERT)
+            .x509IssuerCert(VALID_X509_ISSUER_CERT)
+            .ocspRespSignatureVerifier(new OcspRespSignatureVerifier(tspServiceList, "IDP"))
+            .build();
+    }
+
     private OCSPReq configureOcspResponderMockForOcspRequest()
         throws GemPkiException {
         final OCSPReq ocspReq = OcspRequestGenerator.generateSingleOcspRequest(VALID_X509_EE_CERT,
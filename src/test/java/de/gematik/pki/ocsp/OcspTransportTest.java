@@ -0,0 +1,359 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.gematik.pki.ocsp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import de.gematik.pki.common.OcspResponderMock;
+import de.gematik.pki.error.ErrorCode;
+import de.gematik.pki.exception.GemPkiException;
+import de.gematik.pki.utils.CertificateProvider;
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import lombok.SneakyThrows;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class OcspTransportTest {
+
+    private final static String LOCAL_SSP_DIR = "/services/ocsp";
+    private final static String OCSP_HOST = "http://localhost:";
+    private final static String SERVER_PATH = "/ocsp";
+    private final static String UNREACHABLE_SSP = "http://localhost:1/services/ocsp";
+    private static OcspResponderMock ocspResponderMock;
+    private static X509Certificate eeCert;
+    private static X509Certificate issuerCert;
+    private static OCSPReq ocspReq;
+
+    @SneakyThrows
+    @BeforeAll
+    public static void start() {
+        ocspResponderMock = new OcspResponderMock(LOCAL_SSP_DIR, OCSP_HOST);
+        eeCert = CertificateProvider
+            .getX509Certificate("src/test/resources/certificates/GEM.SMCB-CA10/valid/DrMedGunther.pem");
+        issuerCert = CertificateProvider
+            .getX509Certificate("src/test/resources/certificates/GEM.RCA1_TEST-ONLY.pem");
+        ocspReq = OcspRequestGenerator.generateSingleOcspRequest(eeCert, issuerCert);
+    }
+
+    @Test
+    void defaultSettings() {
+        final OcspTransport ocspTransport = OcspTransport.getDefault();
+        assertThat(ocspTransport.getConnectTimeoutSeconds()).isEqualTo(OcspTransport.DEFAULT_CONNECT_TIMEOUT_SECONDS);
+        assertThat(ocspTransport.getRequestTimeoutSeconds()).isEqualTo(OcspTransport.DEFAULT_REQUEST_TIMEOUT_SECONDS);
+        assertThat(ocspTransport.getMaxConnectionsPerHost()).isEqualTo(OcspTransport.DEFAULT_MAX_CONNECTIONS_PER_HOST);
+        assertThat(ocspTransport.getFailureThreshold()).isEqualTo(OcspTransport.DEFAULT_FAILURE_THRESHOLD);
+        assertThat(ocspTransport.getOpenSeconds()).isEqualTo(OcspTransport.DEFAULT_OPEN_SECONDS);
+        assertThat(ocspTransport.getNegativeCacheSeconds()).isEqualTo(OcspTransport.DEFAULT_NEGATIVE_CACHE_SECONDS);
+        assertThat(ocspTransport.getHedgeDelayMillis()).isZero();
+    }
+
+    @Test
+    void sendAsyncReceivesResponse() throws GemPkiException {
+        ocspResponderMock.configureForOcspRequest(ocspReq);
+        final OCSPResp ocspResp = OcspTransport.getDefault().sendAsync(ocspResponderMock.getSspUrl(), ocspReq).join();
+        assertThat(ocspResp.getStatus()).isZero();
+    }
+
+    @Test
+    void sendAsyncRequestTimeoutExceeded() throws GemPkiException {
+        ocspResponderMock.configureForOcspRequest(ocspReq, 2000);
+        final OcspTransport ocspTransport = OcspTransport.builder().requestTimeoutSeconds(1).build();
+        assertThatThrownBy(() -> ocspTransport.sendAsync(ocspResponderMock.getSspUrl(), ocspReq).join())
+            .isInstanceOf(CompletionException.class)
+            .hasCauseInstanceOf(GemPkiException.class)
+            .hasMessageContaining("OCSP senden/empfangen fehlgeschlagen");
+    }
+
+    @Test
+    void sendAsyncInvalidUrl() {
+        assertThatThrownBy(() -> OcspTransport.getDefault().sendAsync("no url", ocspReq).join())
+            .isInstanceOf(CompletionException.class)
+            .hasCauseInstanceOf(GemPkiException.class);
+    }
+
+    @Test
+    void maxConnectionsPerHostQueuesRequests() throws GemPkiException {
+        final int delayMillis = 300;
+        final int requests = 3;
+        ocspResponderMock.configureForOcspRequest(ocspReq, delayMillis);
+        final OcspTransport ocspTransport = OcspTransport.builder().maxConnectionsPerHost(1).build();
+        final long start = System.currentTimeMillis();
+        final List<CompletableFuture<OCSPResp>> futures = IntStream.range(0, requests)
+            .mapToObj(i -> ocspTransport.sendAsync(ocspResponderMock.getSspUrl(), ocspReq))
+            .collect(Collectors.toList());
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        assertThat(System.currentTimeMillis() - start).isGreaterThanOrEqualTo((long) requests * delayMillis);
+    }
+
+    @Test
+    void circuitBreakerOpensAfterConsecutiveFailures() {
+        final OcspTransport ocspTransport = OcspTransport.builder().failureThreshold(2).negativeCacheSeconds(0).build();
+        for (int i = 0; i < 2; i++) {
+            assertThat(ocspTransport.isAvailable(UNREACHABLE_SSP)).isTrue();
+            assertThatThrownBy(() -> ocspTransport.sendAsync(UNREACHABLE_SSP, ocspReq).join())
+                .hasCauseInstanceOf(GemPkiException.class);
+        }
+        assertThat(ocspTransport.isAvailable(UNREACHABLE_SSP)).isFalse();
+        assertThatThrownBy(() -> ocspTransport.sendAsync(UNREACHABLE_SSP, ocspReq).join())
+            .hasCauseInstanceOf(GemPkiException.class)
+            .hasMessageContaining("SSP nicht verfügbar");
+    }
+
+    @Test
+    void circuitBreakerClosesAfterSuccessfulTrialRequest() throws IOException, InterruptedException {
+        try (final OcspResponderServer server = buildOcspResponderServer(0)) {
+            final String ssp = server.getSspUrl(SERVER_PATH);
+            final OcspTransport ocspTransport = OcspTransport.builder().failureThreshold(1).openSeconds(1).negativeCacheSeconds(0).build();
+            server.setErrorRate(1.0);
+            assertThatThrownBy(() -> ocspTransport.sendAsync(ssp, ocspReq).join())
+                .hasCauseInstanceOf(GemPkiException.class)
+                .hasMessageContaining("HttpStatus: 500");
+            assertThat(ocspTransport.isAvailable(ssp)).isFalse();
+
+            Thread.sleep(1100);
+            server.setErrorRate(0);
+            assertThat(ocspTransport.isAvailable(ssp)).isTrue();
+            assertThat(ocspTransport.sendAsync(ssp, ocspReq).join().getStatus()).isZero();
+            assertThat(ocspTransport.isAvailable(ssp)).isTrue();
+            assertThat(server.getRequestCount()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void failedRequestIsCachedNegatively() {
+        final OcspTransport ocspTransport = OcspTransport.builder().negativeCacheSeconds(60).build();
+        final Throwable failure = ocspTransport.sendAsync(UNREACHABLE_SSP, ocspReq).handle((ocspResp, e) -> e).join();
+        assertThat(failure).isInstanceOf(GemPkiException.class);
+        assertThatThrownBy(() -> ocspTransport.sendAsync(UNREACHABLE_SSP, ocspReq).join())
+            .hasCause(failure);
+    }
+
+    @Test
+    void failoverToAlternativeSsp() throws GemPkiException {
+        ocspResponderMock.configureForOcspRequest(ocspReq);
+        final OcspTransport ocspTransport = OcspTransport.builder().negativeCacheSeconds(0).build();
+        final OCSPResp ocspResp = ocspTransport.sendAsync(List.of(UNREACHABLE_SSP, ocspResponderMock.getSspUrl()), ocspReq).join();
+        assertThat(ocspResp.getStatus()).isZero();
+    }
+
+    @Test
+    void hedgedRequestToAlternativeSsp() throws GemPkiException, IOException {
+        try (final OcspResponderServer slowServer = buildOcspResponderServer(3000);
+            final OcspResponderServer fastServer = buildOcspResponderServer(0)) {
+            final OcspTransport ocspTransport = OcspTransport.builder().hedgeDelayMillis(100).build();
+            final long startNanos = System.nanoTime();
+            final OCSPResp ocspResp = ocspTransport.sendAsync(List.of(slowServer.getSspUrl(SERVER_PATH), fastServer.getSspUrl(SERVER_PATH)), ocspReq)
+                .join();
+            assertThat(ocspResp.getStatus()).isZero();
+            assertThat(System.nanoTime() - startNanos).isLessThan(TimeUnit.MILLISECONDS.toNanos(2000));
+            assertThat(fastServer.getRequestCount()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void getRequestIsServedFromHttpCache() throws IOException {
+        try (final OcspResponderServer server = buildOcspResponderServer(0)) {
+            server.setCacheMaxAgeSeconds(60);
+            final OcspTransport ocspTransport = OcspTransport.builder().maxGetRequestBytes(OcspTransport.RFC5019_MAX_GET_REQUEST_BYTES).build();
+            for (int i = 0; i < 3; i++) {
+                assertThat(ocspTransport.sendAsync(server.getSspUrl(SERVER_PATH), ocspReq).join().getStatus()).isZero();
+            }
+            assertThat(server.getRequestCount()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void getRequestIsRevalidatedWithEtag() throws IOException {
+        try (final OcspResponderServer server = buildOcspResponderServer(0)) {
+            final OcspTransport ocspTransport = OcspTransport.builder().maxGetRequestBytes(OcspTransport.RFC5019_MAX_GET_REQUEST_BYTES).build();
+            final OCSPResp first = ocspTransport.sendAsync(server.getSspUrl(SERVER_PATH), ocspReq).join();
+            final OCSPResp second = ocspTransport.sendAsync(server.getSspUrl(SERVER_PATH), ocspReq).join();
+            assertThat(second.getEncoded()).isEqualTo(first.getEncoded());
+            assertThat(server.getRequestCount()).isEqualTo(2);
+            assertThat(server.getNotModifiedCount()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void requestLargerThanMaxGetRequestBytesIsPosted() throws IOException {
+        try (final OcspResponderServer server = buildOcspResponderServer(0)) {
+            server.setCacheMaxAgeSeconds(60);
+            final OcspTransport ocspTransport = OcspTransport.builder().maxGetRequestBytes(ocspReq.getEncoded().length - 1).build();
+            for (int i = 0; i < 2; i++) {
+                assertThat(ocspTransport.sendAsync(server.getSspUrl(SERVER_PATH), ocspReq).join().getStatus()).isZero();
+            }
+            assertThat(server.getRequestCount()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void interactiveRequestsOvertakeBulkRequests() throws IOException {
+        try (final OcspResponderServer server = buildOcspResponderServer(200)) {
+            final String ssp = server.getSspUrl(SERVER_PATH);
+            final OcspTransport ocspTransport = OcspTransport.builder().maxConnectionsPerHost(1).build();
+            final List<String> completionOrder = new CopyOnWriteArrayList<>();
+            final List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                final String name = "bulk" + i;
+                futures.add(ocspTransport.sendAsync(List.of(ssp), ocspReq, OcspPriority.BULK, null).thenRun(() -> completionOrder.add(name)));
+            }
+            futures.add(ocspTransport.sendAsync(List.of(ssp), ocspReq, OcspPriority.INTERACTIVE, null).thenRun(() -> completionOrder.add("interactive")));
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            assertThat(completionOrder).containsExactly("bulk0", "interactive", "bulk1", "bulk2");
+        }
+    }
+
+    @Test
+    void bulkRequestsLeaveConnectionsForInteractiveRequests() throws IOException {
+        try (final OcspResponderServer server = buildOcspResponderServer(300)) {
+            final String ssp = server.getSspUrl(SERVER_PATH);
+            final OcspTransport ocspTransport = OcspTransport.builder().maxConnectionsPerHost(2).maxBulkConnectionsPerHost(1).build();
+            final List<CompletableFuture<OCSPResp>> bulk = IntStream.range(0, 3)
+                .mapToObj(i -> ocspTransport.sendAsync(List.of(ssp), ocspReq, OcspPriority.BULK, null))
+                .collect(Collectors.toList());
+            final long startNanos = System.nanoTime();
+            ocspTransport.sendAsync(List.of(ssp), ocspReq, OcspPriority.INTERACTIVE, null).join();
+            assertThat(System.nanoTime() - startNanos).isLessThan(TimeUnit.MILLISECONDS.toNanos(550));
+            assertThat(bulk.stream().filter(CompletableFuture::isDone).count()).isLessThanOrEqualTo(1);
+            CompletableFuture.allOf(bulk.toArray(new CompletableFuture[0])).join();
+        }
+    }
+
+    @Test
+    void requestRejectedEarlyWhenDeadlineCannotBeMet() throws IOException {
+        try (final OcspResponderServer server = buildOcspResponderServer(300)) {
+            final String ssp = server.getSspUrl(SERVER_PATH);
+            final OcspTransport ocspTransport = OcspTransport.builder().maxConnectionsPerHost(1).build();
+            ocspTransport.sendAsync(ssp, ocspReq).join();
+            final CompletableFuture<OCSPResp> running = ocspTransport.sendAsync(ssp, ocspReq);
+            assertThatThrownBy(() -> ocspTransport.sendAsync(List.of(ssp), ocspReq, OcspPriority.INTERACTIVE, Duration.ofMillis(100)).join())
+                .hasCauseInstanceOf(GemPkiException.class)
+                .hasMessageContaining("Deadline kann nicht eingehalten werden");
+            running.join();
+            assertThat(server.getRequestCount()).isEqualTo(2);
+            assertThat(ocspTransport.isAvailable(ssp)).isTrue();
+        }
+    }
+
+    @Test
+    void queuedRequestRejectedAtDeadline() throws IOException {
+        try (final OcspResponderServer server = buildOcspResponderServer(1000)) {
+            final String ssp = server.getSspUrl(SERVER_PATH);
+            final OcspTransport ocspTransport = OcspTransport.builder().maxConnectionsPerHost(1).build();
+            final CompletableFuture<OCSPResp> running = ocspTransport.sendAsync(ssp, ocspReq);
+            final long startNanos = System.nanoTime();
+            final Throwable rejection = ocspTransport.sendAsync(List.of(ssp), ocspReq, OcspPriority.INTERACTIVE, Duration.ofMillis(100))
+                .handle((ocspResp, e) -> e)
+                .join();
+            assertThat(System.nanoTime() - startNanos).isLessThan(TimeUnit.MILLISECONDS.toNanos(800));
+            assertThat(rejection).isInstanceOf(GemPkiException.class);
+            assertThat(((GemPkiException) rejection).getError()).isEqualTo(ErrorCode.OCSP_REJECTED);
+            running.join();
+            assertThat(server.getRequestCount()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void deadlineTimerCancelledWhenRequestStarts() throws IOException {
+        try (final OcspResponderServer server = buildOcspResponderServer(100)) {
+            final String ssp = server.getSspUrl(SERVER_PATH);
+            final OcspTransport ocspTransport = OcspTransport.builder().maxConnectionsPerHost(2).build();
+            final List<CompletableFuture<OCSPResp>> futures = IntStream.range(0, 10)
+                .mapToObj(i -> ocspTransport.sendAsync(List.of(ssp), ocspReq, OcspPriority.INTERACTIVE, Duration.ofMinutes(10)))
+                .collect(Collectors.toList());
+            assertThat(OcspTransport.getDeadlineTimerCount()).isPositive();
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            assertThat(OcspTransport.getDeadlineTimerCount()).isZero();
+        }
+    }
+
+    @Test
+    void maxRequestsPerSecondPerHostLimitsRate() throws IOException {
+        try (final OcspResponderServer server = buildOcspResponderServer(0)) {
+            final String ssp = server.getSspUrl(SERVER_PATH);
+            final OcspTransport ocspTransport = OcspTransport.builder().maxRequestsPerSecondPerHost(5).negativeCacheSeconds(0).build();
+            final long startNanos = System.nanoTime();
+            final List<CompletableFuture<OCSPResp>> futures = IntStream.range(0, 10)
+                .mapToObj(i -> ocspTransport.sendAsync(ssp, ocspReq))
+                .collect(Collectors.toList());
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            assertThat(System.nanoTime() - startNanos).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(900));
+            assertThat(server.getRequestCount()).isEqualTo(10);
+        }
+    }
+
+    @Test
+    void coalescedRequestsShareOneRequestPerTransport() throws IOException {
+        try (final OcspResponderServer server = buildOcspResponderServer(300)) {
+            final List<String> ssps = List.of(server.getSspUrl(SERVER_PATH));
+            final CertificateID certificateId = ocspReq.getRequestList()[0].getCertID();
+            final OcspTransport ocspTransport = OcspTransport.builder().build();
+            final OcspTransport otherOcspTransport = OcspTransport.builder().build();
+            final List<CompletableFuture<OCSPResp>> futures = List.of(
+                ocspTransport.sendCoalescedAsync(ssps, certificateId, OcspPriority.INTERACTIVE, null),
+                ocspTransport.sendCoalescedAsync(ssps, certificateId, OcspPriority.INTERACTIVE, null),
+                otherOcspTransport.sendCoalescedAsync(ssps, certificateId, OcspPriority.INTERACTIVE, null));
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            assertThat(server.getRequestCount()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void coalescedRequestKeepsDeadlineOfEachCaller() throws IOException {
+        try (final OcspResponderServer server = buildOcspResponderServer(500)) {
+            final List<String> ssps = List.of(server.getSspUrl(SERVER_PATH));
+            final CertificateID certificateId = ocspReq.getRequestList()[0].getCertID();
+            final OcspTransport ocspTransport = OcspTransport.builder().negativeCacheSeconds(0).build();
+            final CompletableFuture<OCSPResp> shortDeadline = ocspTransport.sendCoalescedAsync(ssps, certificateId, OcspPriority.INTERACTIVE,
+                Duration.ofMillis(200));
+            final CompletableFuture<OCSPResp> noDeadline = ocspTransport.sendCoalescedAsync(ssps, certificateId, OcspPriority.INTERACTIVE, null);
+            final CompletableFuture<OCSPResp> joinedShortDeadline = ocspTransport.sendCoalescedAsync(ssps, certificateId, OcspPriority.INTERACTIVE,
+                Duration.ofMillis(100));
+            assertThat(noDeadline.join().getStatus()).isZero();
+            assertThat(shortDeadline.handle((ocspResp, e) -> e.getCause()).join()).isInstanceOf(GemPkiException.class);
+            final Throwable rejection = joinedShortDeadline.handle((ocspResp, e) -> e.getCause()).join();
+            assertThat(rejection).isInstanceOf(GemPkiException.class);
+            assertThat(((GemPkiException) rejection).getError()).isEqualTo(ErrorCode.OCSP_REJECTED);
+            assertThat(server.getRequestCount()).isEqualTo(2);
+        }
+    }
+
+    @SneakyThrows
+    private static OcspResponderServer buildOcspResponderServer(final int latencyMillis) {
+        final PreSignedOcspResponder responder = PreSignedOcspResponder.builder().signer(OcspConstants.getOcspSignerEcc()).build();
+        responder.preSign(issuerCert, List.of(eeCert.getSerialNumber()));
+        return OcspResponderServer.builder()
+            .threads(2)
+            .latencyMillis(latencyMillis)
+            .build()
+            .addResponder(SERVER_PATH, responder)
+            .start();
+    }
+}
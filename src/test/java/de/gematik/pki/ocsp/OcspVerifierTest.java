@@ -16,13 +16,16 @@
 
 package de.gematik.pki.ocsp;
 
-import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.Assertions.assertThat;
 import de.gematik.pki.exception.GemPkiException;
 import de.gematik.pki.utils.CertificateProvider;
 import java.io.IOException;
 import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.Map;
 import org.bouncycastle.cert.ocsp.OCSPReq;
 import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.Req;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
@@ -54,4 +57,38 @@ class OcspVerifierTest {
         assertThat(OcspVerifier.isStatusGood(ocspResp)).isTrue();
     }
 
+    @Test
+    void getSingleResponses() throws GemPkiException {
+        final OCSPReq ocspReq = OcspRequestGenerator.generateSingleOcspRequest(VALID_X509_EE_CERT,
+            VALID_X509_ISSUER_CERT);
+        final OCSPResp ocspResp = OcspResponseGenerator.builder().
+            signer(OcspConstants.getOcspSignerRsa())
+            .build()
+            .gen(ocspReq);
+
+        final List<OcspRespEntry> entries = OcspVerifier.getSingleResponses(ocspResp);
+        assertThat(entries).hasSize(1);
+        assertThat(entries.get(0).getCertId()).isEqualTo(OcspCertId.of(ocspReq.getRequestList()[0].getCertID()));
+        assertThat(entries.get(0).getCertStatus()).isEqualTo(OcspCertStatus.GOOD);
+        assertThat(entries.get(0).getRevocationTime()).isNull();
+    }
+
+    @Test
+    void getSingleResponsesByCertId() throws GemPkiException, IOException {
+        final X509Certificate otherX509EeCert = CertificateProvider
+            .getX509Certificate("src/test/resources/certificates/GEM.SMCB-CA10/valid/DrMedGunther_invalid-profession-item.pem");
+        final OCSPReq ocspReq = OcspRequestGenerator.generateOcspRequest(List.of(VALID_X509_EE_CERT, otherX509EeCert),
+            VALID_X509_ISSUER_CERT);
+        final OCSPResp ocspResp = OcspResponseGenerator.builder().
+            signer(OcspConstants.getOcspSignerRsa())
+            .build()
+            .gen(ocspReq);
+
+        final Map<OcspCertId, OcspRespEntry> entries = OcspVerifier.getSingleResponsesByCertId(ocspResp);
+        assertThat(entries).hasSize(2);
+        for (final Req req : ocspReq.getRequestList()) {
+            assertThat(entries.get(OcspCertId.of(req.getCertID())).getCertStatus()).isEqualTo(OcspCertStatus.GOOD);
+        }
+    }
+
 }
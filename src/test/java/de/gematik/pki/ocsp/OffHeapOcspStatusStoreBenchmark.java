@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.gematik.pki.ocsp;
+
+import static de.gematik.pki.utils.BenchmarkRunner.allocatedBytesPerOp;
+import static de.gematik.pki.utils.BenchmarkRunner.score;
+import static org.assertj.core.api.Assertions.assertThat;
+import de.gematik.pki.exception.GemPkiException;
+import de.gematik.pki.utils.BenchmarkRunner;
+import de.gematik.pki.utils.CertificateProvider;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.results.RunResult;
+
+/**
+ * JMH benchmark of loading and looking up a population of one million certificates, run with mvn test -Pbenchmark
+ */
+@Slf4j
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+@State(Scope.Benchmark)
+public class OffHeapOcspStatusStoreBenchmark {
+
+    private static final int POPULATION = 1_000_000;
+    private static final int LOOKUP_IDS = 4096;
+    /**
+     * upper bound of heap bytes per lookup, a lookup builds only the key and the returned status on the heap
+     */
+    private static final double MAX_LOOKUP_BYTES = 1024;
+    private static final Path POPULATION_FILE = Path.of("target/ocspStatusStoreBenchmarkPopulation.txt");
+
+    private X509Certificate x509IssuerCert;
+    private OffHeapOcspStatusStore store;
+    private CertificateID[] certificateIds;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException, GemPkiException {
+        x509IssuerCert = CertificateProvider.getX509Certificate("src/test/resources/certificates/GEM.RCA1_TEST-ONLY.pem");
+        try (final BufferedWriter writer = Files.newBufferedWriter(POPULATION_FILE, StandardCharsets.US_ASCII)) {
+            for (long serial = 1; serial <= POPULATION; serial++) {
+                writer.write(Long.toHexString(serial * 7919));
+                writer.write(serial % 100 == 0 ? ";revoked;2021-05-01T10:00:00Z;1\n" : ";good\n");
+            }
+        }
+        store = loadPopulation();
+        certificateIds = new CertificateID[LOOKUP_IDS];
+        for (int i = 0; i < LOOKUP_IDS; i++) {
+            certificateIds[i] = OcspRequestGenerator.generateCertificateId(x509IssuerCert, BigInteger.valueOf((i + 1) * 7919L));
+        }
+        final long revoked = Arrays.stream(certificateIds)
+            .filter(certificateId -> store.getCertificateStatus(certificateId) instanceof RevokedStatus)
+            .count();
+        if (revoked != LOOKUP_IDS / 100) {
+            throw new IllegalStateException(revoked + " of " + LOOKUP_IDS + " certificates revoked");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(POPULATION_FILE);
+    }
+
+    private OffHeapOcspStatusStore loadPopulation() throws GemPkiException {
+        final OffHeapOcspStatusStore loadedStore = OffHeapOcspStatusStore.builder().expectedEntries(POPULATION).build();
+        if (loadedStore.load(x509IssuerCert, POPULATION_FILE) != POPULATION) {
+            throw new IllegalStateException("population not loaded completely");
+        }
+        return loadedStore;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void load(final Blackhole blackhole) throws GemPkiException {
+        blackhole.consume(loadPopulation());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void lookup(final Blackhole blackhole) {
+        blackhole.consume(store.getCertificateStatus(certificateIds[next++ & (LOOKUP_IDS - 1)]));
+    }
+
+    /**
+     * Loads a generated population from file and looks up certificates of it, the lookups must not allocate more than key and status
+     */
+    @Test
+    void loadAndLookupPopulation() throws Exception {
+        final Collection<RunResult> results = BenchmarkRunner.run(BenchmarkRunner.options(OffHeapOcspStatusStoreBenchmark.class));
+        final double lookupBytes = allocatedBytesPerOp(results, "lookup");
+        log.info("{} certificates loaded in {} ms, lookup: {} ns/op, {} bytes/op", POPULATION, score(results, "load"), score(results, "lookup"),
+            lookupBytes);
+        assertThat(lookupBytes).isLessThan(MAX_LOOKUP_BYTES);
+    }
+}
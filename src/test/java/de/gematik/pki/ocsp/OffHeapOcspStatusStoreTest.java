@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.gematik.pki.ocsp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import de.gematik.pki.exception.GemPkiException;
+import de.gematik.pki.utils.CertificateProvider;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.cert.X509Certificate;
+import java.time.ZonedDateTime;
+import java.util.List;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.bouncycastle.cert.ocsp.UnknownStatus;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class OffHeapOcspStatusStoreTest {
+
+    private static final int POPULATION = 10_000;
+    private static X509Certificate VALID_X509_EE_CERT;
+    private static X509Certificate VALID_X509_ISSUER_CERT;
+    private static X509Certificate OTHER_X509_ISSUER_CERT;
+
+    @BeforeAll
+    public static void start() throws IOException {
+        VALID_X509_EE_CERT = CertificateProvider
+            .getX509Certificate("src/test/resources/certificates/GEM.SMCB-CA10/valid/DrMedGunther.pem");
+        VALID_X509_ISSUER_CERT = CertificateProvider
+            .getX509Certificate("src/test/resources/certificates/GEM.RCA1_TEST-ONLY.pem");
+        OTHER_X509_ISSUER_CERT = CertificateProvider
+            .getX509Certificate("src/test/resources/certificates/GEM.SMCB-CA10/GEM.SMCB-CA10_TEST-ONLY.pem");
+    }
+
+    @Test
+    void putAndGetStatus() throws GemPkiException {
+        final OffHeapOcspStatusStore store = OffHeapOcspStatusStore.builder().expectedEntries(10).build();
+        final ZonedDateTime revocationTime = ZonedDateTime.parse("2021-05-01T10:00:00Z");
+        store.put(VALID_X509_ISSUER_CERT, BigInteger.ONE, OcspCertStatus.GOOD, null, null);
+        store.put(VALID_X509_ISSUER_CERT, BigInteger.TWO, OcspCertStatus.REVOKED, revocationTime, CRLReason.keyCompromise);
+        assertThat(store.getSize()).isEqualTo(2);
+
+        assertThat(getStatus(store, VALID_X509_ISSUER_CERT, BigInteger.ONE)).isEqualTo(CertificateStatus.GOOD);
+        final CertificateStatus revoked = getStatus(store, VALID_X509_ISSUER_CERT, BigInteger.TWO);
+        assertThat(revoked).isInstanceOf(RevokedStatus.class);
+        assertThat(((RevokedStatus) revoked).getRevocationTime().toInstant()).isEqualTo(revocationTime.toInstant());
+        assertThat(((RevokedStatus) revoked).getRevocationReason()).isEqualTo(CRLReason.keyCompromise);
+        assertThat(getStatus(store, VALID_X509_ISSUER_CERT, BigInteger.TEN)).isInstanceOf(UnknownStatus.class);
+    }
+
+    @Test
+    void putReplacesStatus() throws GemPkiException {
+        final OffHeapOcspStatusStore store = OffHeapOcspStatusStore.builder().expectedEntries(10).build();
+        store.put(VALID_X509_ISSUER_CERT, BigInteger.ONE, OcspCertStatus.GOOD, null, null);
+        store.put(VALID_X509_ISSUER_CERT, BigInteger.ONE, OcspCertStatus.REVOKED, ZonedDateTime.now(), null);
+        assertThat(store.getSize()).isEqualTo(1);
+        final CertificateStatus revoked = getStatus(store, VALID_X509_ISSUER_CERT, BigInteger.ONE);
+        assertThat(revoked).isInstanceOf(RevokedStatus.class);
+        assertThat(((RevokedStatus) revoked).hasRevocationReason()).isFalse();
+    }
+
+    @Test
+    void sameSerialNumberOfDifferentIssuersDoesNotCollide() throws GemPkiException {
+        final OffHeapOcspStatusStore store = OffHeapOcspStatusStore.builder().expectedEntries(10).build();
+        store.put(VALID_X509_ISSUER_CERT, BigInteger.ONE, OcspCertStatus.GOOD, null, null);
+        store.put(OTHER_X509_ISSUER_CERT, BigInteger.ONE, OcspCertStatus.REVOKED, ZonedDateTime.now(), null);
+        assertThat(getStatus(store, VALID_X509_ISSUER_CERT, BigInteger.ONE)).isEqualTo(CertificateStatus.GOOD);
+        assertThat(getStatus(store, OTHER_X509_ISSUER_CERT, BigInteger.ONE)).isInstanceOf(RevokedStatus.class);
+    }
+
+    @Test
+    void defaultStatusForUnknownIssuerAndSerial() throws GemPkiException {
+        final OffHeapOcspStatusStore store = OffHeapOcspStatusStore.builder().expectedEntries(10).defaultStatus(OcspCertStatus.GOOD).build();
+        store.put(VALID_X509_ISSUER_CERT, BigInteger.ONE, OcspCertStatus.UNKNOWN, null, null);
+        assertThat(getStatus(store, VALID_X509_ISSUER_CERT, BigInteger.ONE)).isInstanceOf(UnknownStatus.class);
+        assertThat(getStatus(store, VALID_X509_ISSUER_CERT, BigInteger.TEN)).isEqualTo(CertificateStatus.GOOD);
+        assertThat(getStatus(store, OTHER_X509_ISSUER_CERT, BigInteger.ONE)).isEqualTo(CertificateStatus.GOOD);
+    }
+
+    @Test
+    void storeIsFull() throws GemPkiException {
+        final OffHeapOcspStatusStore store = OffHeapOcspStatusStore.builder().expectedEntries(1).build();
+        store.put(VALID_X509_ISSUER_CERT, BigInteger.ONE, OcspCertStatus.GOOD, null, null);
+        assertThatThrownBy(() -> store.put(VALID_X509_ISSUER_CERT, BigInteger.TWO, OcspCertStatus.GOOD, null, null))
+            .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void loadFromFile() throws IOException, GemPkiException {
+        final Path file = Path.of("target/ocspStatusStore.txt");
+        Files.write(file, List.of("# serial;status;revocationTime;reason",
+            VALID_X509_EE_CERT.getSerialNumber().toString(16) + ";revoked;2021-05-01T10:00:00Z;1", "0A;good", "", "0B;UNKNOWN"),
+            StandardCharsets.US_ASCII);
+        final OffHeapOcspStatusStore store = OffHeapOcspStatusStore.builder().expectedEntries(10).defaultStatus(OcspCertStatus.GOOD).build();
+        assertThat(store.load(VALID_X509_ISSUER_CERT, file)).isEqualTo(3);
+        assertThat(getStatus(store, VALID_X509_ISSUER_CERT, BigInteger.TEN)).isEqualTo(CertificateStatus.GOOD);
+        assertThat(getStatus(store, VALID_X509_ISSUER_CERT, BigInteger.valueOf(11))).isInstanceOf(UnknownStatus.class);
+
+        final OCSPReq ocspReq = OcspRequestGenerator.generateSingleOcspRequest(VALID_X509_EE_CERT, VALID_X509_ISSUER_CERT);
+        final OCSPResp ocspResp = OcspResponseGenerator.builder()
+            .signer(OcspConstants.getOcspSignerEcc())
+            .statusStore(store)
+            .build()
+            .gen(ocspReq);
+        assertThat(OcspVerifier.getSingleResponses(ocspResp).get(0).getCertStatus()).isEqualTo(OcspCertStatus.REVOKED);
+    }
+
+    @Test
+    void loadInvalidFile() throws IOException {
+        final Path file = Path.of("target/ocspStatusStoreInvalid.txt");
+        Files.write(file, List.of("0A;good", "0B;revoked"), StandardCharsets.US_ASCII);
+        final OffHeapOcspStatusStore store = OffHeapOcspStatusStore.builder().expectedEntries(10).build();
+        assertThatThrownBy(() -> store.load(VALID_X509_ISSUER_CERT, file))
+            .isInstanceOf(GemPkiException.class)
+            .hasMessageContaining("Zeile 2");
+    }
+
+    @Test
+    void loadAndLookupPopulation() throws IOException, GemPkiException {
+        final Path file = Path.of("target/ocspStatusStorePopulation.txt");
+        try (final BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+            for (long serial = 1; serial <= POPULATION; serial++) {
+                writer.write(Long.toHexString(serial * 7919));
+                writer.write(serial % 100 == 0 ? ";revoked;2021-05-01T10:00:00Z;1\n" : ";good\n");
+            }
+        }
+        final OffHeapOcspStatusStore store = OffHeapOcspStatusStore.builder().expectedEntries(POPULATION).build();
+        assertThat(store.load(VALID_X509_ISSUER_CERT, file)).isEqualTo(POPULATION);
+        long revoked = 0;
+        for (long serial = 1; serial <= POPULATION; serial++) {
+            if (getStatus(store, VALID_X509_ISSUER_CERT, BigInteger.valueOf(serial * 7919)) instanceof RevokedStatus) {
+                revoked++;
+            }
+        }
+        assertThat(revoked).isEqualTo(POPULATION / 100);
+        Files.delete(file);
+    }
+
+    static CertificateStatus getStatus(final OffHeapOcspStatusStore store, final X509Certificate x509IssuerCert, final BigInteger serialNumber)
+        throws GemPkiException {
+        return store.getCertificateStatus(OcspRequestGenerator.generateCertificateId(x509IssuerCert, serialNumber));
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.gematik.pki.ocsp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import de.gematik.pki.exception.GemPkiException;
+import de.gematik.pki.utils.CertificateProvider;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPReqBuilder;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class PreSignedOcspResponderTest {
+
+    private static X509Certificate VALID_X509_EE_CERT;
+    private static X509Certificate VALID_X509_ISSUER_CERT;
+    private static OCSPReq ocspReq;
+
+    @BeforeAll
+    public static void start() throws IOException, GemPkiException {
+        VALID_X509_EE_CERT = CertificateProvider
+            .getX509Certificate("src/test/resources/certificates/GEM.SMCB-CA10/valid/DrMedGunther.pem");
+        VALID_X509_ISSUER_CERT = CertificateProvider
+            .getX509Certificate("src/test/resources/certificates/GEM.RCA1_TEST-ONLY.pem");
+        ocspReq = OcspRequestGenerator.generateSingleOcspRequest(VALID_X509_EE_CERT, VALID_X509_ISSUER_CERT);
+    }
+
+    @Test
+    void respondWithPreSignedResponse() throws GemPkiException, IOException {
+        try (final PreSignedOcspResponder responder = buildResponder()) {
+            responder.preSign(VALID_X509_ISSUER_CERT, List.of(VALID_X509_EE_CERT.getSerialNumber(), BigInteger.ONE));
+            assertThat(responder.getSize()).isEqualTo(2);
+
+            final byte[] response = responder.respond(ocspReq.getEncoded());
+            assertThat(responder.respond(ocspReq.getEncoded())).isSameAs(response);
+            final OCSPResp ocspResp = new OCSPResp(response);
+            assertThat(OcspVerifier.isStatusGood(ocspResp)).isTrue();
+            assertThat(OcspVerifier.getSingleResponses(ocspResp).get(0).getNextUpdate()).isNotNull();
+        }
+    }
+
+    @Test
+    void respondWithoutPreSignedResponse() throws GemPkiException, IOException {
+        try (final PreSignedOcspResponder responder = buildResponder()) {
+            final byte[] response = responder.respond(ocspReq.getEncoded());
+            assertThat(responder.respond(ocspReq.getEncoded())).isNotSameAs(response);
+            assertThat(OcspVerifier.isStatusGood(new OCSPResp(response))).isTrue();
+        }
+    }
+
+    @Test
+    void respondToRequestWithNonce() throws Exception {
+        final DEROctetString nonce = new DEROctetString(new byte[]{1, 2, 3, 4});
+        final OCSPReq ocspReqWithNonce = new OCSPReqBuilder()
+            .addRequest(ocspReq.getRequestList()[0].getCertID())
+            .setRequestExtensions(new Extensions(new Extension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce, false, nonce)))
+            .build();
+        try (final PreSignedOcspResponder responder = buildResponder()) {
+            responder.preSign(VALID_X509_ISSUER_CERT, List.of(VALID_X509_EE_CERT.getSerialNumber()));
+            final OCSPResp ocspResp = responder.gen(ocspReqWithNonce);
+            final BasicOCSPResp basicOCSPResp = (BasicOCSPResp) ocspResp.getResponseObject();
+            assertThat(basicOCSPResp.getExtension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce).getExtnValue()).isEqualTo(nonce);
+            assertThat(ocspResp.getEncoded()).isNotEqualTo(responder.respond(ocspReq.getEncoded()));
+        }
+    }
+
+    @Test
+    void refreshResignsResponsesBeforeNextUpdate() throws GemPkiException, IOException {
+        try (final PreSignedOcspResponder responder = buildResponder()) {
+            responder.preSign(VALID_X509_ISSUER_CERT, List.of(VALID_X509_EE_CERT.getSerialNumber(), BigInteger.ONE));
+            final byte[] response = responder.respond(ocspReq.getEncoded());
+            assertThat(responder.refresh()).isZero();
+            final long beforeRefresh = System.currentTimeMillis() + (responder.getValiditySeconds() - responder.getRefreshBeforeSeconds()) * 1000L;
+            assertThat(responder.refresh(beforeRefresh)).isEqualTo(2);
+            assertThat(responder.respond(ocspReq.getEncoded())).isNotSameAs(response);
+        }
+    }
+
+    @Test
+    void refreshResignsOnThreadsOfTheResponder() throws GemPkiException {
+        final Set<String> signingThreadNames = ConcurrentHashMap.newKeySet();
+        try (final PreSignedOcspResponder responder = PreSignedOcspResponder.builder()
+            .signer(OcspConstants.getOcspSignerEcc())
+            .statusStore(certificateId -> {
+                signingThreadNames.add(Thread.currentThread().getName());
+                return CertificateStatus.GOOD;
+            })
+            .signingThreads(2)
+            .build()) {
+            responder.preSign(VALID_X509_ISSUER_CERT, List.of(BigInteger.ONE, BigInteger.TWO, BigInteger.TEN));
+            signingThreadNames.clear();
+            final long beforeRefresh = System.currentTimeMillis() + (responder.getValiditySeconds() - responder.getRefreshBeforeSeconds()) * 1000L;
+            assertThat(responder.refresh(beforeRefresh)).isEqualTo(3);
+            assertThat(signingThreadNames).isNotEmpty().allMatch(name -> name.startsWith("ocsp-re-sign-"));
+        }
+    }
+
+    @Test
+    void refreshBeforeMustBeLessThanValidity() {
+        assertThatThrownBy(() -> PreSignedOcspResponder.builder()
+            .signer(OcspConstants.getOcspSignerEcc())
+            .validitySeconds(60)
+            .refreshBeforeSeconds(60)
+            .build())
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static PreSignedOcspResponder buildResponder() {
+        return PreSignedOcspResponder.builder()
+            .signer(OcspConstants.getOcspSignerEcc())
+            .build();
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.gematik.pki.tsl;
+
+import static de.gematik.pki.utils.BenchmarkRunner.allocatedBytesPerOp;
+import static de.gematik.pki.utils.BenchmarkRunner.score;
+import static de.gematik.pki.utils.ResourceReader.getFilePathFromResources;
+import static org.assertj.core.api.Assertions.assertThat;
+import de.gematik.pki.exception.GemPkiException;
+import de.gematik.pki.utils.BenchmarkRunner;
+import eu.europa.esig.trustedlist.jaxb.tsl.TrustStatusListType;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.results.RunResult;
+
+/**
+ * JMH benchmark of the TSL conversion, run with mvn test -Pbenchmark
+ */
+@Slf4j
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TslCodecBenchmark {
+
+    private byte[] tslBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        tslBytes = Files.readAllBytes(getFilePathFromResources("tsls/valid/TSL-test.xml"));
+    }
+
+    @Benchmark
+    public void bytesToTslWithNewJaxbContext(final Blackhole blackhole) throws JAXBException, GemPkiException {
+        blackhole.consume(JAXBContext.newInstance(TrustStatusListType.class)
+            .createUnmarshaller()
+            .unmarshal(TslConverter.bytesToDoc(tslBytes).orElseThrow().getFirstChild(), TrustStatusListType.class));
+    }
+
+    @Benchmark
+    public void bytesToTsl(final Blackhole blackhole) throws GemPkiException {
+        blackhole.consume(TslConverter.bytesToTsl(tslBytes).orElseThrow());
+    }
+
+    @Test
+    void bytesToTslWithoutNewJaxbContext() throws Exception {
+        final Collection<RunResult> results = BenchmarkRunner.run(BenchmarkRunner.options(TslCodecBenchmark.class));
+        final double newContextBytes = allocatedBytesPerOp(results, "bytesToTslWithNewJaxbContext");
+        final double codecBytes = allocatedBytesPerOp(results, "bytesToTsl");
+        log.info("bytesToTsl with new JAXBContext: {} µs/op, {} bytes/op; with TslCodec: {} µs/op, {} bytes/op",
+            score(results, "bytesToTslWithNewJaxbContext"), newContextBytes, score(results, "bytesToTsl"), codecBytes);
+        assertThat(codecBytes).isLessThan(newContextBytes);
+    }
+
+    @Test
+    void concurrentConversion() throws Exception {
+        final int threads = Runtime.getRuntime().availableProcessors();
+        final Collection<RunResult> results = BenchmarkRunner.run(BenchmarkRunner.options(TslCodecBenchmark.class, "bytesToTsl").threads(threads));
+        log.info("bytesToTsl with {} threads: {} µs/op", threads, score(results, "bytesToTsl"));
+    }
+}
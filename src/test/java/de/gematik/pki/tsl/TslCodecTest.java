@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.gematik.pki.tsl;
+
+import static de.gematik.pki.utils.ResourceReader.getFilePathFromResources;
+import static de.gematik.pki.utils.XmlCompare.documentsAreEqual;
+import static org.assertj.core.api.Assertions.assertThat;
+import eu.europa.esig.trustedlist.jaxb.tsl.TrustStatusListType;
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.xml.bind.JAXBContext;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+class TslCodecTest {
+
+    private static final Path TSL_PATH = getFilePathFromResources("tsls/valid/TSL-test.xml");
+
+    @SneakyThrows
+    @Test
+    void getInstanceReturnsSharedCodec() {
+        assertThat(TslCodec.getInstance()).isSameAs(TslCodec.getInstance());
+    }
+
+    @SneakyThrows
+    @Test
+    void roundTrip() {
+        final TslCodec tslCodec = TslCodec.getInstance();
+        final Document doc = tslCodec.parse(new ByteArrayInputStream(Files.readAllBytes(TSL_PATH)));
+        final TrustStatusListType tsl = tslCodec.unmarshal(doc.getFirstChild());
+        final Document marshalled = tslCodec.newDocument();
+        tslCodec.marshal(tsl, marshalled);
+        assertThat(documentsAreEqual(marshalled, TSL_PATH)).isTrue();
+    }
+
+    @SneakyThrows
+    @Test
+    void concurrentConversion() {
+        final byte[] tslBytes = Files.readAllBytes(TSL_PATH);
+        final TrustStatusListType expected = TslConverter.bytesToTsl(tslBytes).orElseThrow();
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<TrustStatusListType>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> TslConverter.bytesToTsl(tslBytes).orElseThrow()));
+            }
+            for (final Future<TrustStatusListType> future : futures) {
+                assertSameTsl(future.get(), expected);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @SneakyThrows
+    @Test
+    void bytesToTslEqualsNewJaxbContext() {
+        final byte[] tslBytes = Files.readAllBytes(TSL_PATH);
+        final TrustStatusListType withNewContext = JAXBContext.newInstance(TrustStatusListType.class)
+            .createUnmarshaller()
+            .unmarshal(TslConverter.bytesToDoc(tslBytes).orElseThrow().getFirstChild(), TrustStatusListType.class)
+            .getValue();
+        assertSameTsl(TslConverter.bytesToTsl(tslBytes).orElseThrow(), withNewContext);
+    }
+
+    private static void assertSameTsl(final TrustStatusListType actual, final TrustStatusListType expected) {
+        assertThat(actual.getId()).isEqualTo(expected.getId());
+        assertThat(actual.getSchemeInformation().getTSLSequenceNumber()).isEqualTo(expected.getSchemeInformation().getTSLSequenceNumber());
+        assertThat(actual.getTrustServiceProviderList().getTrustServiceProvider())
+            .hasSameSizeAs(expected.getTrustServiceProviderList().getTrustServiceProvider());
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.gematik.pki.tsl;
+
+import static de.gematik.pki.utils.ResourceReader.getFilePathFromResources;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import de.gematik.pki.exception.GemPkiException;
+import eu.europa.esig.trustedlist.jaxb.tsl.AttributedNonEmptyURIType;
+import eu.europa.esig.trustedlist.jaxb.tsl.DigitalIdentityType;
+import eu.europa.esig.trustedlist.jaxb.tsl.ExtensionType;
+import eu.europa.esig.trustedlist.jaxb.tsl.TSPServiceType;
+import eu.europa.esig.trustedlist.jaxb.tsl.TrustStatusListType;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import javax.xml.bind.JAXBElement;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Node;
+
+@Slf4j
+class TslStreamReaderTest {
+
+    private static final Path TSL_PATH = getFilePathFromResources("tsls/valid/ECC-RSA_TSL-test.xml");
+    private static final String TSL_INVALID_XML = "tsls/defect/TSL_invalid_xmlMalformed_altCA.xml";
+
+    @SneakyThrows
+    @Test
+    void readSchemeInformation() {
+        final TrustStatusListType tsl = TslReader.getTsl(TSL_PATH).orElseThrow();
+        final TslTrustModel model = TslStreamReader.read(TSL_PATH);
+        assertThat(model.getId()).isEqualTo(tsl.getId());
+        assertThat(model.getSequenceNumber()).isEqualTo(TslReader.getSequenceNumber(tsl));
+        assertThat(model.getIssueDate()).isEqualTo(TslReader.getIssueDate(tsl));
+        assertThat(model.getNextUpdate()).isEqualTo(TslReader.getNextUpdate(tsl));
+    }
+
+    @SneakyThrows
+    @Test
+    void readTrustServicesLikeJaxb() {
+        final List<TspService> tspServices = new TslInformationProvider(TslReader.getTsl(TSL_PATH).orElseThrow()).getTspServices();
+        final List<TslTrustService> trustServices = TslStreamReader.read(TSL_PATH).getTrustServices();
+        assertThat(trustServices).hasSameSizeAs(tspServices);
+
+        for (int i = 0; i < tspServices.size(); i++) {
+            final TSPServiceType expected = tspServices.get(i).getTspServiceType();
+            final TslTrustService actual = trustServices.get(i);
+            assertThat(actual.getServiceTypeIdentifier()).isEqualTo(expected.getServiceInformation().getServiceTypeIdentifier());
+            assertThat(actual.getServiceName()).isEqualTo(expected.getServiceInformation().getServiceName().getName().get(0).getValue());
+            assertThat(actual.getServiceStatus()).isEqualTo(expected.getServiceInformation().getServiceStatus());
+            assertThat(actual.getStatusStartingTime())
+                .isEqualTo(expected.getServiceInformation().getStatusStartingTime().toGregorianCalendar().toZonedDateTime());
+            assertThat(actual.getCaCertificates()).containsExactlyElementsOf(
+                expected.getServiceInformation().getServiceDigitalIdentity().getDigitalId().stream()
+                    .map(DigitalIdentityType::getX509Certificate)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList()));
+            if (expected.getServiceInformation().getServiceSupplyPoints() != null) {
+                assertThat(actual.getServiceSupplyPoints()).containsExactlyElementsOf(
+                    expected.getServiceInformation().getServiceSupplyPoints().getServiceSupplyPoint().stream()
+                        .map(AttributedNonEmptyURIType::getValue)
+                        .collect(Collectors.toList()));
+            }
+            if (expected.getServiceInformation().getServiceInformationExtensions() != null) {
+                assertThat(actual.getExtensions().stream().map(TslStreamReaderTest::contentOf)).containsExactlyElementsOf(
+                    expected.getServiceInformation().getServiceInformationExtensions().getExtension().stream()
+                        .map(TslStreamReaderTest::contentOf)
+                        .collect(Collectors.toList()));
+            }
+        }
+    }
+
+    @SneakyThrows
+    @Test
+    void filteredTrustServices() {
+        final TslTrustModel model = TslStreamReader.read(TSL_PATH);
+        final List<String> stiFilterList = List.of(TslConstants.STI_PKC);
+        assertThat(model.getFilteredTrustServices(stiFilterList))
+            .hasSameSizeAs(new TslInformationProvider(TslReader.getTsl(TSL_PATH).orElseThrow()).getFilteredTspServices(stiFilterList))
+            .isNotEmpty();
+    }
+
+    @Test
+    void readInvalidXml() {
+        assertThatThrownBy(() -> TslStreamReader.read(getFilePathFromResources(TSL_INVALID_XML)))
+            .isInstanceOf(GemPkiException.class)
+            .hasMessageContaining(TslConverter.ERROR_READING_TSL);
+    }
+
+    @Test
+    void nonNull() {
+        assertThatThrownBy(() -> TslStreamReader.read((Path) null))
+            .isInstanceOf(NullPointerException.class);
+    }
+
+    /**
+     * Compare load time and memory of the streaming reader with the DOM + JAXB path. Allocated bytes are measured per thread, peak bytes are the heap used
+     * during one load and retained bytes the heap still used by its result after garbage collection.
+     */
+    @SneakyThrows
+    @Test
+    void compareWithDomAndJaxb() {
+        final int rounds = 10;
+        TslReader.getTsl(TSL_PATH);
+        TslStreamReader.read(TSL_PATH);
+
+        final long[] jaxbStats = measure(() -> getTsl(TSL_PATH), rounds);
+        final long[] streamStats = measure(() -> readStream(TSL_PATH), rounds);
+
+        log.info("DOM + JAXB: {} ms/op, {} KB allocated/op, {} KB peak, {} KB retained", jaxbStats[0], jaxbStats[1] / 1024, jaxbStats[2] / 1024,
+            jaxbStats[3] / 1024);
+        log.info("StAX: {} ms/op, {} KB allocated/op, {} KB peak, {} KB retained", streamStats[0], streamStats[1] / 1024, streamStats[2] / 1024,
+            streamStats[3] / 1024);
+        assertThat(streamStats[1]).isLessThan(jaxbStats[1]);
+    }
+
+    private static String contentOf(final ExtensionType extension) {
+        return extension.isCritical() + extension.getContent().stream()
+            .map(TslStreamReaderTest::contentOf)
+            .collect(Collectors.joining(","));
+    }
+
+    private static String contentOf(final Object content) {
+        if (content instanceof Node) {
+            return ((Node) content).getNodeName() + "=" + ((Node) content).getTextContent();
+        }
+        if (content instanceof JAXBElement) {
+            return ((JAXBElement<?>) content).getName() + "=" + ((JAXBElement<?>) content).getDeclaredType().getSimpleName();
+        }
+        return content.toString();
+    }
+
+    @SneakyThrows
+    private static Object getTsl(final Path tslPath) {
+        return TslReader.getTsl(tslPath).orElseThrow();
+    }
+
+    @SneakyThrows
+    private static Object readStream(final Path tslPath) {
+        return TslStreamReader.read(tslPath);
+    }
+
+    /**
+     * @return duration in ms per operation, allocated bytes per operation, peak and retained bytes of one load
+     */
+    private static long[] measure(final Supplier<Object> load, final int rounds) {
+        final com.sun.management.ThreadMXBean threadMxBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final long allocatedBefore = threadMxBean.getThreadAllocatedBytes(threadId);
+        final long startNanos = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            assertThat(load.get()).isNotNull();
+        }
+        final long durationMillis = (System.nanoTime() - startNanos) / 1_000_000 / rounds;
+        final long allocated = (threadMxBean.getThreadAllocatedBytes(threadId) - allocatedBefore) / rounds;
+
+        final List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+            .filter(pool -> pool.getType() == MemoryType.HEAP)
+            .collect(Collectors.toList());
+        final long usedBefore = usedHeapAfterGc();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        final Object result = load.get();
+        final long peak = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum() - usedBefore;
+        final long retained = usedHeapAfterGc() - usedBefore;
+        assertThat(result).isNotNull();
+        return new long[] {durationMillis, allocated, peak, retained};
+    }
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -29,9 +29,11 @@ import java.net.URISyntaxException;
 import java.security.cert.X509Certificate;
 import java.util.Optional;
 import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+@Slf4j
 class TspInformationProviderTest {
 
     private static final String FILE_NAME_TSL_DEFAULT = "tsls/valid/TSL_default.xml";
@@ -100,6 +102,13 @@ class TspInformationProviderTest {
             .isEqualTo("http://ocsp-sim01-test.gem.telematik-test:8080/ocsp/OCSPSimulator/TSL_default-seq1");
     }
 
+    @Test
+    void generateTspServiceSubsetServiceSupplyPointsStartWithFirst() throws GemPkiException {
+        final TspServiceSubset tspServiceSubset = tspInformationProvider.getTspServiceSubset(VALID_X509_EE_CERT);
+        assertThat(tspServiceSubset.getServiceSupplyPoints()).isNotEmpty().doesNotContain("");
+        assertThat(tspServiceSubset.getServiceSupplyPoints().get(0)).isEqualTo(tspServiceSubset.getServiceSupplyPoint());
+    }
+
     @Test
     void generateTspServiceSubsetServiceSupplyPointMissing() throws GemPkiException, URISyntaxException, IOException {
         final Optional<TrustStatusListType> tslAltCaMissingSsp = TslReader
@@ -111,4 +120,25 @@ class TspInformationProviderTest {
             .isInstanceOf(GemPkiException.class)
             .hasMessageContaining(ErrorCode.TE_1026.getErrorMessage(productType));
     }
+
+    @Test
+    void generateTspServiceSubsetIsPrebuilt() throws GemPkiException {
+        assertThat(tspInformationProvider.getTspServiceSubset(VALID_X509_EE_CERT))
+            .isSameAs(tspInformationProvider.getTspServiceSubset(VALID_X509_EE_CERT));
+    }
+
+    @Test
+    void generateTspServiceSubsetIssuerCertificateMissingInIndexOfOtherTsl() throws GemPkiException, URISyntaxException, IOException {
+        final TspInformationProvider eccRsaTspInformationProvider = new TspInformationProvider(
+            new TslInformationProvider(TslReader.getTsl(ResourceReader.getFilePathFromResources("tsls/valid/ECC-RSA_TSL-test.xml")).orElseThrow())
+                .getTspServices(), productType);
+        final int rounds = 1000;
+        final long startNanos = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            assertThatThrownBy(() -> eccRsaTspInformationProvider.getTspServiceSubset(VALID_X509_EE_CERT_ALT_CA))
+                .isInstanceOf(GemPkiException.class)
+                .hasMessageContaining(ErrorCode.TE_1027.name());
+        }
+        log.info("{} lookups in ECC-RSA_TSL-test.xml: {} ns/op", rounds, (System.nanoTime() - startNanos) / rounds);
+    }
 }
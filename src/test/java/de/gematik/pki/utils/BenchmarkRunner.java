@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2021 gematik GmbH
+ * 
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an 'AS IS' BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.gematik.pki.utils;
+
+import java.util.Collection;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks of a class with the gc profiler (like -prof gc), used by the *Benchmark classes run with mvn test -Pbenchmark
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class BenchmarkRunner {
+
+    private static final String GC_ALLOC_RATE_NORM = "gc.alloc.rate.norm";
+
+    /**
+     * @param benchmarkClass class with the @Benchmark methods to run
+     * @return options with the benchmarks of the class and the gc profiler, warmup and measurement are configured by the annotations of the class
+     */
+    public static ChainedOptionsBuilder options(final Class<?> benchmarkClass) {
+        return new OptionsBuilder()
+            .include(benchmarkClass.getName() + ".")
+            .addProfiler(GCProfiler.class);
+    }
+
+    /**
+     * @param benchmarkClass class with the @Benchmark method to run
+     * @param benchmarkMethod name of the @Benchmark method to run
+     * @return options with the benchmark method and the gc profiler
+     */
+    public static ChainedOptionsBuilder options(final Class<?> benchmarkClass, final String benchmarkMethod) {
+        return new OptionsBuilder()
+            .include(benchmarkClass.getName() + "." + benchmarkMethod + "$")
+            .addProfiler(GCProfiler.class);
+    }
+
+    /**
+     * @param options options created by {@link #options(Class)}
+     * @return results of all benchmarks
+     * @throws RunnerException if a benchmark fails
+     */
+    public static Collection<RunResult> run(final ChainedOptionsBuilder options) throws RunnerException {
+        return new Runner(options.build()).run();
+    }
+
+    /**
+     * @param results results of {@link #run(ChainedOptionsBuilder)}
+     * @param benchmarkMethod name of the @Benchmark method
+     * @return primary result (score) of the benchmark method
+     */
+    public static double score(final Collection<RunResult> results, final String benchmarkMethod) {
+        return getResult(results, benchmarkMethod).getPrimaryResult().getScore();
+    }
+
+    /**
+     * @param results results of {@link #run(ChainedOptionsBuilder)}
+     * @param benchmarkMethod name of the @Benchmark method
+     * @return bytes allocated per operation of the benchmark method measured by the gc profiler
+     */
+    public static double allocatedBytesPerOp(final Collection<RunResult> results, final String benchmarkMethod) {
+        final Result<?> result = getResult(results, benchmarkMethod).getSecondaryResults().get(GC_ALLOC_RATE_NORM);
+        if (result == null) {
+            throw new IllegalStateException("No result " + GC_ALLOC_RATE_NORM + " for benchmark " + benchmarkMethod);
+        }
+        return result.getScore();
+    }
+
+    private static RunResult getResult(final Collection<RunResult> results, final String benchmarkMethod) {
+        return results.stream()
+            .filter(result -> result.getParams().getBenchmark().endsWith("." + benchmarkMethod))
+            .findFirst()
+            .orElseThrow(() -> new IllegalStateException("No result for benchmark " + benchmarkMethod));
+    }
+}